@@ -0,0 +1,365 @@
+package net.utory.rankpoint;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+import java.util.function.Consumer;
+import java.util.logging.Logger;
+import java.util.stream.Stream;
+import net.utory.rankpoint.data.DatabaseManager;
+import net.utory.rankpoint.data.PlayerDataManager;
+import net.utory.rankpoint.data.QueueConfig;
+import net.utory.rankpoint.data.database.JdbcStorage;
+import net.utory.rankpoint.data.database.MmapStorage;
+import net.utory.rankpoint.data.database.Sqlite;
+import net.utory.rankpoint.data.database.SqliteProfile;
+import net.utory.rankpoint.data.database.UuidFormat;
+import net.utory.rankpoint.metrics.Metrics;
+import org.bukkit.Bukkit;
+import org.bukkit.OfflinePlayer;
+import org.bukkit.Server;
+import org.bukkit.configuration.file.FileConfiguration;
+import org.bukkit.configuration.file.YamlConfiguration;
+import org.bukkit.entity.Player;
+import org.bukkit.plugin.java.JavaPlugin;
+import org.bukkit.scheduler.BukkitScheduler;
+import org.bukkit.scheduler.BukkitTask;
+
+// 서버 없이 벤치마크를 실행하기 위한 Bukkit 대역입니다. runTask 로 예약된 작업은 큐에 쌓아 두었다가 runTasks 를 호출한
+// 스레드에서 실행하고 (그 스레드가 메인 스레드 역할을 합니다), 비동기 작업은 별도의 스레드에서 실행합니다.
+// 반복 작업은 실행하지 않으며, 접속 중인 플레이어는 없는 것으로 취급합니다.
+public final class BenchmarkServer {
+
+    private static final Logger LOGGER = Logger.getLogger("Rankpoint-Benchmark");
+    private static final Object DEFAULT = new Object();
+    private static final Queue<Runnable> mainThreadTasks = new ConcurrentLinkedQueue<>();
+    private static final ExecutorService asyncExecutor = Executors.newCachedThreadPool(runnable -> {
+        Thread thread = new Thread(runnable, "Benchmark-Async");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private static boolean installed = false;
+
+    private BenchmarkServer() {
+    }
+
+    public static synchronized void install() {
+        if (installed) {
+            return;
+        }
+        BukkitScheduler scheduler = stub(BukkitScheduler.class, BenchmarkServer::schedule);
+        Server server = stub(Server.class, (method, args) -> {
+            switch (method.getName()) {
+                case "getScheduler":
+                    return scheduler;
+                case "getLogger":
+                    return LOGGER;
+                case "getName":
+                case "getVersion":
+                case "getBukkitVersion":
+                    return "Benchmark";
+                case "getOnlinePlayers":
+                    return Collections.emptyList();
+                case "isPrimaryThread":
+                    return true;
+                case "getOfflinePlayer":
+                    return args[0] instanceof UUID ? offlinePlayer((UUID) args[0]) : DEFAULT;
+                default:
+                    return DEFAULT;
+            }
+        });
+        Bukkit.setServer(server);
+        installed = true;
+    }
+
+    private static Object schedule(Method method, Object[] args) {
+        Runnable task = null;
+        for (Object arg : args) {
+            if (arg instanceof Runnable) {
+                task = (Runnable) arg;
+            }
+        }
+        if (task != null) {
+            switch (method.getName()) {
+                case "runTask":
+                case "scheduleSyncDelayedTask":
+                    mainThreadTasks.add(task);
+                    break;
+                case "runTaskAsynchronously":
+                    asyncExecutor.execute(task);
+                    break;
+                default:
+                    // 지연 작업과 반복 작업 (저장, 캐시 정리 등) 은 벤치마크에서 직접 호출합니다.
+                    break;
+            }
+        }
+        if (method.getReturnType() == BukkitTask.class) {
+            return stub(BukkitTask.class, (m, a) -> DEFAULT);
+        }
+        return DEFAULT;
+    }
+
+    // 예약된 메인 스레드 작업을 모두 실행하고 실행한 수를 반환합니다.
+    public static int runTasks() {
+        int count = 0;
+        Runnable task;
+        while ((task = mainThreadTasks.poll()) != null) {
+            task.run();
+            count++;
+        }
+        return count;
+    }
+
+    // 데이터베이스 스레드의 결과를 기다리며 done 이 true 가 될 때까지 메인 스레드 작업을 실행합니다.
+    public static void runTasksUntil(BooleanSupplier done) {
+        long deadline = System.nanoTime() + TimeUnit.MINUTES.toNanos(10);
+        while (!done.getAsBoolean()) {
+            if (runTasks() > 0) {
+                continue;
+            }
+            if (System.nanoTime() > deadline) {
+                throw new IllegalStateException("Timed out waiting for scheduled tasks.");
+            }
+            try {
+                Thread.sleep(1);
+            } catch (InterruptedException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+    }
+
+    // callback 을 받는 비동기 메서드를 호출하고 결과를 기다립니다.
+    public static <T> T await(Consumer<Consumer<T>> call) {
+        CompletableFuture<T> future = new CompletableFuture<>();
+        call.accept(future::complete);
+        try {
+            return future.get(10, TimeUnit.MINUTES);
+        } catch (Exception e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    public static Player player(UUID uuid, String name) {
+        return stub(Player.class, (method, args) -> {
+            switch (method.getName()) {
+                case "getUniqueId":
+                    return uuid;
+                case "getName":
+                case "getDisplayName":
+                    return name;
+                case "isOnline":
+                    return true;
+                default:
+                    return DEFAULT;
+            }
+        });
+    }
+
+    private static OfflinePlayer offlinePlayer(UUID uuid) {
+        return stub(OfflinePlayer.class,
+            (method, args) -> "getUniqueId".equals(method.getName()) ? uuid : DEFAULT);
+    }
+
+    // 플러그인 jar 에 들어 있는 기본 설정을 그대로 사용합니다.
+    public static FileConfiguration config() {
+        return loadResource("config.yml");
+    }
+
+    public static Message message() {
+        Message message = new Message();
+        message.loadMessages(loadResource("message.yml"));
+        return message;
+    }
+
+    // rank1, rank2, ... 그룹이 step 포인트마다 하나씩 있는 진급 단계를 만듭니다.
+    public static GroupConfig groupConfig(int size, int step, Message message) {
+        List<String> groupNames = new ArrayList<>(size);
+        List<Integer> pointConditions = new ArrayList<>(size);
+        Map<String, String> displayGroupNames = new HashMap<>();
+        for (int i = 0; i < size; i++) {
+            String name = "rank" + (i + 1);
+            groupNames.add(name);
+            pointConditions.add(i * step);
+            displayGroupNames.put(name, "Rank" + (i + 1));
+        }
+        return new GroupConfig(null, groupNames, pointConditions, displayGroupNames, message);
+    }
+
+    public static DatabaseManager sqlite(File directory, Metrics metrics) {
+        return sqlite(directory, 1, UuidFormat.TEXT, metrics);
+    }
+
+    public static DatabaseManager sqlite(File directory, int writeChunkSize, UuidFormat uuidFormat,
+        Metrics metrics) {
+        try {
+            return new DatabaseManager(new JdbcStorage(new Sqlite("Rankpoint",
+                new File(directory, "SQLite.db"), SqliteProfile.DEFAULT, uuidFormat),
+                writeChunkSize, 1000, LOGGER), metrics, QueueConfig.DEFAULT, LOGGER);
+        } catch (SQLException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    public static DatabaseManager mmap(File directory, boolean forceOnSave, Metrics metrics) {
+        try {
+            return new DatabaseManager(
+                new MmapStorage(new File(directory, "points.mmap"), forceOnSave), metrics,
+                QueueConfig.DEFAULT, LOGGER);
+        } catch (SQLException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    // JavaPlugin 은 플러그인 클래스 로더 밖에서 만들 수 없으므로 생성자를 거치지 않고 필요한 필드만 채웁니다.
+    // 저널은 dataFolder 에 만들어집니다.
+    public static Rankpoint plugin(File dataFolder, FileConfiguration config, Message message,
+        GroupConfig groupConfig, DatabaseManager databaseManager, Metrics metrics) {
+        install();
+        Rankpoint plugin;
+        try {
+            Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+            Field field = unsafeClass.getDeclaredField("theUnsafe");
+            field.setAccessible(true);
+            plugin = (Rankpoint) unsafeClass.getMethod("allocateInstance", Class.class)
+                .invoke(field.get(null), Rankpoint.class);
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException(e);
+        }
+        set(Rankpoint.class, plugin, "config", config);
+        set(Rankpoint.class, plugin, "message", message);
+        set(Rankpoint.class, plugin, "groupConfig", groupConfig);
+        set(Rankpoint.class, plugin, "databaseManager", databaseManager);
+        set(Rankpoint.class, plugin, "rankSynchronizer", new RankSynchronizer(plugin));
+        set(Rankpoint.class, plugin, "dataTasks", new ArrayList<BukkitTask>());
+        set(Rankpoint.class, plugin, "metrics", metrics);
+        set(JavaPlugin.class, plugin, "dataFolder", dataFolder);
+        set(JavaPlugin.class, plugin, "isEnabled", true);
+        return plugin;
+    }
+
+    // 순위표와 포인트 분포를 다 불러올 때까지 기다립니다.
+    public static PlayerDataManager startPlayerData(Rankpoint plugin) {
+        PlayerDataManager manager = new PlayerDataManager(plugin, null);
+        set(Rankpoint.class, plugin, "playerDataManager", manager);
+        runTasksUntil(() -> manager.getDistribution().isLoaded() && (
+            manager.getLeaderboard().getSize() > 0 || manager.getDistribution().getTotal() == 0));
+        return manager;
+    }
+
+    public static File createDirectory() {
+        try {
+            return Files.createTempDirectory("rankpoint-benchmark").toFile();
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    public static void deleteDirectory(File directory) {
+        try (Stream<Path> paths = Files.walk(directory.toPath())) {
+            paths.sorted(Comparator.reverseOrder()).map(Path::toFile)
+                .forEach(File::delete);
+        } catch (IOException ignored) {
+        }
+    }
+
+    private static FileConfiguration loadResource(String name) {
+        InputStream in = Rankpoint.class.getClassLoader().getResourceAsStream(name);
+        if (in == null) {
+            throw new IllegalStateException(name + " is not on the classpath.");
+        }
+        return YamlConfiguration.loadConfiguration(new InputStreamReader(in, StandardCharsets.UTF_8));
+    }
+
+    private static void set(Class<?> owner, Object target, String name, Object value) {
+        try {
+            Field field = owner.getDeclaredField(name);
+            field.setAccessible(true);
+            field.set(target, value);
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    // answer 가 DEFAULT 를 반환한 메서드는 null, 0, false 를 반환합니다.
+    private static <T> T stub(Class<T> type, Answer answer) {
+        return type.cast(Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[]{type},
+            (proxy, method, args) -> {
+                Object[] arguments = args == null ? new Object[0] : args;
+                switch (method.getName()) {
+                    case "equals":
+                        if (arguments.length == 1) {
+                            return proxy == arguments[0];
+                        }
+                        break;
+                    case "hashCode":
+                        if (arguments.length == 0) {
+                            return System.identityHashCode(proxy);
+                        }
+                        break;
+                    case "toString":
+                        if (arguments.length == 0) {
+                            return type.getSimpleName() + "Stub";
+                        }
+                        break;
+                }
+                Object value = answer.answer(method, arguments);
+                return value == DEFAULT ? defaultValue(method.getReturnType()) : value;
+            }));
+    }
+
+    private static Object defaultValue(Class<?> type) {
+        if (!type.isPrimitive() || type == void.class) {
+            return null;
+        }
+        if (type == boolean.class) {
+            return false;
+        }
+        if (type == char.class) {
+            return '\0';
+        }
+        if (type == long.class) {
+            return 0L;
+        }
+        if (type == float.class) {
+            return 0F;
+        }
+        if (type == double.class) {
+            return 0D;
+        }
+        if (type == byte.class) {
+            return (byte) 0;
+        }
+        if (type == short.class) {
+            return (short) 0;
+        }
+        return 0;
+    }
+
+    @FunctionalInterface
+    private interface Answer {
+
+        Object answer(Method method, Object[] args) throws Throwable;
+    }
+}
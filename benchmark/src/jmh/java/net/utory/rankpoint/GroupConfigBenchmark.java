@@ -0,0 +1,63 @@
+package net.utory.rankpoint;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import net.utory.rankpoint.GroupConfig.Rank;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+// 진급 단계 수에 따른 랭크 찾기 비용입니다.
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class GroupConfigBenchmark {
+
+    private static final int STEP = 100;
+    // 2 의 거듭제곱 (인덱스를 나머지 대신 & 로 돌립니다)
+    private static final int SAMPLES = 4096;
+
+    @Param({"5", "50", "500"})
+    public int ladderSize;
+
+    private GroupConfig groupConfig;
+    private final int[] points = new int[SAMPLES];
+    private int index;
+
+    @Setup
+    public void setup() {
+        groupConfig = BenchmarkServer.groupConfig(ladderSize, STEP, BenchmarkServer.message());
+        Random random = new Random(ladderSize);
+        // 최대 랭크를 넘는 포인트도 섞습니다.
+        for (int i = 0; i < SAMPLES; i++) {
+            points[i] = random.nextInt((ladderSize + 1) * STEP);
+        }
+    }
+
+    private int nextPoint() {
+        return points[index++ & (SAMPLES - 1)];
+    }
+
+    @Benchmark
+    public int findGroup() {
+        return groupConfig.findGroup(nextPoint());
+    }
+
+    @Benchmark
+    public Rank findRank() {
+        return groupConfig.findRank(nextPoint());
+    }
+
+    // 플레이스홀더와 메시지에서 쓰는 값을 한 번에 계산합니다.
+    @Benchmark
+    public int rankProgress() {
+        int point = nextPoint();
+        Rank rank = groupConfig.findRank(point);
+        return rank.getPrettyPoint(point) + rank.getNeedPoint(point) + rank.getTotalPoint();
+    }
+}
@@ -0,0 +1,56 @@
+package net.utory.rankpoint;
+
+import java.util.concurrent.TimeUnit;
+import net.utory.rankpoint.data.PlayerDataManager.PlayerData;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+// message.yml 의 메시지를 보낼 때마다 만드는 비용입니다. (보내는 비용은 제외)
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class MessageTemplateBenchmark {
+
+    private Message message;
+    private int index;
+
+    @Setup
+    public void setup(PluginState state) {
+        message = state.plugin.getMessage();
+    }
+
+    private PlayerData nextData(PluginState state) {
+        PlayerData[] data = state.onlineData;
+        return data[index++ % data.length];
+    }
+
+    @Benchmark
+    public String[] staticMessage() {
+        return message.CommandHelpMe().render(null, null, null, null, null);
+    }
+
+    @Benchmark
+    public String[] lookMessage(PluginState state) {
+        return message.CommandLook().render("Sender", "Receiver", nextData(state), null, null);
+    }
+
+    @Benchmark
+    public String[] topEntry(PluginState state) {
+        PlayerData data = nextData(state);
+        return message.CommandTopEntry()
+            .render(null, "Receiver", null, String.valueOf(data.getPoint()),
+                data.getPositionString());
+    }
+
+    // 설정을 다시 불러올 때 메시지마다 한 번 드는 비용입니다.
+    @Benchmark
+    public MessageTemplate compile() {
+        return MessageTemplate.compile("&f<receiver>님의 랭크 포인트: &6<point>/<total_point>"
+            + "\\n&f진급까지 &6<need_point> &f포인트 (<rank>)");
+    }
+}
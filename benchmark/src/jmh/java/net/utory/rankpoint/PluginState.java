@@ -0,0 +1,78 @@
+package net.utory.rankpoint;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.UUID;
+import net.utory.rankpoint.data.DatabaseManager;
+import net.utory.rankpoint.data.PlayerDataManager;
+import net.utory.rankpoint.data.PlayerDataManager.PlayerData;
+import net.utory.rankpoint.metrics.Metrics;
+import org.bukkit.entity.Player;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+// SQLite 에 players 명의 포인트를 저장해 두고, 그중 online 명을 접속한 플레이어처럼 캐시에 불러온 플러그인입니다.
+// 벤치마크 스레드가 메인 스레드 역할을 합니다.
+@State(Scope.Benchmark)
+public class PluginState {
+
+    private static final int MAX_POINT = 100000;
+
+    @Param("100000")
+    public int players;
+    @Param("200")
+    public int online;
+
+    public Rankpoint plugin;
+    public PlayerDataManager playerDataManager;
+    public Player[] onlinePlayers;
+    public PlayerData[] onlineData;
+    private File directory;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        directory = BenchmarkServer.createDirectory();
+        Metrics metrics = new Metrics();
+        DatabaseManager databaseManager = BenchmarkServer.sqlite(directory, metrics);
+        Random random = new Random(players);
+        Map<UUID, Integer> points = new HashMap<>();
+        List<Player> joined = new ArrayList<>();
+        for (int i = 0; i < players; i++) {
+            UUID uuid = new UUID(random.nextLong(), random.nextLong());
+            points.put(uuid, random.nextInt(MAX_POINT));
+            if (i < online) {
+                joined.add(BenchmarkServer.player(uuid, "Player" + i));
+            }
+        }
+        if (!BenchmarkServer.<Boolean>await(callback -> databaseManager.savePoint(points, callback))) {
+            throw new IllegalStateException("Failed to fill the benchmark database.");
+        }
+
+        Message message = BenchmarkServer.message();
+        plugin = BenchmarkServer.plugin(directory, BenchmarkServer.config(), message,
+            BenchmarkServer.groupConfig(50, MAX_POINT / 50, message), databaseManager, metrics);
+        playerDataManager = BenchmarkServer.startPlayerData(plugin);
+        playerDataManager.allPlayerDataLoad(joined);
+        BenchmarkServer.runTasksUntil(() -> joined.stream()
+            .allMatch(player -> playerDataManager.getPlayerDataOrNull(player.getUniqueId()) != null));
+        onlinePlayers = joined.toArray(new Player[0]);
+        onlineData = new PlayerData[onlinePlayers.length];
+        for (int i = 0; i < onlinePlayers.length; i++) {
+            onlineData[i] = playerDataManager.getPlayerDataOrNull(onlinePlayers[i].getUniqueId());
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        playerDataManager.close();
+        BenchmarkServer.deleteDirectory(directory);
+    }
+}
@@ -0,0 +1,93 @@
+package net.utory.rankpoint.data;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import net.utory.rankpoint.BenchmarkServer;
+import net.utory.rankpoint.metrics.Metrics;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+// SqliteBenchmark 와 같은 작업을 메모리 맵 저장소 (player-data.storage: mmap) 에서 실행합니다.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+public class MmapBenchmark {
+
+    @Param({"1000", "100000", "1000000"})
+    public int rows;
+    // 저장할 때마다 디스크에 쓰는지 (player-data.Mmap.force-on-save)
+    @Param({"true", "false"})
+    public boolean forceOnSave;
+
+    private File directory;
+    private DatabaseManager databaseManager;
+    private final Map<UUID, Integer> points = new LinkedHashMap<>();
+    private List<UUID> uuids;
+    private int round;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        directory = BenchmarkServer.createDirectory();
+        databaseManager = BenchmarkServer.mmap(directory, forceOnSave, new Metrics());
+        Random random = new Random(rows);
+        for (int i = 0; i < rows; i++) {
+            points.put(new UUID(random.nextLong(), random.nextLong()), random.nextInt(100000));
+        }
+        uuids = new ArrayList<>(points.keySet());
+        save();
+    }
+
+    // 매번 다른 값을 저장합니다.
+    @Setup(Level.Iteration)
+    public void changePoints() {
+        int offset = ++round;
+        points.replaceAll((uuid, point) -> point + offset);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        databaseManager.closeDatabase();
+        BenchmarkServer.deleteDirectory(directory);
+    }
+
+    @Benchmark
+    public boolean savePoint() {
+        return save();
+    }
+
+    private boolean save() {
+        if (!BenchmarkServer.<Boolean>await(callback -> databaseManager.savePoint(points, callback))) {
+            throw new IllegalStateException("Failed to save " + rows + " rows.");
+        }
+        return true;
+    }
+
+    @Benchmark
+    public Map<UUID, Integer> loadPoints() {
+        return BenchmarkServer.await(callback -> databaseManager.loadPoints(uuids, callback));
+    }
+
+    // 순위표를 처음 불러올 때
+    @Benchmark
+    public Map<UUID, Integer> loadTopPoints() {
+        return BenchmarkServer.await(callback -> databaseManager.loadTopPoints(200, callback));
+    }
+}
@@ -0,0 +1,52 @@
+package net.utory.rankpoint.data;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import net.utory.rankpoint.PluginState;
+import net.utory.rankpoint.data.PlayerDataManager.PlayerData;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+// 포인트를 바꿀 때 메인 스레드에서 드는 비용입니다. (랭크 계산, 저장 표시, 순위표와 분포 갱신)
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class PlayerDataBenchmark {
+
+    private static final int SAMPLES = 4096;
+
+    private PlayerData[] data;
+    private final int[] points = new int[SAMPLES];
+    private int index;
+
+    @Setup
+    public void setup(PluginState state) {
+        data = state.onlineData;
+        Random random = new Random(SAMPLES);
+        for (int i = 0; i < SAMPLES; i++) {
+            points[i] = random.nextInt(100000);
+        }
+    }
+
+    // 대부분 랭크와 순위가 바뀌는 경우
+    @Benchmark
+    public int setPoint() {
+        int i = index++;
+        PlayerData target = data[i % data.length];
+        target.setPoint(points[i & (SAMPLES - 1)]);
+        return target.getGroupInt();
+    }
+
+    // 대부분 랭크는 그대로인 경우
+    @Benchmark
+    public int addPoint() {
+        PlayerData target = data[index++ % data.length];
+        target.addPoint(1);
+        return target.getGroupInt();
+    }
+}
@@ -0,0 +1,39 @@
+package net.utory.rankpoint.placeholderapi;
+
+import java.util.concurrent.TimeUnit;
+import net.utory.rankpoint.PluginState;
+import org.bukkit.entity.Player;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+// 스코어보드나 탭 목록처럼 접속한 플레이어마다 플레이스홀더를 계속 요청하는 경우입니다.
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class PlaceholderBenchmark {
+
+    @Param({"point", "needpoint", "rank", "position", "percentile", "top_1_name", "top_10_point",
+        "unknown"})
+    public String identifier;
+
+    private RankpointExpansion expansion;
+    private Player[] players;
+    private int index;
+
+    @Setup
+    public void setup(PluginState state) {
+        expansion = new RankpointExpansion(state.plugin);
+        players = state.onlinePlayers;
+    }
+
+    @Benchmark
+    public String resolve() {
+        return expansion.onPlaceholderRequest(players[index++ % players.length], identifier);
+    }
+}
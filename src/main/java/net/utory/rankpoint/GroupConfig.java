@@ -1,41 +1,47 @@
 package net.utory.rankpoint;
 
-import static net.utory.rankpoint.Message.broadcastMessage;
-
-import java.util.Collections;
+import java.util.Arrays;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import net.milkbowl.vault.permission.Permission;
-import net.utory.rankpoint.data.PlayerDataManager.PlayerData;
 import org.bukkit.entity.Player;
 
 public final class GroupConfig {
 
     private final Rankpoint instance;
-    private final List<String> groupNames;
-    private final List<Integer> pointConditions;
-    private final Map<String, String> displayGroupNamesMap;
+    private final Set<String> groupNames;
+    // 누적 진급 포인트. 설정을 불러올 때 한 번 만들어 두고 이진 탐색으로 랭크를 찾습니다.
+    private final int[] pointConditions;
+    private final Rank[] ranks;
 
     GroupConfig(Rankpoint instance, List<String> groupNames, List<Integer> pointConditions,
-        Map<String, String> displayGroupNamesMap) {
+        Map<String, String> displayGroupNamesMap, Message message) {
         this.instance = instance;
-        this.groupNames = Collections.unmodifiableList(groupNames);
-        this.pointConditions = Collections.unmodifiableList(pointConditions);
-        this.displayGroupNamesMap = displayGroupNamesMap;
-        if (this.groupNames.size() != this.pointConditions.size()) {
+        if (groupNames.size() != pointConditions.size()) {
             throw new IllegalArgumentException(
                 "The number of group names and the number of point conditions cannot be different. group names size: "
                     + groupNames + " point conditions size: " + pointConditions);
         }
+        this.groupNames = new HashSet<>(groupNames);
+        this.pointConditions = pointConditions.stream().mapToInt(Integer::intValue).toArray();
+        this.ranks = new Rank[groupNames.size()];
+        for (int i = 0; i < ranks.length; i++) {
+            String name = groupNames.get(i);
+            ranks[i] = new Rank(i, name, displayGroupNamesMap.get(name), this.pointConditions[i],
+                i + 1 < ranks.length ? this.pointConditions[i + 1] : -1, message);
+        }
     }
 
-    public void updatePlayerRank(Player player, PlayerData playerData) {
+    // 플레이어를 groupName 그룹으로 옮기고, 새로 그룹에 추가되었으면 true 를 반환합니다.
+    // RankSynchronizer 의 작업 스레드에서 호출됩니다.
+    boolean applyPlayerRank(Player player, String groupName) {
         if (!player.isOnline()) {
-            return;
+            return false;
         }
 
         Permission permission = instance.getPermission();
-        String groupName = groupNames.get(playerData.getGroupInt());
 
         for (String s : permission.getPlayerGroups(null, player)) {
             if (groupNames.contains(s) && !s.equals(groupName)) {
@@ -45,47 +51,113 @@ public final class GroupConfig {
 
         if (!permission.playerInGroup(null, player, groupName)) {
             permission.playerAddGroup(null, player, groupName);
-            Message msg = instance.getMessage();
-            broadcastMessage(msg.BroadcastRankup(), null, player.getName(), playerData, null);
+            return true;
         }
+        return false;
     }
 
     public int findGroup(int point) {
         if (point == 0) {
             return 0;
         }
-        int n = -1;
-        for (int cond : this.pointConditions) {
-            if (cond != 0 && point < cond) {
-                return n;
-            }
-            n++;
+        // point 이하인 진급 조건의 수 - 1
+        int index = Arrays.binarySearch(pointConditions, point);
+        if (index < 0) {
+            return -index - 2;
         }
-        return n;
+        while (index + 1 < pointConditions.length && pointConditions[index + 1] == point) {
+            index++;
+        }
+        return index;
+    }
+
+    // 랭크 0 의 조건보다 적은 포인트는 랭크 0 으로 취급합니다.
+    public Rank findRank(int point) {
+        return ranks[Math.max(0, findGroup(point))];
+    }
+
+    public Rank getRank(int group) {
+        return ranks[group];
+    }
+
+    public int getRankCount() {
+        return ranks.length;
     }
 
     public String getGroupName(int group) {
-        return displayGroupNamesMap.get(groupNames.get(group));
+        return ranks[group].getDisplayName();
     }
 
     public int getPrretyPoint(int point) {
-        if (point == 0 || point < pointConditions.get(0)) {
-            return point;
-        }
-        return point - pointConditions.get(findGroup(point));
+        return findRank(point).getPrettyPoint(point);
     }
 
     public int getTotalPoint(int group) {
-        if (pointConditions.size() == group + 1) {
-            return -1;
-        }
-        return pointConditions.get(group + 1) - pointConditions.get(group);
+        return ranks[group].getTotalPoint();
     }
 
     public int getNeedPoint(int group, int point) {
-        if (pointConditions.size() == group + 1) {
-            return -1;
+        return ranks[group].getNeedPoint(point);
+    }
+
+    public static final class Rank {
+
+        private final int index;
+        private final String name;
+        private final String displayName;
+        private final int condition;
+        private final int nextCondition;
+        private final int totalPoint;
+        private final String totalPointString;
+        private final String maxNeedPoint;
+
+        private Rank(int index, String name, String displayName, int condition, int nextCondition,
+            Message message) {
+            this.index = index;
+            this.name = name;
+            this.displayName = displayName;
+            this.condition = condition;
+            this.nextCondition = nextCondition;
+            this.totalPoint = nextCondition == -1 ? -1 : nextCondition - condition;
+            this.totalPointString =
+                totalPoint == -1 ? message.RankMaxTotalPoint() : String.valueOf(totalPoint);
+            this.maxNeedPoint = message.RankMaxNeedPoint();
+        }
+
+        public int getIndex() {
+            return index;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public String getDisplayName() {
+            return displayName;
+        }
+
+        public boolean isMax() {
+            return nextCondition == -1;
+        }
+
+        public int getPrettyPoint(int point) {
+            return point < condition ? point : point - condition;
+        }
+
+        public int getTotalPoint() {
+            return totalPoint;
+        }
+
+        public String getTotalPointString() {
+            return totalPointString;
+        }
+
+        public int getNeedPoint(int point) {
+            return isMax() ? -1 : nextCondition - point;
+        }
+
+        public String getMaxNeedPoint() {
+            return maxNeedPoint;
         }
-        return pointConditions.get(group + 1) - point;
     }
 }
@@ -8,98 +8,115 @@ import org.bukkit.configuration.file.FileConfiguration;
 
 public class Message {
 
-    private String BROADCAST_RANKUP;
+    private MessageTemplate BROADCAST_RANKUP;
     private String RANK_MAX_NEED_POINT;
     private String RANK_MAX_TOTAL_POINT;
-    private String COMMAND_DONTHAVEPERM;
-    private String COMMAND_UNKNOWNARG;
-    private String COMMAND_HELP_ME;
-    private String COMMAND_HELP_LOOK;
-    private String COMMAND_HELP_GIVE;
-    private String COMMAND_HELP_GIVEALL;
-    private String COMMAND_HELP_TAKE;
-    private String COMMAND_HELP_SET;
-    private String COMMAND_HELP_RESET;
-    private String COMMAND_HELP_RELOAD;
-    private String COMMAND_HELP_MIGRATE;
-    private String COMMAND_ME;
-    private String COMMAND_LOOK;
-    private String COMMAND_GIVE_SENDER;
-    private String COMMAND_GIVE_RECEIVER;
-    private String COMMAND_GIVEALL;
-    private String COMMAND_TAKE_SENDER;
-    private String COMMAND_TAKE_RECEIVER;
-    private String COMMAND_SET_SENDER;
-    private String COMMAND_SET_RECEIVER;
-    private String COMMAND_RESET_SENDER;
-    private String COMMAND_RESET_RECEIVER;
-    private String COMMAND_RELOAD_SUCCESS;
-    private String COMMAND_RELOAD_FAILED;
-    private String COMMAND_MIGRATE;
-
-    public static void sendMessage(CommandSender sender, String str, String senderName, String receiver, PlayerData receiverData, String arg) {
-        for (String s : format(str, senderName, receiver, receiverData, arg).split("\\\\n")) {
+    private MessageTemplate COMMAND_DONTHAVEPERM;
+    private MessageTemplate COMMAND_UNKNOWNARG;
+    private MessageTemplate COMMAND_UNKNOWNPLAYER;
+    private MessageTemplate COMMAND_LOADFAILED;
+    private MessageTemplate COMMAND_HELP_ME;
+    private MessageTemplate COMMAND_HELP_LOOK;
+    private MessageTemplate COMMAND_HELP_TOP;
+    private MessageTemplate COMMAND_HELP_GIVE;
+    private MessageTemplate COMMAND_HELP_GIVEALL;
+    private MessageTemplate COMMAND_HELP_TAKE;
+    private MessageTemplate COMMAND_HELP_SET;
+    private MessageTemplate COMMAND_HELP_RESET;
+    private MessageTemplate COMMAND_HELP_RELOAD;
+    private MessageTemplate COMMAND_HELP_MIGRATE;
+    private MessageTemplate COMMAND_HELP_STATS;
+    private MessageTemplate COMMAND_ME;
+    private MessageTemplate COMMAND_LOOK;
+    private MessageTemplate COMMAND_TOP_HEADER;
+    private MessageTemplate COMMAND_TOP_ENTRY;
+    private MessageTemplate COMMAND_GIVE_SENDER;
+    private MessageTemplate COMMAND_GIVE_RECEIVER;
+    private MessageTemplate COMMAND_GIVEALL;
+    private MessageTemplate COMMAND_TAKE_SENDER;
+    private MessageTemplate COMMAND_TAKE_RECEIVER;
+    private MessageTemplate COMMAND_SET_SENDER;
+    private MessageTemplate COMMAND_SET_RECEIVER;
+    private MessageTemplate COMMAND_RESET_SENDER;
+    private MessageTemplate COMMAND_RESET_RECEIVER;
+    private MessageTemplate COMMAND_RELOAD_SUCCESS;
+    private MessageTemplate COMMAND_RELOAD_FAILED;
+    private MessageTemplate COMMAND_MIGRATE_START;
+    private MessageTemplate COMMAND_MIGRATE_PROGRESS;
+    private MessageTemplate COMMAND_MIGRATE_SUCCESS;
+    private MessageTemplate COMMAND_MIGRATE_FAILED;
+    private MessageTemplate COMMAND_MIGRATE_RUNNING;
+    private MessageTemplate COMMAND_STATS_HEADER;
+    private MessageTemplate COMMAND_STATS_ENTRY;
+
+    public static void sendMessage(CommandSender sender, MessageTemplate template,
+        String senderName, String receiver, PlayerData receiverData, String arg) {
+        sendMessage(sender, template, senderName, receiver, receiverData, arg, null);
+    }
+
+    public static void sendMessage(CommandSender sender, MessageTemplate template,
+        String senderName, String receiver, PlayerData receiverData, String arg, String position) {
+        for (String s : template.render(senderName, receiver, receiverData, arg, position)) {
             sender.sendMessage(s);
         }
     }
-    public static void broadcastMessage(String str, String senderName, String receiver, PlayerData receiverData, String arg) {
-        for (String s : format(str, senderName, receiver, receiverData, arg).split("\\\\n")) {
-            Bukkit.broadcastMessage(s);
-        }
-    }
 
-    private static String format(String str, String senderName, String receiver, PlayerData receiverData, String arg) {
-        if (senderName != null) {
-            str = str.replace("<sender>", senderName);
-        }
-        if (receiver != null) {
-            str = str.replace("<receiver>", receiver);
-        }
-        if (receiverData != null) {
-            str = str.replace("<point>", receiverData.getPrettyPoint()+"")
-                .replace("<need_point>", receiverData.getNeedPoint()+"")
-                .replace("<total_point>", receiverData.getTotalPoint()+"")
-                .replace("<rank>", receiverData.getGroup());
-        }
-        if (arg != null) {
-            str = str.replace("<arg>", arg);
+    public static void broadcastMessage(MessageTemplate template, String senderName,
+        String receiver, PlayerData receiverData, String arg) {
+        for (String s : template.render(senderName, receiver, receiverData, arg, null)) {
+            Bukkit.broadcastMessage(s);
         }
-        return str;
     }
 
-    public static void sendMessage(CommandSender sender, String str) {
-        sendMessage(sender, str, null, null, null, null);
+    public static void sendMessage(CommandSender sender, MessageTemplate template) {
+        sendMessage(sender, template, null, null, null, null, null);
     }
 
     public void loadMessages(FileConfiguration conf) {
-        BROADCAST_RANKUP = getString(conf, "broadcast.rankup");
+        BROADCAST_RANKUP = getTemplate(conf, "broadcast.rankup");
         RANK_MAX_NEED_POINT = getString(conf, "rank-max.need-point");
         RANK_MAX_TOTAL_POINT = getString(conf, "rank-max.total-point");
-        COMMAND_DONTHAVEPERM = getString(conf, "command.donthaveperm");
-        COMMAND_UNKNOWNARG = getString(conf, "command.unknownarg");
-        COMMAND_HELP_ME = getString(conf, "command.help.me");
-        COMMAND_HELP_LOOK = getString(conf, "command.help.look");
-        COMMAND_HELP_GIVE = getString(conf, "command.help.give");
-        COMMAND_HELP_GIVEALL = getString(conf, "command.help.giveall");
-        COMMAND_HELP_TAKE = getString(conf, "command.help.take");
-        COMMAND_HELP_SET = getString(conf, "command.help.set");
-        COMMAND_HELP_RESET = getString(conf, "command.help.reset");
-        COMMAND_HELP_RELOAD = getString(conf, "command.help.reload");
-        COMMAND_HELP_MIGRATE = getString(conf, "command.help.migrate");
-        COMMAND_ME = getString(conf, "command.me");
-        COMMAND_LOOK = getString(conf, "command.look");
-        COMMAND_GIVE_SENDER = getString(conf, "command.give.sender");
-        COMMAND_GIVE_RECEIVER = getString(conf, "command.give.receiver");
-        COMMAND_GIVEALL = getString(conf, "command.giveall");
-        COMMAND_TAKE_SENDER = getString(conf, "command.take.sender");
-        COMMAND_TAKE_RECEIVER = getString(conf, "command.take.receiver");
-        COMMAND_SET_SENDER = getString(conf, "command.set.sender");
-        COMMAND_SET_RECEIVER = getString(conf, "command.set.receiver");
-        COMMAND_RESET_SENDER = getString(conf, "command.reset.sender");
-        COMMAND_RESET_RECEIVER = getString(conf, "command.reset.receiver");
-        COMMAND_RELOAD_SUCCESS = getString(conf, "command.reload.success");
-        COMMAND_RELOAD_FAILED = getString(conf, "command.reload.failed");
-        COMMAND_MIGRATE = getString(conf, "command.migrate");
+        COMMAND_DONTHAVEPERM = getTemplate(conf, "command.donthaveperm");
+        COMMAND_UNKNOWNARG = getTemplate(conf, "command.unknownarg");
+        COMMAND_UNKNOWNPLAYER = getTemplate(conf, "command.unknownplayer");
+        COMMAND_LOADFAILED = getTemplate(conf, "command.loadfailed");
+        COMMAND_HELP_ME = getTemplate(conf, "command.help.me");
+        COMMAND_HELP_LOOK = getTemplate(conf, "command.help.look");
+        COMMAND_HELP_TOP = getTemplate(conf, "command.help.top");
+        COMMAND_HELP_GIVE = getTemplate(conf, "command.help.give");
+        COMMAND_HELP_GIVEALL = getTemplate(conf, "command.help.giveall");
+        COMMAND_HELP_TAKE = getTemplate(conf, "command.help.take");
+        COMMAND_HELP_SET = getTemplate(conf, "command.help.set");
+        COMMAND_HELP_RESET = getTemplate(conf, "command.help.reset");
+        COMMAND_HELP_RELOAD = getTemplate(conf, "command.help.reload");
+        COMMAND_HELP_MIGRATE = getTemplate(conf, "command.help.migrate");
+        COMMAND_HELP_STATS = getTemplate(conf, "command.help.stats");
+        COMMAND_ME = getTemplate(conf, "command.me");
+        COMMAND_LOOK = getTemplate(conf, "command.look");
+        COMMAND_TOP_HEADER = getTemplate(conf, "command.top.header");
+        COMMAND_TOP_ENTRY = getTemplate(conf, "command.top.entry");
+        COMMAND_GIVE_SENDER = getTemplate(conf, "command.give.sender");
+        COMMAND_GIVE_RECEIVER = getTemplate(conf, "command.give.receiver");
+        COMMAND_GIVEALL = getTemplate(conf, "command.giveall");
+        COMMAND_TAKE_SENDER = getTemplate(conf, "command.take.sender");
+        COMMAND_TAKE_RECEIVER = getTemplate(conf, "command.take.receiver");
+        COMMAND_SET_SENDER = getTemplate(conf, "command.set.sender");
+        COMMAND_SET_RECEIVER = getTemplate(conf, "command.set.receiver");
+        COMMAND_RESET_SENDER = getTemplate(conf, "command.reset.sender");
+        COMMAND_RESET_RECEIVER = getTemplate(conf, "command.reset.receiver");
+        COMMAND_RELOAD_SUCCESS = getTemplate(conf, "command.reload.success");
+        COMMAND_RELOAD_FAILED = getTemplate(conf, "command.reload.failed");
+        COMMAND_MIGRATE_START = getTemplate(conf, "command.migrate.start");
+        COMMAND_MIGRATE_PROGRESS = getTemplate(conf, "command.migrate.progress");
+        COMMAND_MIGRATE_SUCCESS = getTemplate(conf, "command.migrate.success");
+        COMMAND_MIGRATE_FAILED = getTemplate(conf, "command.migrate.failed");
+        COMMAND_MIGRATE_RUNNING = getTemplate(conf, "command.migrate.running");
+        COMMAND_STATS_HEADER = getTemplate(conf, "command.stats.header");
+        COMMAND_STATS_ENTRY = getTemplate(conf, "command.stats.entry");
+    }
+
+    private MessageTemplate getTemplate(FileConfiguration conf, String path) {
+        return MessageTemplate.compile(getString(conf, path));
     }
 
     private String getString(FileConfiguration conf, String path) {
@@ -111,7 +128,7 @@ public class Message {
         }
     }
 
-    public String BroadcastRankup() {
+    public MessageTemplate BroadcastRankup() {
         return BROADCAST_RANKUP;
     }
 
@@ -123,103 +140,151 @@ public class Message {
         return RANK_MAX_TOTAL_POINT;
     }
 
-    public String CommandDonthaveperm() {
+    public MessageTemplate CommandDonthaveperm() {
         return COMMAND_DONTHAVEPERM;
     }
 
-    public String CommandUnknownarg() {
+    public MessageTemplate CommandUnknownarg() {
         return COMMAND_UNKNOWNARG;
     }
 
-    public String CommandHelpMe() {
+    public MessageTemplate CommandUnknownplayer() {
+        return COMMAND_UNKNOWNPLAYER;
+    }
+
+    public MessageTemplate CommandLoadfailed() {
+        return COMMAND_LOADFAILED;
+    }
+
+    public MessageTemplate CommandHelpMe() {
         return COMMAND_HELP_ME;
     }
 
-    public String CommandHelpLook() {
+    public MessageTemplate CommandHelpLook() {
         return COMMAND_HELP_LOOK;
     }
 
-    public String CommandHelpGive() {
+    public MessageTemplate CommandHelpTop() {
+        return COMMAND_HELP_TOP;
+    }
+
+    public MessageTemplate CommandHelpGive() {
         return COMMAND_HELP_GIVE;
     }
 
-    public String CommandHelpGiveall() {
+    public MessageTemplate CommandHelpGiveall() {
         return COMMAND_HELP_GIVEALL;
     }
 
-    public String CommandHelpTake() {
+    public MessageTemplate CommandHelpTake() {
         return COMMAND_HELP_TAKE;
     }
 
-    public String CommandHelpSet() {
+    public MessageTemplate CommandHelpSet() {
         return COMMAND_HELP_SET;
     }
 
-    public String CommandHelpReset() {
+    public MessageTemplate CommandHelpReset() {
         return COMMAND_HELP_RESET;
     }
 
-    public String CommandHelpReload() {
+    public MessageTemplate CommandHelpReload() {
         return COMMAND_HELP_RELOAD;
     }
 
-    public String CommandHelpMigrate() {
+    public MessageTemplate CommandHelpMigrate() {
         return COMMAND_HELP_MIGRATE;
     }
 
-    public String CommandMe() {
+    public MessageTemplate CommandHelpStats() {
+        return COMMAND_HELP_STATS;
+    }
+
+    public MessageTemplate CommandMe() {
         return COMMAND_ME;
     }
 
-    public String CommandLook() {
+    public MessageTemplate CommandLook() {
         return COMMAND_LOOK;
     }
 
-    public String CommandGiveSender() {
+    public MessageTemplate CommandTopHeader() {
+        return COMMAND_TOP_HEADER;
+    }
+
+    public MessageTemplate CommandTopEntry() {
+        return COMMAND_TOP_ENTRY;
+    }
+
+    public MessageTemplate CommandGiveSender() {
         return COMMAND_GIVE_SENDER;
     }
 
-    public String CommandGiveReceiver() {
+    public MessageTemplate CommandGiveReceiver() {
         return COMMAND_GIVE_RECEIVER;
     }
 
-    public String CommandGiveall() {
+    public MessageTemplate CommandGiveall() {
         return COMMAND_GIVEALL;
     }
 
-    public String CommandTakeSender() {
+    public MessageTemplate CommandTakeSender() {
         return COMMAND_TAKE_SENDER;
     }
 
-    public String CommandTakeReceiver() {
+    public MessageTemplate CommandTakeReceiver() {
         return COMMAND_TAKE_RECEIVER;
     }
 
-    public String CommandSetSender() {
+    public MessageTemplate CommandSetSender() {
         return COMMAND_SET_SENDER;
     }
 
-    public String CommandSetReceiver() {
+    public MessageTemplate CommandSetReceiver() {
         return COMMAND_SET_RECEIVER;
     }
 
-    public String CommandResetSender() {
+    public MessageTemplate CommandResetSender() {
         return COMMAND_RESET_SENDER;
     }
 
-    public String CommandResetReceiver() {
+    public MessageTemplate CommandResetReceiver() {
         return COMMAND_RESET_RECEIVER;
     }
 
-    public String CommandReloadSuccess() {
+    public MessageTemplate CommandReloadSuccess() {
         return COMMAND_RELOAD_SUCCESS;
     }
 
-    public String CommandReloadFailed() {
+    public MessageTemplate CommandReloadFailed() {
         return COMMAND_RELOAD_FAILED;
     }
 
-    public String CommandMigrate() {
-        return COMMAND_MIGRATE;
+    public MessageTemplate CommandMigrateStart() {
+        return COMMAND_MIGRATE_START;
+    }
+
+    public MessageTemplate CommandMigrateProgress() {
+        return COMMAND_MIGRATE_PROGRESS;
+    }
+
+    public MessageTemplate CommandMigrateSuccess() {
+        return COMMAND_MIGRATE_SUCCESS;
+    }
+
+    public MessageTemplate CommandMigrateFailed() {
+        return COMMAND_MIGRATE_FAILED;
+    }
+
+    public MessageTemplate CommandMigrateRunning() {
+        return COMMAND_MIGRATE_RUNNING;
+    }
+
+    public MessageTemplate CommandStatsHeader() {
+        return COMMAND_STATS_HEADER;
+    }
+
+    public MessageTemplate CommandStatsEntry() {
+        return COMMAND_STATS_ENTRY;
     }
 }
@@ -0,0 +1,137 @@
+package net.utory.rankpoint;
+
+import java.util.ArrayList;
+import java.util.List;
+import net.utory.rankpoint.data.PlayerDataManager.PlayerData;
+
+// message.yml 의 메시지를 불러올 때 한 번만 줄 단위로 나누고 <sender> 같은 치환 위치를 찾아 둡니다.
+// 보낼 때는 고정 문자열과 값만 이어 붙이므로 매번 replace 나 split 을 하지 않습니다.
+public final class MessageTemplate {
+
+    private static final String[] TOKENS = {"<sender>", "<receiver>", "<point>", "<need_point>",
+        "<total_point>", "<rank>", "<arg>", "<position>"};
+    private static final int SENDER = 0;
+    private static final int RECEIVER = 1;
+    private static final int POINT = 2;
+    private static final int NEED_POINT = 3;
+    private static final int TOTAL_POINT = 4;
+    private static final int RANK = 5;
+    private static final int ARG = 6;
+    private static final int POSITION = 7;
+
+    private final String text;
+    // 줄마다 parts[0] slots[0] parts[1] slots[1] ... parts[n] 순서로 이어 붙입니다.
+    private final String[][] parts;
+    private final int[][] slots;
+    private final int maxLength;
+
+    private MessageTemplate(String text, String[][] parts, int[][] slots) {
+        this.text = text;
+        this.parts = parts;
+        this.slots = slots;
+        int max = 0;
+        for (String[] line : parts) {
+            int length = 0;
+            for (String part : line) {
+                length += part.length();
+            }
+            max = Math.max(max, length);
+        }
+        this.maxLength = max;
+    }
+
+    public static MessageTemplate compile(String text) {
+        String[] lines = text.split("\\\\n");
+        String[][] parts = new String[lines.length][];
+        int[][] slots = new int[lines.length][];
+        for (int i = 0; i < lines.length; i++) {
+            List<String> lineParts = new ArrayList<>();
+            List<Integer> lineSlots = new ArrayList<>();
+            String line = lines[i];
+            int start = 0;
+            int open = line.indexOf('<');
+            while (open != -1) {
+                int slot = tokenAt(line, open);
+                if (slot == -1) {
+                    open = line.indexOf('<', open + 1);
+                    continue;
+                }
+                lineParts.add(line.substring(start, open));
+                lineSlots.add(slot);
+                start = open + TOKENS[slot].length();
+                open = line.indexOf('<', start);
+            }
+            lineParts.add(line.substring(start));
+            parts[i] = lineParts.toArray(new String[0]);
+            slots[i] = lineSlots.stream().mapToInt(Integer::intValue).toArray();
+        }
+        return new MessageTemplate(text, parts, slots);
+    }
+
+    private static int tokenAt(String line, int index) {
+        for (int slot = 0; slot < TOKENS.length; slot++) {
+            if (line.startsWith(TOKENS[slot], index)) {
+                return slot;
+            }
+        }
+        return -1;
+    }
+
+    // 값이 null 인 자리는 원래의 <...> 를 그대로 남깁니다.
+    public String[] render(String senderName, String receiver, PlayerData receiverData, String arg,
+        String position) {
+        String[] result = new String[parts.length];
+        StringBuilder sb = null;
+        for (int i = 0; i < parts.length; i++) {
+            if (slots[i].length == 0) {
+                result[i] = parts[i][0];
+                continue;
+            }
+            if (sb == null) {
+                sb = new StringBuilder(maxLength + 32);
+            } else {
+                sb.setLength(0);
+            }
+            String[] lineParts = parts[i];
+            int[] lineSlots = slots[i];
+            for (int j = 0; j < lineSlots.length; j++) {
+                sb.append(lineParts[j]);
+                String value = value(lineSlots[j], senderName, receiver, receiverData, arg,
+                    position);
+                sb.append(value == null ? TOKENS[lineSlots[j]] : value);
+            }
+            sb.append(lineParts[lineSlots.length]);
+            result[i] = sb.toString();
+        }
+        return result;
+    }
+
+    private static String value(int slot, String senderName, String receiver,
+        PlayerData receiverData, String arg, String position) {
+        switch (slot) {
+            case SENDER:
+                return senderName;
+            case RECEIVER:
+                return receiver;
+            case POINT:
+                return receiverData == null ? null : receiverData.getPrettyPointString();
+            case NEED_POINT:
+                return receiverData == null ? null : receiverData.getNeedPoint();
+            case TOTAL_POINT:
+                return receiverData == null ? null : receiverData.getTotalPoint();
+            case RANK:
+                return receiverData == null ? null : receiverData.getGroup();
+            case ARG:
+                return arg;
+            case POSITION:
+                return position;
+            default:
+                return null;
+        }
+    }
+
+    @Override
+    public String toString() {
+        return text;
+    }
+}
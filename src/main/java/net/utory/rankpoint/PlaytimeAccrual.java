@@ -0,0 +1,222 @@
+package net.utory.rankpoint;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import net.utory.rankpoint.data.PlayerDataManager;
+import org.bukkit.Bukkit;
+import org.bukkit.Location;
+import org.bukkit.configuration.ConfigurationSection;
+import org.bukkit.configuration.file.FileConfiguration;
+import org.bukkit.entity.Player;
+import org.bukkit.event.EventHandler;
+import org.bukkit.event.EventPriority;
+import org.bukkit.event.Listener;
+import org.bukkit.event.player.AsyncPlayerChatEvent;
+import org.bukkit.event.player.PlayerCommandPreprocessEvent;
+import org.bukkit.event.player.PlayerInteractEvent;
+import org.bukkit.event.player.PlayerJoinEvent;
+import org.bukkit.event.player.PlayerMoveEvent;
+import org.bukkit.event.player.PlayerQuitEvent;
+import org.bukkit.permissions.Permission;
+import org.bukkit.permissions.PermissionDefault;
+import org.bukkit.plugin.PluginManager;
+import org.bukkit.scheduler.BukkitTask;
+
+// 접속 시간에 따라 포인트를 줍니다. interval 마다 한 번, 접속 중인 모든 플레이어의 포인트를 모아 PlayerDataManager 에
+// 한 번에 적용하므로 플레이어마다 랭크는 주기마다 한 번만 계산됩니다. 시점을 돌리거나 채팅, 명령어, 상호작용을
+// afk-timeout 동안 하지 않은 플레이어는 제외합니다. (물길 등으로 움직이기만 하는 것은 활동으로 보지 않습니다)
+public final class PlaytimeAccrual implements Listener {
+
+    private static final String MULTIPLIER_PERMISSION = "rankpoint.playtime.";
+
+    private final Rankpoint instance;
+    // 마지막 활동 시각 (밀리초). 채팅은 비동기 이벤트이므로 동시에 사용할 수 있는 Map 을 사용합니다.
+    private final Map<UUID, Long> lastActivity = new ConcurrentHashMap<>();
+    // 배율로 생긴 1 보다 작은 포인트 (다음 주기에 더합니다)
+    private final Map<UUID, Double> fractions = new HashMap<>();
+    private BukkitTask task;
+    private int points;
+    private long afkTimeout;
+    // 배율이 큰 순서
+    private List<Multiplier> multipliers = new ArrayList<>();
+    private long awardedPoints = 0;
+    private int lastAwarded = 0;
+    private int lastAfk = 0;
+    private long lastTickTime = 0;
+
+    PlaytimeAccrual(Rankpoint instance) {
+        this.instance = instance;
+    }
+
+    void start(FileConfiguration cf) {
+        if (task != null) {
+            task.cancel();
+            task = null;
+        }
+        if (!cf.getBoolean("playtime.enabled", false)) {
+            lastActivity.clear();
+            fractions.clear();
+            return;
+        }
+        long interval = Math.max(1, cf.getLong("playtime.interval", 60)) * 20;
+        points = Math.max(0, cf.getInt("playtime.points", 1));
+        afkTimeout = TimeUnit.SECONDS
+            .toMillis(Math.max(0, cf.getLong("playtime.afk-timeout", 300)));
+        multipliers = loadMultipliers(cf.getConfigurationSection("playtime.multipliers"));
+        long now = System.currentTimeMillis();
+        for (Player player : Bukkit.getOnlinePlayers()) {
+            lastActivity.putIfAbsent(player.getUniqueId(), now);
+        }
+        task = Bukkit.getScheduler().runTaskTimer(instance, this::tick, interval, interval);
+    }
+
+    // 배율 권한은 이름을 설정에서 정하므로 plugin.yml 에 없습니다. 등록하지 않은 권한은 op 가 기본으로 가지므로,
+    // 기본값을 false 로 등록해 직접 준 플레이어만 배율을 받도록 합니다.
+    private static List<Multiplier> loadMultipliers(ConfigurationSection section) {
+        List<Multiplier> list = new ArrayList<>();
+        if (section == null) {
+            return list;
+        }
+        PluginManager pluginManager = Bukkit.getPluginManager();
+        for (String name : section.getKeys(false)) {
+            double multiplier = section.getDouble(name, 1);
+            if (multiplier >= 0) {
+                String permission = MULTIPLIER_PERMISSION + name;
+                if (pluginManager.getPermission(permission) == null) {
+                    pluginManager.addPermission(new Permission(permission, PermissionDefault.FALSE));
+                }
+                list.add(new Multiplier(permission, multiplier));
+            }
+        }
+        list.sort((a, b) -> Double.compare(b.multiplier, a.multiplier));
+        return list;
+    }
+
+    // 플레이어마다 줄 포인트를 정해 변화량으로 모은 뒤, 이번 틱에 한 번에 적용합니다.
+    private void tick() {
+        long started = System.nanoTime();
+        long now = System.currentTimeMillis();
+        PlayerDataManager playerDataManager = instance.getPlayerDataManager();
+        int awarded = 0;
+        int afk = 0;
+        for (Player player : Bukkit.getOnlinePlayers()) {
+            UUID uuid = player.getUniqueId();
+            Long active = lastActivity.get(uuid);
+            if (afkTimeout > 0 && active != null && now - active >= afkTimeout) {
+                afk++;
+                continue;
+            }
+            double earned = points * multiplier(player) + fractions.getOrDefault(uuid, 0D);
+            int amount = (int) Math.min(Integer.MAX_VALUE, Math.floor(earned));
+            fractions.put(uuid, earned - amount);
+            if (amount > 0) {
+                playerDataManager.queuePointDelta(uuid, amount);
+                awardedPoints += amount;
+                awarded++;
+            }
+        }
+        if (awarded > 0) {
+            playerDataManager.applyPendingDeltas();
+        }
+        lastAwarded = awarded;
+        lastAfk = afk;
+        lastTickTime = System.nanoTime() - started;
+    }
+
+    // 가진 권한 중 가장 큰 배율, 없으면 1
+    private double multiplier(Player player) {
+        for (Multiplier multiplier : multipliers) {
+            if (player.hasPermission(multiplier.permission)) {
+                return multiplier.multiplier;
+            }
+        }
+        return 1;
+    }
+
+    private void active(Player player) {
+        if (task != null) {
+            lastActivity.put(player.getUniqueId(), System.currentTimeMillis());
+        }
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onJoin(PlayerJoinEvent event) {
+        active(event.getPlayer());
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onQuit(PlayerQuitEvent event) {
+        lastActivity.remove(event.getPlayer().getUniqueId());
+        fractions.remove(event.getPlayer().getUniqueId());
+    }
+
+    // 움직임 이벤트는 자주 발생하므로 시점이 바뀐 경우만 기록합니다.
+    @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+    public void onMove(PlayerMoveEvent event) {
+        Location from = event.getFrom();
+        Location to = event.getTo();
+        if (to != null && (from.getYaw() != to.getYaw() || from.getPitch() != to.getPitch())) {
+            active(event.getPlayer());
+        }
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+    public void onChat(AsyncPlayerChatEvent event) {
+        active(event.getPlayer());
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+    public void onCommand(PlayerCommandPreprocessEvent event) {
+        active(event.getPlayer());
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onInteract(PlayerInteractEvent event) {
+        active(event.getPlayer());
+    }
+
+    // 지금까지 준 포인트의 합
+    public long getAwardedPoints() {
+        return awardedPoints;
+    }
+
+    // 마지막 주기에 포인트를 받은 플레이어 수
+    public int getLastAwarded() {
+        return lastAwarded;
+    }
+
+    // 마지막 주기에 자리를 비워 제외된 플레이어 수
+    public int getLastAfk() {
+        return lastAfk;
+    }
+
+    // 마지막 주기를 처리하는데 걸린 시간 (나노초)
+    public long getLastTickTime() {
+        return lastTickTime;
+    }
+
+    void close() {
+        if (task != null) {
+            task.cancel();
+            task = null;
+        }
+        lastActivity.clear();
+        fractions.clear();
+    }
+
+    private static final class Multiplier {
+
+        private final String permission;
+        private final double multiplier;
+
+        private Multiplier(String permission, double multiplier) {
+            this.permission = permission;
+            this.multiplier = multiplier;
+        }
+    }
+}
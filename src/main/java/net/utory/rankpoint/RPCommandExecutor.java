@@ -6,15 +6,14 @@ import static net.utory.rankpoint.Message.sendMessage;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.UUID;
-import java.util.concurrent.CompletableFuture;
 import java.util.function.BiConsumer;
 import java.util.function.Consumer;
 import java.util.regex.Pattern;
 import java.util.stream.Collectors;
+import net.utory.rankpoint.data.Leaderboard;
 import net.utory.rankpoint.data.PlayerDataManager;
 import net.utory.rankpoint.data.PlayerDataManager.PlayerData;
 import org.bukkit.Bukkit;
-import org.bukkit.OfflinePlayer;
 import org.bukkit.command.Command;
 import org.bukkit.command.CommandSender;
 import org.bukkit.command.TabExecutor;
@@ -23,6 +22,7 @@ import org.bukkit.entity.Player;
 public final class RPCommandExecutor implements TabExecutor {
 
     private static final Pattern USERNAME_PATTERN = Pattern.compile("[a-zA-Z0-9_]{3,16}");
+    private static final int TOP_PAGE_SIZE = 10;
 
     private final Rankpoint instance;
 
@@ -39,48 +39,76 @@ public final class RPCommandExecutor implements TabExecutor {
             switch (args[0].toLowerCase()) {
                 case "me":
                     if (senderIsPlayer) {
-                        loadAndRun(((Player) sender).getUniqueId(),
+                        loadAndRun(sender, ((Player) sender).getUniqueId(),
                             data -> sendMessage(sender, msg.CommandMe(), sender.getName(),
                                 sender.getName(), data, null));
                     }
                     break;
                 case "look":
                     if (args.length == 2 && checkPlayerName(args[1])) {
-                        loadAndRun(args[1], (data, player) ->
+                        loadAndRun(sender, args[1], (data, name) ->
                             sendMessage(sender, msg.CommandLook(), sender.getName(),
-                                player.getName(), data, null));
+                                name, data, null));
                         return true;
                     }
                     sendMessage(sender, msg.CommandHelpLook());
                     break;
+                case "top":
+                    if (args.length <= 2) {
+                        Leaderboard leaderboard = instance.getPlayerDataManager().getLeaderboard();
+                        int lastPage = Math.max(1,
+                            (leaderboard.getSize() + TOP_PAGE_SIZE - 1) / TOP_PAGE_SIZE);
+                        int page = 1;
+                        if (args.length == 2) {
+                            if (!checkInt(args[1])) {
+                                sendMessage(sender, msg.CommandHelpTop());
+                                break;
+                            }
+                            page = Math.min(Integer.parseInt(args[1]), lastPage);
+                        }
+                        sendMessage(sender, msg.CommandTopHeader(), sender.getName(), null, null,
+                            page + "");
+                        int from = (page - 1) * TOP_PAGE_SIZE + 1;
+                        for (int position = from; position < from + TOP_PAGE_SIZE; position++) {
+                            Leaderboard.Entry entry = leaderboard.getEntry(position);
+                            if (entry == null) {
+                                break;
+                            }
+                            sendMessage(sender, msg.CommandTopEntry(), sender.getName(),
+                                entry.getName(), null, entry.getPointString(), position + "");
+                        }
+                        return true;
+                    }
+                    sendMessage(sender, msg.CommandHelpTop());
+                    break;
                 case "give":
                     if (senderHasPerm) {
                         if (args.length == 3 && checkPlayerName(args[1]) && checkInt(args[2])) {
                             int point = Integer.parseInt(args[2]);
-                            loadAndRun(args[1], (data, player) -> {
+                            loadAndRun(sender, args[1], (data, name) -> {
                                 data.addPoint(point);
                                 sendMessage(sender, msg.CommandGiveSender(), sender.getName(),
-                                    player.getName(), data, args[2]);
-                                if (player.isOnline() && !sender.getName()
-                                    .equals(player.getName())) {
-                                    sendMessage(((Player) player), msg.CommandGiveReceiver(),
-                                        sender.getName(), player.getName(), data, args[2]);
+                                    name, data, args[2]);
+                                Player receiver = Bukkit.getPlayer(data.getUuid());
+                                if (receiver != null && !sender.getName().equals(name)) {
+                                    sendMessage(receiver, msg.CommandGiveReceiver(),
+                                        sender.getName(), name, data, args[2]);
                                 }
                             });
                             return true;
                         }
-                        sender.sendMessage(msg.CommandHelpGive());
+                        sendMessage(sender, msg.CommandHelpGive());
                     } else {
-                        sender.sendMessage(msg.CommandDonthaveperm());
+                        sendMessage(sender, msg.CommandDonthaveperm());
                     }
                     break;
                 case "giveall":
                     if (senderHasPerm) {
                         if (args.length == 2 && checkInt(args[1])) {
                             int point = Integer.parseInt(args[1]);
-                            Bukkit.getOnlinePlayers().forEach(
-                                (player) -> loadAndRun(player.getUniqueId(),
-                                    (data) -> data.addPoint(point)));
+                            List<UUID> uuids = Bukkit.getOnlinePlayers().stream()
+                                .map(Player::getUniqueId).collect(Collectors.toList());
+                            instance.getPlayerDataManager().queuePointDelta(uuids, point);
                             broadcastMessage(msg.CommandGiveall(), sender.getName(), null, null,
                                 point + "");
                             return true;
@@ -94,18 +122,18 @@ public final class RPCommandExecutor implements TabExecutor {
                     if (senderHasPerm) {
                         if (args.length == 3 && checkPlayerName(args[1]) && checkInt(args[2])) {
                             int point = Integer.parseInt(args[2]);
-                            loadAndRun(args[1], (data, player) -> {
+                            loadAndRun(sender, args[1], (data, name) -> {
                                 if (data.getPoint() - point < 0) {
                                     data.setPoint(0);
                                 } else {
                                     data.removePoint(point);
                                 }
                                 sendMessage(sender, msg.CommandTakeSender(), sender.getName(),
-                                    player.getName(), data, args[2]);
-                                if (player.isOnline() && !sender.getName()
-                                    .equals(player.getName())) {
-                                    sendMessage(((Player) player), msg.CommandTakeReceiver(),
-                                        sender.getName(), player.getName(), data, args[2]);
+                                    name, data, args[2]);
+                                Player receiver = Bukkit.getPlayer(data.getUuid());
+                                if (receiver != null && !sender.getName().equals(name)) {
+                                    sendMessage(receiver, msg.CommandTakeReceiver(),
+                                        sender.getName(), name, data, args[2]);
                                 }
                             });
                             return true;
@@ -119,14 +147,14 @@ public final class RPCommandExecutor implements TabExecutor {
                     if (senderHasPerm) {
                         if (args.length == 3 && checkPlayerName(args[1]) && checkInt(args[2])) {
                             int point = Integer.parseInt(args[2]);
-                            loadAndRun(args[1], (data, player) -> {
+                            loadAndRun(sender, args[1], (data, name) -> {
                                 data.setPoint(point);
                                 sendMessage(sender, msg.CommandSetSender(), sender.getName(),
-                                    player.getName(), data, args[2]);
-                                if (player.isOnline() && !sender.getName()
-                                    .equals(player.getName())) {
-                                    sendMessage(((Player) player), msg.CommandSetReceiver(),
-                                        sender.getName(), player.getName(), data, args[2]);
+                                    name, data, args[2]);
+                                Player receiver = Bukkit.getPlayer(data.getUuid());
+                                if (receiver != null && !sender.getName().equals(name)) {
+                                    sendMessage(receiver, msg.CommandSetReceiver(),
+                                        sender.getName(), name, data, args[2]);
                                 }
                             });
                             return true;
@@ -139,14 +167,14 @@ public final class RPCommandExecutor implements TabExecutor {
                 case "reset":
                     if (senderHasPerm) {
                         if (args.length == 2 && checkPlayerName(args[1])) {
-                            loadAndRun(args[1], (data, player) -> {
+                            loadAndRun(sender, args[1], (data, name) -> {
                                 data.setPoint(0);
                                 sendMessage(sender, msg.CommandResetSender(), sender.getName(),
-                                    player.getName(), data, null);
-                                if (player.isOnline() && !sender.getName()
-                                    .equals(player.getName())) {
-                                    sendMessage(((Player) player), msg.CommandResetReceiver(),
-                                        sender.getName(), player.getName(), data, null);
+                                    name, data, null);
+                                Player receiver = Bukkit.getPlayer(data.getUuid());
+                                if (receiver != null && !sender.getName().equals(name)) {
+                                    sendMessage(receiver, msg.CommandResetReceiver(),
+                                        sender.getName(), name, data, null);
                                 }
                             });
                             return true;
@@ -158,9 +186,12 @@ public final class RPCommandExecutor implements TabExecutor {
                     break;
                 case "reload":
                     if (senderHasPerm) {
-                        if (instance.configReload()) {
-                            sendMessage(sender, msg.CommandReloadSuccess());
-                        } else {
+                        boolean started = instance.configReload(success -> {
+                            Message message = instance.getMessage();
+                            sendMessage(sender, success ? message.CommandReloadSuccess()
+                                : message.CommandReloadFailed());
+                        });
+                        if (!started) {
                             sendMessage(sender, msg.CommandReloadFailed());
                         }
                     } else {
@@ -169,8 +200,24 @@ public final class RPCommandExecutor implements TabExecutor {
                     break;
                 case "migrate":
                     if (senderHasPerm) {
-                        instance.migrate();
-                        sendMessage(sender, msg.CommandMigrate());
+                        String target = args.length > 1 ? args[1].toLowerCase() : null;
+                        if (target != null && (!Rankpoint.STORAGE_TYPES.contains(target)
+                            || target.equals(instance.getStorageType()))) {
+                            sendMessage(sender, msg.CommandHelpMigrate());
+                        } else if (!instance.migrate(sender, target)) {
+                            sendMessage(sender, msg.CommandMigrateRunning());
+                        }
+                    } else {
+                        sendMessage(sender, msg.CommandDonthaveperm());
+                    }
+                    break;
+                case "stats":
+                    if (senderHasPerm) {
+                        sendMessage(sender, msg.CommandStatsHeader());
+                        for (String line : instance.getMetrics().format()) {
+                            sendMessage(sender, msg.CommandStatsEntry(), sender.getName(), null,
+                                null, line);
+                        }
                     } else {
                         sendMessage(sender, msg.CommandDonthaveperm());
                     }
@@ -184,6 +231,7 @@ public final class RPCommandExecutor implements TabExecutor {
                 sendMessage(sender, msg.CommandHelpMe());
             }
             sendMessage(sender, msg.CommandHelpLook());
+            sendMessage(sender, msg.CommandHelpTop());
             if (senderHasPerm) {
                 sendMessage(sender, msg.CommandHelpGive());
                 sendMessage(sender, msg.CommandHelpGiveall());
@@ -192,6 +240,7 @@ public final class RPCommandExecutor implements TabExecutor {
                 sendMessage(sender, msg.CommandHelpReset());
                 sendMessage(sender, msg.CommandHelpReload());
                 sendMessage(sender, msg.CommandHelpMigrate());
+                sendMessage(sender, msg.CommandHelpStats());
             }
         }
         return true;
@@ -211,6 +260,14 @@ public final class RPCommandExecutor implements TabExecutor {
                     if (sender.hasPermission("rankpoint.admin")) {
                         return null;
                     }
+                    break;
+                case "migrate":
+                    if (sender.hasPermission("rankpoint.admin")) {
+                        return Rankpoint.STORAGE_TYPES.stream()
+                            .filter(type -> type.startsWith(args[1].toLowerCase()))
+                            .collect(Collectors.toList());
+                    }
+                    break;
                 default:
                     break;
             }
@@ -225,6 +282,7 @@ public final class RPCommandExecutor implements TabExecutor {
             list.add("me");
         }
         list.add("look");
+        list.add("top");
         if (sender.hasPermission("rankpoint.admin")) {
             list.add("give");
             list.add("giveall");
@@ -233,6 +291,7 @@ public final class RPCommandExecutor implements TabExecutor {
             list.add("reset");
             list.add("reload");
             list.add("migrate");
+            list.add("stats");
         }
         if (args.length == 0 || args[0].isEmpty()) {
             return list;
@@ -257,24 +316,36 @@ public final class RPCommandExecutor implements TabExecutor {
         return false;
     }
 
-    private void loadAndRun(UUID uuid, Consumer<PlayerData> consumer) {
+    private void loadAndRun(CommandSender sender, UUID uuid, Consumer<PlayerData> consumer) {
         PlayerDataManager dataManager = instance.getPlayerDataManager();
-        dataManager.usePlayerData(uuid, consumer);
+        dataManager.usePlayerData(uuid, consumer, () -> sendLoadFailed(sender, sender.getName()));
     }
 
-    @SuppressWarnings("deprecation")
-    private void loadAndRun(String name, BiConsumer<PlayerData, OfflinePlayer> consumer) {
+    // 접속 중이 아닌 플레이어는 이름 색인에서 찾으며, 외부 조회는 하지 않습니다.
+    private void loadAndRun(CommandSender sender, String name,
+        BiConsumer<PlayerData, String> consumer) {
         PlayerDataManager dataManager = instance.getPlayerDataManager();
         Player p = Bukkit.getPlayerExact(name);
         if (p != null) {
             dataManager.usePlayerData(p.getUniqueId(), (data) -> {
-                consumer.accept(data, p);
-            });
-        } else {
-            CompletableFuture.supplyAsync(() -> Bukkit.getOfflinePlayer(name))
-                .thenAccept(player -> Bukkit.getScheduler().runTask(instance,
-                    () -> dataManager.usePlayerData(player.getUniqueId(),
-                        (data) -> consumer.accept(data, player))));
+                consumer.accept(data, p.getName());
+            }, () -> sendLoadFailed(sender, p.getName()));
+            return;
         }
+        dataManager.getNameIndex().lookup(name, (uuid, exactName) -> {
+            if (uuid == null) {
+                sendMessage(sender, instance.getMessage().CommandUnknownplayer(), sender.getName(),
+                    name, null, null);
+                return;
+            }
+            dataManager.usePlayerData(uuid, (data) -> consumer.accept(data, exactName),
+                () -> sendLoadFailed(sender, exactName));
+        }, () -> sendLoadFailed(sender, name));
+    }
+
+    // 데이터베이스가 응답하지 않아 포인트를 불러오지 못했습니다.
+    private void sendLoadFailed(CommandSender sender, String name) {
+        sendMessage(sender, instance.getMessage().CommandLoadfailed(), sender.getName(), name,
+            null, null);
     }
 }
@@ -0,0 +1,127 @@
+package net.utory.rankpoint;
+
+import static net.utory.rankpoint.Message.broadcastMessage;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import net.utory.rankpoint.data.PlayerDataManager.PlayerData;
+import org.bukkit.Bukkit;
+import org.bukkit.configuration.file.FileConfiguration;
+import org.bukkit.entity.Player;
+import org.bukkit.scheduler.BukkitTask;
+
+// 랭크가 바뀐 플레이어의 Vault 그룹을 메인 스레드 밖에서 맞춥니다. 여러 번 바뀌어도 마지막 랭크만 한 번 적용하며,
+// 틱마다 정해진 수만큼만 작업 스레드로 넘깁니다.
+public final class RankSynchronizer {
+
+    private final Rankpoint instance;
+    // 요청된 플레이어와 처음 요청된 시각 (나노초)
+    private final Map<UUID, Long> pending = new LinkedHashMap<>();
+    private final ExecutorService executor = Executors
+        .newSingleThreadExecutor(runnable -> new Thread(runnable, "Rankpoint-RankSync"));
+    private BukkitTask task;
+    private int maxPerTick = 20;
+    private boolean async = true;
+    private volatile long lastLag = 0;
+    private volatile long maxLag = 0;
+    private volatile long appliedCount = 0;
+
+    RankSynchronizer(Rankpoint instance) {
+        this.instance = instance;
+    }
+
+    void start(FileConfiguration cf) {
+        maxPerTick = Math.max(1, cf.getInt("rank-sync.max-per-tick", 20));
+        async = cf.getBoolean("rank-sync.async", true);
+        if (task != null) {
+            task.cancel();
+        }
+        task = Bukkit.getScheduler().runTaskTimer(instance, this::tick, 1, 1);
+    }
+
+    public void request(UUID uuid) {
+        pending.putIfAbsent(uuid, System.nanoTime());
+    }
+
+    private void tick() {
+        Iterator<Map.Entry<UUID, Long>> iterator = pending.entrySet().iterator();
+        for (int i = 0; i < maxPerTick && iterator.hasNext(); i++) {
+            Map.Entry<UUID, Long> entry = iterator.next();
+            iterator.remove();
+            Player player = Bukkit.getPlayer(entry.getKey());
+            PlayerData data = instance.getPlayerDataManager().getPlayerDataOrNull(entry.getKey());
+            if (player == null || data == null || data.getGroupInt() < 0) {
+                continue;
+            }
+            // 작업 스레드에서 PlayerData 를 읽지 않도록 목표 그룹을 미리 정해 넘깁니다.
+            GroupConfig groupConfig = instance.getGroupConfig();
+            String groupName = groupConfig.getRank(data.getGroupInt()).getName();
+            long requestedAt = entry.getValue();
+            if (async) {
+                executor.execute(() -> apply(groupConfig, player, groupName, requestedAt));
+            } else {
+                apply(groupConfig, player, groupName, requestedAt);
+            }
+        }
+    }
+
+    private void apply(GroupConfig groupConfig, Player player, String groupName,
+        long requestedAt) {
+        boolean rankedUp = groupConfig.applyPlayerRank(player, groupName);
+        long lag = System.nanoTime() - requestedAt;
+        lastLag = lag;
+        maxLag = Math.max(maxLag, lag);
+        appliedCount++;
+        if (!rankedUp) {
+            return;
+        }
+        if (Bukkit.isPrimaryThread()) {
+            broadcastRankup(player);
+        } else if (instance.isEnabled()) {
+            Bukkit.getScheduler().runTask(instance, () -> broadcastRankup(player));
+        }
+    }
+
+    private void broadcastRankup(Player player) {
+        PlayerData data = instance.getPlayerDataManager().getPlayerDataOrNull(player.getUniqueId());
+        if (data != null) {
+            broadcastMessage(instance.getMessage().BroadcastRankup(), null, player.getName(), data,
+                null);
+        }
+    }
+
+    public int getPendingCount() {
+        return pending.size();
+    }
+
+    // 포인트가 바뀐 뒤 그룹이 적용되기까지 걸린 시간 (나노초)
+    public long getLastLag() {
+        return lastLag;
+    }
+
+    public long getMaxLag() {
+        return maxLag;
+    }
+
+    public long getAppliedCount() {
+        return appliedCount;
+    }
+
+    void close() {
+        if (task != null) {
+            task.cancel();
+            task = null;
+        }
+        pending.clear();
+        executor.shutdown();
+        try {
+            executor.awaitTermination(5, TimeUnit.SECONDS);
+        } catch (InterruptedException ignored) {
+        }
+    }
+}
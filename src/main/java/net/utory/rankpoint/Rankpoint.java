@@ -1,37 +1,77 @@
 package net.utory.rankpoint;
 
+import static net.utory.rankpoint.Message.sendMessage;
+
 import java.io.File;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
 import java.sql.SQLException;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
+import java.util.Locale;
 import java.util.Map;
 import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+import javax.management.JMException;
 import net.milkbowl.vault.permission.Permission;
 import net.utory.rankpoint.data.DatabaseManager;
 import net.utory.rankpoint.data.MigrateManager;
 import net.utory.rankpoint.data.PlayerDataManager;
 import net.utory.rankpoint.data.PlayerDataManager.PlayerListener;
-import net.utory.rankpoint.data.database.Database;
+import net.utory.rankpoint.data.QueueConfig;
+import net.utory.rankpoint.data.database.JdbcStorage;
+import net.utory.rankpoint.data.database.MmapStorage;
 import net.utory.rankpoint.data.database.Mysql;
+import net.utory.rankpoint.data.database.PoolConfig;
 import net.utory.rankpoint.data.database.Sqlite;
+import net.utory.rankpoint.data.database.SqliteProfile;
+import net.utory.rankpoint.data.database.Storage;
+import net.utory.rankpoint.data.database.UuidFormat;
+import net.utory.rankpoint.data.sync.LoopbackPointChangeBus;
+import net.utory.rankpoint.data.sync.MysqlPointChangeBus;
+import net.utory.rankpoint.data.sync.PointChangeBus;
+import net.utory.rankpoint.metrics.Metrics;
 import net.utory.rankpoint.placeholderapi.RankpointExpansion;
 import org.bukkit.Bukkit;
+import org.bukkit.command.CommandSender;
 import org.bukkit.command.PluginCommand;
 import org.bukkit.configuration.ConfigurationSection;
 import org.bukkit.configuration.file.FileConfiguration;
 import org.bukkit.configuration.file.YamlConfiguration;
 import org.bukkit.plugin.RegisteredServiceProvider;
 import org.bukkit.plugin.java.JavaPlugin;
+import org.bukkit.scheduler.BukkitTask;
 
 public final class Rankpoint extends JavaPlugin {
 
+    // player-data.storage 에 쓸 수 있는 저장소
+    public static final List<String> STORAGE_TYPES = Arrays.asList("sqlite", "mysql", "mmap");
+
     private Permission perms;
-    private PlayerDataManager playerDataManager;
+    // 플레이스홀더가 다른 스레드에서 읽습니다.
+    private volatile PlayerDataManager playerDataManager;
     private DatabaseManager databaseManager;
     private Message message;
     private GroupConfig groupConfig;
+    private final RankSynchronizer rankSynchronizer = new RankSynchronizer(this);
+    private final PlaytimeAccrual playtimeAccrual = new PlaytimeAccrual(this);
+    private MigrateManager migrateManager;
+    // 다시 불러올 때 백그라운드에서 읽은 설정 (null 이면 JavaPlugin 이 읽은 설정을 사용합니다)
+    private volatile FileConfiguration config;
+    // 현재 저장소를 구분하는 값. 다시 불러올 때 같으면 DatabaseManager 와 캐시를 그대로 사용합니다.
+    private String storageKey;
+    // 현재 저장소를 열 때 사용한 설정 (풀, 청크 크기 등). 바뀌어도 다시 시작해야 적용됩니다.
+    private String storageSettings;
+    // 현재 저장소의 종류 (STORAGE_TYPES 중 하나)
+    private String storageType;
+    private boolean reloading = false;
+    private final List<BukkitTask> dataTasks = new ArrayList<>();
+    private final Metrics metrics = new Metrics();
 
     @Override
     public void onEnable() {
@@ -58,82 +98,208 @@ public final class Rankpoint extends JavaPlugin {
         command.setExecutor(executor);
         command.setTabCompleter(executor);
         getServer().getPluginManager().registerEvents(new PlayerListener(this), this);
+        getServer().getPluginManager().registerEvents(playtimeAccrual, this);
+        registerMetrics();
     }
 
-    public boolean configReload() {
-        Bukkit.getScheduler().cancelTasks(this);
-        playerDataManager.close();
-        if (setupConfig() && setupDatabase()) {
-            playerDataManager.allPlayerDataLoad(Bukkit.getOnlinePlayers());
-            return true;
+    // 카운터와 히스토그램은 각 관리자가 만들 때 등록하고, 여기서는 현재 관리자를 읽는 게이지를 등록합니다.
+    private void registerMetrics() {
+        metrics.gauge("cache.size", () -> playerDataManager.getCacheSize());
+        metrics.gauge("cache.dirty", () -> playerDataManager.getDirtyCount());
+        metrics.gauge("cache.loading", () -> playerDataManager.getLoadingCount());
+        metrics.gauge("cache.evicting", () -> playerDataManager.getEvictingCount());
+        LongAdder hits = metrics.counter("cache.hits");
+        LongAdder misses = metrics.counter("cache.misses");
+        metrics.gauge("cache.hit-ratio-percent", () -> {
+            long hit = hits.sum();
+            long total = hit + misses.sum();
+            return total == 0 ? 0 : hit * 100 / total;
+        });
+        metrics.gauge("journal.segments", () -> playerDataManager.getJournalSegmentCount());
+        metrics.gauge("db.writer.queue", () -> databaseManager.getWriterQueueSize());
+        metrics.gauge("db.reader.queue", () -> databaseManager.getReaderQueueSize());
+        metrics.gauge("db.spill.batches", () -> databaseManager.getSpillSize());
+        metrics.gauge("db.spill.rows", () -> databaseManager.getSpillRows());
+        metrics.gauge("rank-sync.pending", rankSynchronizer::getPendingCount);
+        metrics.gauge("rank-sync.applied", rankSynchronizer::getAppliedCount);
+        metrics.gauge("rank-sync.last-lag-ms",
+            () -> TimeUnit.NANOSECONDS.toMillis(rankSynchronizer.getLastLag()));
+        metrics.gauge("rank-sync.max-lag-ms",
+            () -> TimeUnit.NANOSECONDS.toMillis(rankSynchronizer.getMaxLag()));
+        metrics.gauge("playtime.awarded-points", playtimeAccrual::getAwardedPoints);
+        metrics.gauge("playtime.last-awarded", playtimeAccrual::getLastAwarded);
+        metrics.gauge("playtime.last-afk", playtimeAccrual::getLastAfk);
+        metrics.gauge("playtime.last-tick-us",
+            () -> TimeUnit.NANOSECONDS.toMicros(playtimeAccrual.getLastTickTime()));
+        if (getConfig().getBoolean("metrics.jmx", true)) {
+            try {
+                metrics.registerMBean();
+            } catch (JMException e) {
+                getLogger().warning("JMX 에 지표를 등록하는데 실패했습니다. (" + e.getMessage() + ")");
+            }
         }
-        return false;
     }
 
-    public void migrate() {
-        Bukkit.getScheduler().cancelTasks(this);
-        playerDataManager.close();
-        reloadConfig();
-        FileConfiguration cf = getConfig();
-        boolean isSqlite = cf.getString("player-data.storage", "sqlite").equalsIgnoreCase("sqlite");
+    // 설정과 저장소를 백그라운드에서 준비한 뒤 메인 스레드에서 한 번에 바꿉니다. 저장소가 바뀌지 않았으면
+    // 캐시를 그대로 넘겨받고, 바뀌었으면 이전 저장소는 남은 쓰기를 마친 뒤 백그라운드에서 닫습니다.
+    // 이미 다시 불러오는 중이거나 저장소를 옮기는 중이면 false 를 반환하며, 결과는 메인 스레드에서 callback 으로 전달됩니다.
+    public boolean configReload(Consumer<Boolean> callback) {
+        if (reloading || migrateManager != null) {
+            return false;
+        }
+        reloading = true;
+        String currentStorageKey = storageKey;
+        String currentStorageSettings = storageSettings;
+        // 권한 플러그인과 파일 생성은 메인 스레드에서 처리합니다.
+        saveDefaultMessages();
+        List<String> allGroups = Arrays.asList(perms.getGroups());
+        Bukkit.getScheduler().runTaskAsynchronously(this, () -> {
+            FileConfiguration cf = null;
+            Settings settings = null;
+            String newStorageKey = null;
+            DatabaseManager newDatabaseManager = null;
+            boolean success = false;
+            // 설정 값이 잘못되면 예외가 발생할 수 있으므로, 어떤 경우에도 메인 스레드에서 결과를 알립니다.
+            try {
+                cf = loadConfigFile();
+                settings = loadSettings(cf, allGroups);
+                newStorageKey = storageKey(cf);
+                success = settings != null;
+                if (success && newStorageKey.equals(currentStorageKey)
+                    && !storageSettings(cf).equals(currentStorageSettings)) {
+                    getLogger().info("바뀐 저장소 설정은 서버를 다시 시작한 뒤 적용됩니다.");
+                }
+                if (success && !newStorageKey.equals(currentStorageKey)) {
+                    newDatabaseManager = new DatabaseManager(
+                        openStorage(cf, storageType(cf)), metrics, queueConfig(cf), getLogger());
+                }
+            } catch (SQLException e) {
+                e.printStackTrace();
+                success = false;
+            } catch (RuntimeException e) {
+                getLogger().severe("config 를 다시 불러오는데 실패했습니다. (" + e + ")");
+                success = false;
+            }
+            if (!isEnabled()) {
+                if (newDatabaseManager != null) {
+                    newDatabaseManager.closeDatabase();
+                }
+                return;
+            }
+            boolean result = success;
+            FileConfiguration loaded = cf;
+            Settings loadedSettings = settings;
+            String loadedStorageKey = newStorageKey;
+            DatabaseManager created = newDatabaseManager;
+            Bukkit.getScheduler().runTask(this, () -> {
+                reloading = false;
+                if (result) {
+                    applyReload(loaded, loadedSettings, loadedStorageKey, created);
+                }
+                callback.accept(result);
+            });
+        });
+        return true;
+    }
 
-        String hostName = cf.getString("player-data.MySQL.hostname");
-        int port = cf.getInt("player-data.MySQL.port");
-        String databaseName = cf.getString("player-data.MySQL.database");
-        String tableNameMySQL = cf.getString("player-data.MySQL.tablename");
-        String parameters = cf.getString("player-data.MySQL.parameters");
-        String userName = cf.getString("player-data.MySQL.username");
-        String password = cf.getString("player-data.MySQL.password");
+    private void applyReload(FileConfiguration cf, Settings settings, String newStorageKey,
+        DatabaseManager created) {
+        config = cf;
+        message = settings.message;
+        groupConfig = settings.groupConfig;
+        cancelDataTasks();
+        if (created == null) {
+            Runnable closeOldBus = playerDataManager.reconfigure(cf, createPointChangeBus(cf));
+            Bukkit.getScheduler().runTaskAsynchronously(this, closeOldBus);
+            scheduleDataTasks(cf);
+        } else {
+            Runnable closeOldStorage = playerDataManager.release();
+            Bukkit.getScheduler().runTaskAsynchronously(this, closeOldStorage);
+            databaseManager = created;
+            storageKey = newStorageKey;
+            storageSettings = storageSettings(cf);
+            storageType = storageType(cf);
+            startPlayerData(cf);
+            playerDataManager.allPlayerDataLoad(Bukkit.getOnlinePlayers());
+        }
+        rankSynchronizer.start(cf);
+        playtimeAccrual.start(cf);
+    }
 
-        DatabaseManager mysql;
-        try {
-            mysql = new DatabaseManager(new Mysql(hostName, port, databaseName, parameters, tableNameMySQL,
-                userName, password));
-        } catch (SQLException e) {
-            e.printStackTrace();
-            getLogger().severe("Mysql 데이터베이스에 연결을 실패했습니다.");
-            if (!migrateFinish()) {
-                getLogger().severe("데이터베이스를 리로드하는데 실패했습니다. 플러그인을 비활성화합니다.");
-                Bukkit.getPluginManager().disablePlugin(this);
-            }
-            return;
+    // 기본값이 채워진 config.yml 을 새로 읽습니다. 메인 스레드 밖에서 호출할 수 있습니다.
+    private FileConfiguration loadConfigFile() {
+        FileConfiguration cf = YamlConfiguration
+            .loadConfiguration(new File(getDataFolder(), "config.yml"));
+        InputStream defaults = getResource("config.yml");
+        if (defaults != null) {
+            cf.setDefaults(YamlConfiguration
+                .loadConfiguration(new InputStreamReader(defaults, StandardCharsets.UTF_8)));
         }
+        return cf;
+    }
 
-        String tableName = cf.getString("player-data.SQLite.tablename");
-        File file = new File(cf.getString("player-data.SQLite.file"));
+    @Override
+    public FileConfiguration getConfig() {
+        FileConfiguration cf = config;
+        return cf == null ? super.getConfig() : cf;
+    }
 
-        DatabaseManager sqlite;
-        try {
-            sqlite = new DatabaseManager(new Sqlite(tableName, file));
-        } catch (SQLException e) {
-            e.printStackTrace();
-            getLogger().severe("Sqlite 데이터베이스에 연결을 실패했습니다.");
-            if (!migrateFinish()) {
-                getLogger().severe("데이터베이스를 리로드하는데 실패했습니다. 플러그인을 비활성화합니다.");
-                Bukkit.getPluginManager().disablePlugin(this);
-            }
-            return;
+    @Override
+    public void reloadConfig() {
+        config = null;
+        super.reloadConfig();
+    }
+
+    // 현재 저장소의 데이터를 target 저장소로 옮기기 시작합니다. target 이 null 이면 SQLite 는 MySQL 로,
+    // 나머지는 SQLite 로 옮깁니다. 이미 옮기는 중이면 false 를 반환합니다.
+    // 옮기는 동안에도 서버는 현재 저장소를 그대로 사용하며, 다 옮긴 뒤 메인 스레드에서 새 저장소로 바꿉니다.
+    public boolean migrate(CommandSender sender, String target) {
+        if (migrateManager != null || reloading) {
+            return false;
         }
+        reloadConfig();
+        FileConfiguration cf = getConfig();
+        String from = storageType;
+        String to = target != null ? target : "sqlite".equals(from) ? "mysql" : "sqlite";
+        migrateManager = new MigrateManager(this, sender, databaseManager.getStorage(), from,
+            () -> openStorage(cf, to), to,
+            cf.getInt("player-data.migrate.fetch-size", 1000),
+            cf.getInt("player-data.migrate.chunk-size", 500),
+            cf.getLong("player-data.migrate.progress-interval", 5),
+            new File(getDataFolder(), "migrate.yml"), queueConfig(cf));
+        playerDataManager.beginMigration();
+        playerDataManager.saveAllData();
+        migrateManager.start(created -> migrateFinish(sender, from, to, created));
+        return true;
+    }
 
-        MigrateManager migrateManager;
-        if (isSqlite) {
-            migrateManager = new MigrateManager(mysql, sqlite);
-        } else {
-            migrateManager = new MigrateManager(sqlite, mysql);
+    private void migrateFinish(CommandSender sender, String from, String to,
+        DatabaseManager target) {
+        MigrateManager finished = migrateManager;
+        migrateManager = null;
+        if (target == null) {
+            playerDataManager.endMigration();
+            finished.close(null);
+            sendMessage(sender, message.CommandMigrateFailed());
+            return;
         }
-        migrateManager.migrate();
-        cf.set("player-data.storage", isSqlite ? "mysql" : "sqlite");
+        DatabaseManager previous = databaseManager;
+        databaseManager = target;
+        // 옮기는 동안 바뀐 포인트는 캐시에 남아 있으므로 새 저장소에 다시 씁니다.
+        playerDataManager.endMigration();
+        finished.close(previous);
+        FileConfiguration cf = getConfig();
+        cf.set("player-data.storage", to);
         saveConfig();
-        migrateFinish();
+        storageKey = storageKey(cf);
+        storageSettings = storageSettings(cf);
+        storageType = to;
         getLogger().info("정상적으로 데이터베이스가 변경되었습니다.");
+        sendMessage(sender, message.CommandMigrateSuccess(), null, null, null, from + " -> " + to);
     }
 
-    private boolean migrateFinish() {
-        if (setupDatabase()) {
-            playerDataManager.allPlayerDataLoad(Bukkit.getOnlinePlayers());
-            return true;
-        }
-        return false;
+    public String getStorageType() {
+        return storageType;
     }
 
     private boolean setupPermission() {
@@ -152,18 +318,33 @@ public final class Rankpoint extends JavaPlugin {
     private boolean setupConfig() {
         saveDefaultConfig();
         reloadConfig();
-        File msgConf = new File(getDataFolder(), "message.yml");
-        if (!msgConf.exists()) {
+        saveDefaultMessages();
+        Settings settings = loadSettings(getConfig(), Arrays.asList(perms.getGroups()));
+        if (settings == null) {
+            return false;
+        }
+        message = settings.message;
+        groupConfig = settings.groupConfig;
+        return true;
+    }
+
+    private void saveDefaultMessages() {
+        if (!new File(getDataFolder(), "message.yml").exists()) {
             saveResource("message.yml", false);
         }
-        message = new Message();
+    }
+
+    // 메시지와 그룹 설정을 만듭니다. allGroups 는 메인 스레드에서 읽은 권한 그룹 목록입니다.
+    // 메인 스레드 밖에서 호출할 수 있으며, 실패하면 null 을 반환합니다.
+    private Settings loadSettings(FileConfiguration cf, List<String> allGroups) {
+        File msgConf = new File(getDataFolder(), "message.yml");
+        Message message = new Message();
         message.loadMessages(YamlConfiguration.loadConfiguration(msgConf));
-        ConfigurationSection groups = getConfig().getConfigurationSection("groups");
+        ConfigurationSection groups = cf.getConfigurationSection("groups");
         if (groups == null) {
             getLogger().severe("config의 groups 설정을 불러오는데 실패했습니다.");
-            return false;
+            return null;
         }
-        List<String> allGroups = Arrays.asList(perms.getGroups());
         List<String> groupNames = new ArrayList<>();
         List<Integer> pointConditions = new ArrayList<>();
         Map<String, String> displayGroupNamesMap = new HashMap<>();
@@ -172,6 +353,10 @@ public final class Rankpoint extends JavaPlugin {
         groups.getKeys(false).stream().mapToInt(Integer::parseInt).sorted()
             .mapToObj(String::valueOf).map(groups::getConfigurationSection).filter(Objects::nonNull)
             .forEach(section -> {
+                if (section.getString("group") == null) {
+                    getLogger().severe("groups." + section.getName() + " 에 group 이 없습니다.");
+                    return;
+                }
                 String groupName = section.getString("group").toLowerCase();
                 if (allGroups.contains(groupName)) {
                     groupNames.add(groupName);
@@ -183,51 +368,201 @@ public final class Rankpoint extends JavaPlugin {
                 }
             });
         if (groupNames.isEmpty() || pointConditions.isEmpty()) {
-            return false;
+            return null;
         }
-        groupConfig = new GroupConfig(this, groupNames, pointConditions, displayGroupNamesMap);
-        return true;
+        return new Settings(message,
+            new GroupConfig(this, groupNames, pointConditions, displayGroupNamesMap, message));
     }
 
     private boolean setupDatabase() {
         FileConfiguration cf = getConfig();
-        String storageType = cf.getString("player-data.storage");
+        try {
+            databaseManager = new DatabaseManager(openStorage(cf, storageType(cf)), metrics,
+                queueConfig(cf), getLogger());
+        } catch (SQLException e) {
+            e.printStackTrace();
+            return false;
+        }
+        if (!PlayerDataManager.replayJournal(this, databaseManager)) {
+            databaseManager.closeDatabase();
+            return false;
+        }
+        storageKey = storageKey(cf);
+        storageSettings = storageSettings(cf);
+        storageType = storageType(cf);
+        startPlayerData(cf);
+        rankSynchronizer.start(cf);
+        playtimeAccrual.start(cf);
+        return true;
+    }
+
+    private void startPlayerData(FileConfiguration cf) {
+        playerDataManager = new PlayerDataManager(this, createPointChangeBus(cf));
+        scheduleDataTasks(cf);
+    }
+
+    private void scheduleDataTasks(FileConfiguration cf) {
         long saveInterval = cf.getLong("player-data.save-interval");
-        switch (storageType.toLowerCase()) {
+        dataTasks.add(Bukkit.getScheduler()
+            .runTaskTimer(this, playerDataManager::saveAllData, saveInterval * 20,
+                saveInterval * 20));
+        if (!"none".equalsIgnoreCase(cf.getString("sync.type", "none"))) {
+            long publishInterval = Math.max(1, cf.getLong("sync.publish-interval", 1));
+            dataTasks.add(Bukkit.getScheduler()
+                .runTaskTimer(this, playerDataManager::publishChanges, publishInterval,
+                    publishInterval));
+        }
+        long cleanupInterval = cf.getLong("player-data.cache.cleanup-interval", 60);
+        dataTasks.add(Bukkit.getScheduler()
+            .runTaskTimer(this, playerDataManager::evictExpired, cleanupInterval * 20,
+                cleanupInterval * 20));
+    }
+
+    private void cancelDataTasks() {
+        for (BukkitTask task : dataTasks) {
+            task.cancel();
+        }
+        dataTasks.clear();
+    }
+
+    // 알 수 없는 값이면 SQLite 를 사용합니다.
+    private static String storageType(FileConfiguration cf) {
+        String type = cf.getString("player-data.storage", "sqlite").toLowerCase(Locale.ROOT);
+        return STORAGE_TYPES.contains(type) ? type : "sqlite";
+    }
+
+    // 저장소를 열고 테이블을 만듭니다. 메인 스레드 밖에서 호출할 수 있습니다.
+    // SQLite 도 여러 행을 한 문장에 넣으면 문장마다 실행하는 비용이 줄어 write-chunk-size 기본값이 100 입니다.
+    private Storage openStorage(FileConfiguration cf, String type) throws SQLException {
+        switch (type) {
             case "mysql":
-                String hostName = cf.getString("player-data.MySQL.hostname");
-                int port = cf.getInt("player-data.MySQL.port");
-                String databaseName = cf.getString("player-data.MySQL.database");
-                String tableNameMySQL = cf.getString("player-data.MySQL.tablename");
-                String parameters = cf.getString("player-data.MySQL.parameters");
-                String userName = cf.getString("player-data.MySQL.username");
-                String password = cf.getString("player-data.MySQL.password");
-                try {
-                    databaseManager = new DatabaseManager(
-                        new Mysql(hostName, port, databaseName, parameters, tableNameMySQL,
-                            userName, password));
-                } catch (SQLException e) {
-                    e.printStackTrace();
-                    return false;
-                }
-                break;
+                return new JdbcStorage(createMysql(cf),
+                    cf.getInt("player-data.MySQL.write-chunk-size", 500),
+                    cf.getInt("player-data.MySQL.convert-chunk-size", 1000), getLogger());
+            case "mmap":
+                return new MmapStorage(new File(cf.getString("player-data.Mmap.file",
+                    "./plugins/Rankpoint/points.mmap")),
+                    cf.getBoolean("player-data.Mmap.force-on-save", true));
             case "sqlite":
             default:
-                String tableName = cf.getString("player-data.SQLite.tablename");
-                File file = new File(cf.getString("player-data.SQLite.file"));
-                try {
-                    databaseManager = new DatabaseManager(new Sqlite(tableName, file));
-                } catch (SQLException e) {
-                    e.printStackTrace();
-                    return false;
-                }
-                break;
+                return new JdbcStorage(createSqlite(cf),
+                    cf.getInt("player-data.SQLite.write-chunk-size", 100),
+                    cf.getInt("player-data.SQLite.convert-chunk-size", 1000), getLogger());
+        }
+    }
+
+    // 저장하는 곳 (서버, 데이터베이스, 테이블 또는 파일) 이 바뀌면 다른 값이 됩니다. 풀, 청크 크기 등은 비교하지 않습니다.
+    // 같은 테이블을 새 DatabaseManager 로 열면, 이전 DatabaseManager 의 마지막 저장이 끝나기 전에 포인트를 읽어
+    // 저장된 값을 덮어쓸 수 있기 때문입니다. (uuid-format 도 같은 테이블을 두 번 열어 함께 형식을 바꾸지 않도록 제외)
+    private static String storageKey(FileConfiguration cf) {
+        String type = storageType(cf);
+        switch (type) {
+            case "mysql":
+                return "mysql:" + cf.getString("player-data.MySQL.hostname") + ':'
+                    + cf.getInt("player-data.MySQL.port") + '/'
+                    + cf.getString("player-data.MySQL.database") + '/'
+                    + cf.getString("player-data.MySQL.tablename");
+            case "mmap":
+                return "mmap:" + cf.getString("player-data.Mmap.file");
+            case "sqlite":
+            default:
+                return "sqlite:" + cf.getString("player-data.SQLite.file") + '/'
+                    + cf.getString("player-data.SQLite.tablename");
+        }
+    }
+
+    // 현재 저장소의 모든 설정. 저장하는 곳은 같고 이 값만 바뀌면 다시 시작해야 적용된다고 알립니다.
+    private static String storageSettings(FileConfiguration cf) {
+        String type = storageType(cf);
+        switch (type) {
+            case "mysql":
+                return sectionKey(cf, "player-data.MySQL");
+            case "mmap":
+                return sectionKey(cf, "player-data.Mmap");
+            case "sqlite":
+            default:
+                return sectionKey(cf, "player-data.SQLite");
+        }
+    }
+
+    private static String sectionKey(FileConfiguration cf, String path) {
+        ConfigurationSection section = cf.getConfigurationSection(path);
+        return section == null ? "" : sectionKey(section);
+    }
+
+    private static String sectionKey(ConfigurationSection section) {
+        StringBuilder sb = new StringBuilder();
+        for (String key : section.getKeys(true)) {
+            if (!section.isConfigurationSection(key)) {
+                sb.append(key).append('=').append(section.getString(key)).append(';');
+            }
+        }
+        return sb.toString();
+    }
+
+    private Mysql createMysql(FileConfiguration cf) {
+        String hostName = cf.getString("player-data.MySQL.hostname");
+        int port = cf.getInt("player-data.MySQL.port");
+        String databaseName = cf.getString("player-data.MySQL.database");
+        String tableName = cf.getString("player-data.MySQL.tablename");
+        String parameters = cf.getString("player-data.MySQL.parameters");
+        String userName = cf.getString("player-data.MySQL.username");
+        String password = cf.getString("player-data.MySQL.password");
+        PoolConfig poolConfig = new PoolConfig(
+            cf.getInt("player-data.MySQL.pool.minimum-idle", 2),
+            cf.getInt("player-data.MySQL.pool.maximum-size", 8),
+            cf.getInt("player-data.MySQL.pool.validation-timeout", 5),
+            cf.getLong("player-data.MySQL.pool.idle-timeout", 600),
+            cf.getLong("player-data.MySQL.pool.connection-timeout", 30));
+        return new Mysql(hostName, port, databaseName, parameters, tableName, userName, password,
+            poolConfig, uuidFormat(cf, "player-data.MySQL"));
+    }
+
+    private PointChangeBus createPointChangeBus(FileConfiguration cf) {
+        switch (cf.getString("sync.type", "none").toLowerCase()) {
+            case "mysql":
+                return new MysqlPointChangeBus(this, createMysql(cf),
+                    cf.getString("sync.tablename", "Rankpoint_sync"),
+                    cf.getLong("sync.poll-interval", 20), cf.getLong("sync.retention", 60));
+            case "loopback":
+                return new LoopbackPointChangeBus(this);
+            case "none":
+            default:
+                return null;
+        }
+    }
+
+    private Sqlite createSqlite(FileConfiguration cf) {
+        String tableName = cf.getString("player-data.SQLite.tablename");
+        File file = new File(cf.getString("player-data.SQLite.file"));
+        SqliteProfile profile = new SqliteProfile(
+            cf.getString("player-data.SQLite.journal-mode", "WAL"),
+            cf.getString("player-data.SQLite.synchronous", "NORMAL"),
+            cf.getInt("player-data.SQLite.cache-size", 16384),
+            cf.getLong("player-data.SQLite.mmap-size", 64));
+        return new Sqlite(tableName, file, profile,
+            uuidFormat(cf, "player-data.SQLite"));
+    }
+
+    // 저장하지 못한 묶음은 plugins/Rankpoint/spill 에 남깁니다.
+    private QueueConfig queueConfig(FileConfiguration cf) {
+        return new QueueConfig(
+            cf.getInt("player-data.queue.capacity", 1000),
+            cf.getInt("player-data.queue.retry-attempts", 4),
+            cf.getLong("player-data.queue.retry-delay", 200),
+            cf.getLong("player-data.queue.retry-max-delay", 10000),
+            cf.getBoolean("player-data.queue.spill", true)
+                ? new File(getDataFolder(), "spill") : null);
+    }
+
+    // 알 수 없는 값이면 기존 형식 (text) 을 사용합니다.
+    private UuidFormat uuidFormat(FileConfiguration cf, String path) {
+        try {
+            return UuidFormat.of(cf.getString(path + ".uuid-format", "text"));
+        } catch (IllegalArgumentException e) {
+            getLogger().warning(e.getMessage());
+            return UuidFormat.TEXT;
         }
-        playerDataManager = new PlayerDataManager(this);
-        Bukkit.getScheduler()
-            .runTaskTimer(this, playerDataManager::saveAllData, saveInterval * 20,
-                saveInterval * 20);
-        return true;
     }
 
     private boolean setupPlaceholders() {
@@ -240,8 +575,15 @@ public final class Rankpoint extends JavaPlugin {
     @Override
     public void onDisable() {
         Bukkit.getScheduler().cancelTasks(this);
+        if (migrateManager != null) {
+            migrateManager.cancel();
+            migrateManager = null;
+        }
+        rankSynchronizer.close();
+        playtimeAccrual.close();
         if (playerDataManager != null)
             playerDataManager.close();
+        metrics.unregisterMBean();
     }
 
     public Permission getPermission() {
@@ -263,4 +605,27 @@ public final class Rankpoint extends JavaPlugin {
     public GroupConfig getGroupConfig() {
         return groupConfig;
     }
+
+    public RankSynchronizer getRankSynchronizer() {
+        return rankSynchronizer;
+    }
+
+    public PlaytimeAccrual getPlaytimeAccrual() {
+        return playtimeAccrual;
+    }
+
+    public Metrics getMetrics() {
+        return metrics;
+    }
+
+    private static final class Settings {
+
+        private final Message message;
+        private final GroupConfig groupConfig;
+
+        private Settings(Message message, GroupConfig groupConfig) {
+            this.message = message;
+            this.groupConfig = groupConfig;
+        }
+    }
 }
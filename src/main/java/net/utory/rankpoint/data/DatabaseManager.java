@@ -1,106 +1,475 @@
 package net.utory.rankpoint.data;
 
-import java.sql.Connection;
-import java.sql.PreparedStatement;
-import java.sql.ResultSet;
+import java.io.IOException;
 import java.sql.SQLException;
-import java.sql.Statement;
-import java.util.HashMap;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
 import java.util.Map;
 import java.util.UUID;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.BiConsumer;
 import java.util.function.Consumer;
-import net.utory.rankpoint.data.database.Database;
+import java.util.logging.Logger;
+import net.utory.rankpoint.data.database.Storage;
+import net.utory.rankpoint.metrics.Histogram;
+import net.utory.rankpoint.metrics.Metrics;
 
+// 포인트 저장은 실패하면 쓰기 스레드에서 간격을 두 배씩 늘리며 다시 시도하고, 그래도 실패하면 묶음을 파일에 남긴 뒤
+// (SpillQueue) 저장된 것으로 처리합니다. 파일에 남은 묶음이 있는 동안의 저장은 남은 묶음 뒤에 차례로 남기며,
+// 남은 묶음은 재시도 간격마다 먼저 저장합니다. 읽기와 이름 저장은 대기열이 가득 차면 바로 실패합니다.
 public final class DatabaseManager {
 
-    private final ExecutorService executor;
-    private final Connection conn;
-    private final Database database;
-    private final PreparedStatement selectPoint;
-    private final PreparedStatement insertPoint;
+    private final ExecutorService writeExecutor;
+    private final ExecutorService readExecutor;
+    private final ScheduledThreadPoolExecutor scheduler;
+    private final Storage storage;
+    private final QueueConfig queueConfig;
+    private final Logger logger;
+    // 저장하지 못한 묶음 (player-data.queue.spill: false 이거나 폴더를 만들 수 없으면 null)
+    private final SpillQueue spill;
+    // 남은 묶음을 저장하는 동안에는 읽은 포인트에 그 묶음을 겹치지 않도록 읽기를 막습니다.
+    private final ReadWriteLock spillLock = new ReentrantReadWriteLock();
+    private final AtomicBoolean drainScheduled = new AtomicBoolean();
+    // 쓰기 스레드에서만 사용합니다.
+    private long drainDelay;
+    private long nextDrainAt = 0;
+    private volatile boolean closing = false;
+    // 실행을 기다리는 작업 수 (SQLite 는 읽기도 쓰기 스레드에서 실행합니다)
+    private final AtomicInteger writerQueue = new AtomicInteger();
+    private final AtomicInteger readerQueue = new AtomicInteger();
+    private final Histogram queueWait;
+    private final Histogram writerLatency;
+    private final Histogram readerLatency;
+    private final Histogram batchSize;
+    private final LongAdder rowsWritten;
+    private final LongAdder errors;
+    private final LongAdder rejected;
+    private final LongAdder retries;
+    private final LongAdder spilledRows;
+    // 저장 한 번의 초당 행 수
+    private final Histogram writeRate;
 
-    public DatabaseManager(Database database) throws SQLException {
-        this.database = database;
-        this.executor = Executors.newSingleThreadExecutor();
-        this.conn = database.getConnection();
-        database.initTable(conn);
-        this.selectPoint = database.getSelectStatement(conn);
-        this.insertPoint = database.getInsertStatement(conn);
+    // storage 는 이미 열려 있어야 하며 closeDatabase 에서 닫힙니다.
+    public DatabaseManager(Storage storage, Metrics metrics, QueueConfig queueConfig,
+        Logger logger) {
+        this.storage = storage;
+        this.queueConfig = queueConfig;
+        this.logger = logger;
+        this.drainDelay = queueConfig.getRetryDelay();
+        this.queueWait = metrics.latency("db.queue-wait");
+        this.writerLatency = metrics.latency("db.writer.latency");
+        this.readerLatency = metrics.latency("db.reader.latency");
+        this.batchSize = metrics.histogram("db.write.batch-size");
+        this.rowsWritten = metrics.counter("db.write.rows");
+        this.errors = metrics.counter("db.errors");
+        this.rejected = metrics.counter("db.rejected");
+        this.retries = metrics.counter("db.retries");
+        this.spilledRows = metrics.counter("db.spill.written-rows");
+        this.writeRate = metrics.histogram("db.write.rows-per-second");
+        // 쓰기는 순서를 지키기 위해 하나의 스레드에서, 읽기는 저장소가 허용하는 만큼 병렬로 처리합니다.
+        // 남은 묶음을 다시 저장하는 작업도 같은 스레드에서 예약하며, 닫을 때 예약된 작업은 취소합니다.
+        this.scheduler = new ScheduledThreadPoolExecutor(1, threadFactory("Rankpoint-DB-Writer"));
+        scheduler.setExecuteExistingDelayedTasksAfterShutdownPolicy(false);
+        this.writeExecutor = scheduler;
+        if (storage.getReaderThreads() > 0) {
+            this.readExecutor = Executors.newFixedThreadPool(storage.getReaderThreads(),
+                threadFactory("Rankpoint-DB-Reader"));
+        } else {
+            this.readExecutor = writeExecutor;
+        }
+        this.spill = openSpill();
+        if (spill != null && !spill.isEmpty()) {
+            logger.info("이전에 저장하지 못한 " + spill.getRows() + " 행 (" + spill.size()
+                + " 묶음) 을 먼저 저장합니다.");
+            scheduleDrain();
+        }
+    }
+
+    private SpillQueue openSpill() {
+        if (queueConfig.getSpillDirectory() == null) {
+            return null;
+        }
+        try {
+            return new SpillQueue(queueConfig.getSpillDirectory());
+        } catch (IOException e) {
+            logger.warning("저장하지 못한 포인트를 남길 폴더를 만들 수 없어 사용하지 않습니다. ("
+                + e.getMessage() + ")");
+            return null;
+        }
     }
 
-    public void loadPoint(UUID uuid, Consumer<Integer> consumer) {
-        executor.execute(() -> {
+    // /rankpoint migrate 에서 옮길 데이터를 읽습니다.
+    public Storage getStorage() {
+        return storage;
+    }
+
+    // 여러 플레이어의 포인트를 한 번에 불러옵니다. 데이터가 없는 플레이어는 결과에 포함되지 않으며,
+    // consumer 는 모든 묶음을 읽은 뒤 데이터베이스 스레드에서 한 번만 호출됩니다.
+    // 파일에 남은 묶음이 있으면 그 값을 겹쳐 전달하며, 불러오지 못하면 null 이 전달됩니다.
+    public void loadPoints(Collection<UUID> uuids, Consumer<Map<UUID, Integer>> consumer) {
+        List<UUID> list = new ArrayList<>(uuids);
+        execute(readExecutor, () -> {
+            Map<UUID, Integer> points;
+            spillLock.readLock().lock();
             try {
-                selectPoint.setString(1, uuid.toString());
-                ResultSet rs = selectPoint.executeQuery();
-                int r = 0;
-                if (rs.next()) {
-                    r = rs.getInt(1);
+                points = storage.selectPoints(list);
+                if (spill != null) {
+                    points = spill.adjust(points, list);
                 }
-                rs.close();
-                consumer.accept(r);
-            } catch (SQLException e) {
-                throw new RuntimeException(e);
+            } finally {
+                spillLock.readLock().unlock();
+            }
+            consumer.accept(points);
+        }, () -> consumer.accept(null), true);
+    }
+
+    // 포인트가 높은 순서로 최대 limit 명을 불러옵니다. consumer 에는 순서가 유지되는 Map 이 전달되며,
+    // 불러오지 못하면 null 이 전달됩니다.
+    public void loadTopPoints(int limit, Consumer<Map<UUID, Integer>> consumer) {
+        execute(readExecutor, () -> consumer.accept(storage.selectTopPoints(limit)),
+            () -> consumer.accept(null), true);
+    }
+
+    // 포인트별 플레이어 수를 불러옵니다. 먼저 요청된 저장이 반영된 상태를 읽도록 쓰기 스레드에서 실행합니다.
+    // 불러오지 못하면 null 이 전달됩니다.
+    public void loadPointCounts(Consumer<Map<Integer, Integer>> consumer) {
+        execute(writeExecutor, () -> consumer.accept(storage.countPoints()),
+            () -> consumer.accept(null), true);
+    }
+
+    // 이름은 대소문자를 구분하지 않으며, 같은 이름이 여러 명이면 가장 최근에 접속한 플레이어를 찾습니다.
+    // 찾지 못하면 (null, null) 이 전달되고, 데이터베이스에서 읽지 못하면 onFailure 가 호출됩니다.
+    public void loadUuidByName(String name, BiConsumer<UUID, String> consumer,
+        Runnable onFailure) {
+        execute(readExecutor, () -> {
+            Map.Entry<UUID, String> found = storage.selectUuidByName(name.toLowerCase(Locale.ROOT));
+            if (found == null) {
+                consumer.accept(null, null);
+            } else {
+                consumer.accept(found.getKey(), found.getValue());
             }
+        }, onFailure, true);
+    }
+
+    // 이름이 저장되지 않은 플레이어는 결과에 포함되지 않으며, 불러오지 못하면 null 이 전달됩니다.
+    public void loadNames(Collection<UUID> uuids, Consumer<Map<UUID, String>> consumer) {
+        List<UUID> list = new ArrayList<>(uuids);
+        execute(readExecutor, () -> consumer.accept(storage.selectNames(list)),
+            () -> consumer.accept(null), true);
+    }
+
+    // 이름은 접속할 때마다 다시 저장하므로, 대기열이 가득 차면 저장하지 않습니다.
+    public void saveName(UUID uuid, String name) {
+        execute(writeExecutor, () -> storage.saveName(uuid, name, System.currentTimeMillis()));
+    }
+
+    public void savePoint(Map<UUID, Integer> points) {
+        savePoint(points, success -> {
         });
     }
 
-    public void loadAllPoints(Consumer<Map<UUID, Integer>> consumer) {
-        executor.execute(() -> {
-            Map<UUID, Integer> map = new HashMap<>();
-            try (Statement statement = conn.createStatement();
-                ResultSet resultSet =
-                    statement.executeQuery("SELECT * FROM " + database.getTableName())) {
-                while (resultSet.next()) {
-                    map.put(UUID.fromString(resultSet.getString(1)), resultSet.getInt(2));
-                }
+    // callback 은 데이터베이스 스레드에서 저장 성공 여부와 함께 호출됩니다. 파일에 남긴 묶음도 성공입니다.
+    public void savePoint(Map<UUID, Integer> points, Consumer<Boolean> callback) {
+        execute(writeExecutor,
+            () -> callback.accept(write(SpillQueue.SAVE, points) != Outcome.FAILED),
+            () -> callback.accept(false), false);
+    }
+
+    public void addPoints(Map<UUID, Integer> deltas) {
+        addPoints(deltas, stored -> {
+        });
+    }
+
+    // 포인트 변화량을 Point = Point + ? 로 한 번에 더하고, 더한 뒤의 값을 다시 읽어 callback 에 전달합니다.
+    // 다른 서버가 같은 행을 바꾸어도 덮어쓰지 않습니다. 저장에 실패하면 null 이, 파일에 남겼으면 빈 Map 이 전달됩니다.
+    public void addPoints(Map<UUID, Integer> deltas, Consumer<Map<UUID, Integer>> callback) {
+        execute(writeExecutor, () -> {
+            Outcome outcome = write(SpillQueue.ADD, deltas);
+            if (outcome != Outcome.WRITTEN) {
+                callback.accept(outcome == Outcome.FAILED ? null : Collections.emptyMap());
+                return;
+            }
+            // 이미 더해진 변화량을 다시 보내지 않도록, 값을 읽지 못해도 저장은 성공으로 처리합니다.
+            Map<UUID, Integer> stored;
+            try {
+                stored = storage.selectPoints(new ArrayList<>(deltas.keySet()));
             } catch (SQLException e) {
-                throw new RuntimeException(e);
+                stored = Collections.emptyMap();
             }
-            consumer.accept(map);
-        });
+            callback.accept(stored);
+        }, () -> callback.accept(null), false);
     }
 
-    public void savePoint(Map<UUID, Integer> points) {
-        executor.execute(() -> {
+    // 쓰기 스레드에서 실행합니다. 남은 묶음이 있으면 먼저 저장하고, 저장하지 못하면 이 묶음도 그 뒤에 남깁니다.
+    // 커밋된 뒤 연결이 끊기면 실패로 보이므로, 재시도와 파일에 남긴 묶음은 같은 묶음 번호로 다시 보냅니다.
+    private Outcome write(int type, Map<UUID, Integer> rows) {
+        UUID id = UUID.randomUUID();
+        if (!drainSpill(false)) {
+            return spill(type, id, rows, null);
+        }
+        long delay = queueConfig.getRetryDelay();
+        SQLException failure;
+        int attempt = 1;
+        while (true) {
+            long started = System.nanoTime();
             try {
-                for (Map.Entry<UUID, Integer> entry : points.entrySet()) {
-                    insertPoint.setString(1, entry.getKey().toString());
-                    insertPoint.setInt(2, entry.getValue());
-                    if (insertPoint.getParameterMetaData().getParameterCount() == 3) {
-                        insertPoint.setInt(3, entry.getValue());
-                    }
-                    insertPoint.addBatch();
+                apply(type, id, rows);
+                recordBatch(rows.size(), started);
+                return Outcome.WRITTEN;
+            } catch (SQLException e) {
+                errors.increment();
+                failure = e;
+            }
+            // 닫는 중에는 기다리지 않습니다.
+            if (attempt++ >= queueConfig.getRetryAttempts() || closing) {
+                break;
+            }
+            retries.increment();
+            try {
+                Thread.sleep(delay);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+            delay = Math.min(delay * 2, queueConfig.getRetryMaxDelay());
+        }
+        return spill(type, id, rows, failure);
+    }
+
+    private void apply(int type, UUID id, Map<UUID, Integer> rows) throws SQLException {
+        if (type == SpillQueue.SAVE) {
+            storage.savePoints(rows);
+        } else {
+            storage.addPoints(id, rows);
+        }
+    }
+
+    private Outcome spill(int type, UUID id, Map<UUID, Integer> rows, SQLException failure) {
+        if (spill == null) {
+            if (failure != null) {
+                failure.printStackTrace();
+            }
+            return Outcome.FAILED;
+        }
+        try {
+            spill.append(type, id, rows);
+        } catch (IOException e) {
+            e.printStackTrace();
+            return Outcome.FAILED;
+        }
+        spilledRows.add(rows.size());
+        if (failure != null) {
+            logger.warning(rows.size() + " 행을 데이터베이스에 저장하지 못해 파일에 남겼습니다. ("
+                + failure.getMessage() + ")");
+            nextDrainAt = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(drainDelay);
+        }
+        scheduleDrain();
+        return Outcome.SPILLED;
+    }
+
+    // 쓰기 스레드에서 남은 묶음을 남긴 순서대로 저장합니다. 모두 저장했으면 true 를 반환합니다.
+    // force 가 아니면 재시도 시각 전에는 시도하지 않으며, 실패할 때마다 재시도 간격을 두 배로 늘립니다.
+    private boolean drainSpill(boolean force) {
+        if (spill == null) {
+            return true;
+        }
+        boolean drained = false;
+        while (true) {
+            SpillQueue.Batch batch = spill.peek();
+            if (batch == null) {
+                drainDelay = queueConfig.getRetryDelay();
+                if (drained) {
+                    logger.info("파일에 남긴 포인트를 모두 데이터베이스에 저장했습니다.");
                 }
-                insertPoint.executeBatch();
+                return true;
+            }
+            if (!force && System.nanoTime() < nextDrainAt) {
+                return false;
+            }
+            long started = System.nanoTime();
+            spillLock.writeLock().lock();
+            try {
+                apply(batch.getType(), batch.getId(), batch.getRows());
+                spill.remove(batch);
             } catch (SQLException e) {
-                throw new RuntimeException(e);
+                errors.increment();
+                nextDrainAt = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(drainDelay);
+                drainDelay = Math.min(drainDelay * 2, queueConfig.getRetryMaxDelay());
+                return false;
+            } finally {
+                spillLock.writeLock().unlock();
             }
-        });
+            recordBatch(batch.getRows().size(), started);
+            drained = true;
+        }
     }
 
-    public void closeDatabase() {
-        executor.shutdown();
+    // 새 저장이 없어도 재시도 시각에 남은 묶음을 저장합니다.
+    private void scheduleDrain() {
+        if (spill == null || closing || !drainScheduled.compareAndSet(false, true)) {
+            return;
+        }
+        long delay = Math.max(0, nextDrainAt - System.nanoTime());
         try {
-            if (!executor.awaitTermination(30, TimeUnit.SECONDS)) {
-                executor.shutdownNow();
+            scheduler.schedule(() -> {
+                drainScheduled.set(false);
+                if (!drainSpill(false)) {
+                    scheduleDrain();
+                }
+            }, delay, TimeUnit.NANOSECONDS);
+        } catch (RejectedExecutionException e) {
+            drainScheduled.set(false);
+        }
+    }
+
+    private void recordBatch(int size, long started) {
+        batchSize.record(size);
+        rowsWritten.add(size);
+        long elapsed = System.nanoTime() - started;
+        if (elapsed > 0) {
+            writeRate.record(size * TimeUnit.SECONDS.toNanos(1) / elapsed);
+        }
+    }
+
+    public int getWriterQueueSize() {
+        return writerQueue.get();
+    }
+
+    public int getReaderQueueSize() {
+        return readerQueue.get();
+    }
+
+    // 쓰기 대기열이 가득 찼으면 true. 이때는 정기 저장을 미루어 변경을 플레이어마다 하나로 모아 둡니다.
+    public boolean isBackpressured() {
+        return writerQueue.get() >= queueConfig.getCapacity();
+    }
+
+    // 파일에 남아 데이터베이스에 저장되지 않은 묶음 수
+    public int getSpillSize() {
+        return spill == null ? 0 : spill.size();
+    }
+
+    public long getSpillRows() {
+        return spill == null ? 0 : spill.getRows();
+    }
+
+    // 남은 쓰기를 마치고 남은 묶음의 저장을 한 번 더 시도합니다. 그래도 남은 묶음은 다음 시작 때 저장합니다.
+    public void closeDatabase() {
+        closing = true;
+        if (spill != null) {
+            try {
+                writeExecutor.execute(() -> drainSpill(true));
+            } catch (RejectedExecutionException ignored) {
             }
-        } catch (InterruptedException ignored) {
         }
+        shutdown(readExecutor);
+        shutdown(writeExecutor);
+        storage.close();
+        if (spill != null) {
+            if (!spill.isEmpty()) {
+                logger.warning(spill.getRows() + " 행을 데이터베이스에 저장하지 못해 파일에 남겨 두었습니다."
+                    + " 다음 시작 때 저장합니다.");
+            }
+            spill.close();
+        }
+    }
+
+    private void execute(ExecutorService executor, SqlTask task) {
+        execute(executor, task, () -> {
+        }, true);
+    }
+
+    // bounded 이면 대기열이 가득 찼을 때 실행하지 않고 onFailure 를 바로 호출합니다.
+    // 포인트 저장은 플레이어마다 모아 둘 수 없는 종료 중의 저장도 있으므로 거절하지 않고 (capacity 를 넘을 수
+    // 있음), isBackpressured 로 알립니다.
+    private void execute(ExecutorService executor, SqlTask task, Runnable onFailure,
+        boolean bounded) {
+        boolean writer = executor == writeExecutor;
+        AtomicInteger queue = writer ? writerQueue : readerQueue;
+        Histogram latency = writer ? writerLatency : readerLatency;
+        if (!bounded) {
+            queue.incrementAndGet();
+        } else if (!admit(queue)) {
+            rejected.increment();
+            onFailure.run();
+            return;
+        }
+        long submitted = System.nanoTime();
         try {
-            if (selectPoint != null && !selectPoint.isClosed()) {
-                selectPoint.close();
+            executor.execute(() -> {
+                long started = System.nanoTime();
+                queue.decrementAndGet();
+                queueWait.record(started - submitted);
+                try {
+                    task.run();
+                } catch (SQLException e) {
+                    errors.increment();
+                    e.printStackTrace();
+                    onFailure.run();
+                } finally {
+                    latency.record(System.nanoTime() - started);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            // 이미 닫혔습니다.
+            queue.decrementAndGet();
+            rejected.increment();
+            onFailure.run();
+        }
+    }
+
+    // 대기열에 자리가 있으면 한 칸을 차지합니다. 여러 스레드가 동시에 넣어도 capacity 를 넘지 않습니다.
+    private boolean admit(AtomicInteger queue) {
+        int capacity = queueConfig.getCapacity();
+        while (true) {
+            int size = queue.get();
+            if (size >= capacity) {
+                return false;
             }
-            if (insertPoint != null && !insertPoint.isClosed()) {
-                insertPoint.close();
+            if (queue.compareAndSet(size, size + 1)) {
+                return true;
             }
-            if (conn != null && !conn.isClosed()) {
-                conn.close();
+        }
+    }
+
+    private static void shutdown(ExecutorService executor) {
+        executor.shutdown();
+        try {
+            if (!executor.awaitTermination(30, TimeUnit.SECONDS)) {
+                executor.shutdownNow();
             }
-        } catch (SQLException ignored) {
+        } catch (InterruptedException ignored) {
         }
     }
+
+    private static ThreadFactory threadFactory(String name) {
+        AtomicInteger count = new AtomicInteger();
+        return runnable -> new Thread(runnable, name + "-" + count.incrementAndGet());
+    }
+
+    private enum Outcome {
+        WRITTEN,
+        // 파일에 남겼습니다. (나중에 저장됩니다)
+        SPILLED,
+        FAILED
+    }
+
+    @FunctionalInterface
+    private interface SqlTask {
+
+        void run() throws SQLException;
+    }
 }
@@ -0,0 +1,213 @@
+package net.utory.rankpoint.data;
+
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.UUID;
+import net.utory.rankpoint.Rankpoint;
+import org.bukkit.Bukkit;
+import org.bukkit.OfflinePlayer;
+
+// 포인트 상위 플레이어 목록입니다. 처음 한 번 데이터베이스에서 불러온 뒤에는 PlayerData 의 변경만으로 갱신되며,
+// 갱신은 메인 스레드에서 해야 합니다. 바뀔 때마다 표시할 목록을 새 배열로 만들어 교체하므로 getEntry 와
+// getSize 는 다른 스레드에서도 호출할 수 있습니다.
+public final class Leaderboard {
+
+    private static final Entry[] EMPTY = new Entry[0];
+    private static final Comparator<Entry> ORDER = Comparator.<Entry>comparingInt(e -> e.point)
+        .reversed().thenComparing(e -> e.uuid, Comparator.reverseOrder());
+
+    private final Rankpoint instance;
+    private final PlayerDataManager playerDataManager;
+    private final int size;
+    // 표시하는 수보다 넉넉하게 보관해 순위가 내려간 플레이어를 빼도 바로 다시 불러오지 않도록 합니다.
+    private final int capacity;
+    private final TreeSet<Entry> entries = new TreeSet<>(ORDER);
+    private final Map<UUID, Entry> entryMap = new HashMap<>();
+    // 목록에 없는 플레이어의 포인트는 모두 이 값 이하입니다. (-1 이면 목록 밖의 플레이어가 없음)
+    private int floor = -1;
+    // 만든 뒤에는 바꾸지 않습니다. (Entry 도 포인트가 바뀌면 새로 만듭니다)
+    private volatile Entry[] view = EMPTY;
+    private boolean loading = false;
+
+    Leaderboard(Rankpoint instance, PlayerDataManager playerDataManager, int size) {
+        this.instance = instance;
+        this.playerDataManager = playerDataManager;
+        this.size = Math.max(1, size);
+        this.capacity = this.size * 2;
+    }
+
+    void load() {
+        if (loading) {
+            return;
+        }
+        loading = true;
+        DatabaseManager databaseManager = instance.getDatabaseManager();
+        databaseManager.loadTopPoints(capacity, points -> {
+            if (instance.isEnabled()) {
+                Bukkit.getScheduler().runTask(instance, () -> {
+                    if (points == null) {
+                        onFailed();
+                    } else {
+                        onLoaded(points);
+                    }
+                });
+            }
+        });
+    }
+
+    // 불러오지 못하면 load-timeout 뒤에 다시 시도합니다. (그 사이 새 순위표로 바뀌었으면 시도하지 않음)
+    private void onFailed() {
+        loading = false;
+        Bukkit.getScheduler().runTaskLater(instance, () -> {
+            if (instance.getPlayerDataManager() == playerDataManager
+                && playerDataManager.getLeaderboard() == this) {
+                load();
+            }
+        }, playerDataManager.getLoadTimeout());
+    }
+
+    private void onLoaded(Map<UUID, Integer> points) {
+        entries.clear();
+        entryMap.clear();
+        floor = -1;
+        for (Map.Entry<UUID, Integer> point : points.entrySet()) {
+            add(new Entry(point.getKey(), point.getValue(), null));
+        }
+        if (points.size() >= capacity) {
+            floor = entries.last().point;
+        }
+        // 아직 저장되지 않은 캐시의 값이 데이터베이스보다 최신입니다.
+        playerDataManager.forEachPlayerData(data -> apply(data.getUuid(), data.getPoint()));
+        publish();
+        playerDataManager.getNameIndex().requestNames(entryMap.keySet(), this::resolveNames);
+        loading = false;
+    }
+
+    void update(UUID uuid, int point) {
+        if (apply(uuid, point)) {
+            publish();
+        }
+    }
+
+    // 목록이 바뀌었으면 true 를 반환합니다.
+    private boolean apply(UUID uuid, int point) {
+        Entry entry = entryMap.get(uuid);
+        if (entry != null) {
+            if (entry.point == point) {
+                return false;
+            }
+            entries.remove(entry);
+            entryMap.remove(uuid);
+            if (point < floor) {
+                // 목록 밖의 플레이어보다 낮아졌을 수 있으므로 목록에서 뺍니다.
+                if (entries.size() < size) {
+                    load();
+                }
+                return true;
+            }
+            add(new Entry(uuid, point, entry.name));
+        } else if (point > floor) {
+            add(new Entry(uuid, point, null));
+        } else {
+            return false;
+        }
+        while (entries.size() > capacity) {
+            Entry last = entries.pollLast();
+            entryMap.remove(last.uuid);
+            floor = Math.max(floor, last.point);
+        }
+        return true;
+    }
+
+    private void add(Entry entry) {
+        entries.add(entry);
+        entryMap.put(entry.uuid, entry);
+    }
+
+    // 이름은 메인 스레드에서 이름 색인으로 채웁니다.
+    private void publish() {
+        NameIndex nameIndex = playerDataManager.getNameIndex();
+        int length = Math.min(size, entries.size());
+        Entry[] array = new Entry[length];
+        int i = 0;
+        for (Entry entry : entries) {
+            if (i == length) {
+                break;
+            }
+            if (entry.name == null) {
+                entry.name = nameIndex.getName(entry.uuid);
+            }
+            array[i++] = entry;
+        }
+        view = array;
+    }
+
+    // 이름 색인이 이름을 불러온 뒤 호출됩니다.
+    private void resolveNames() {
+        NameIndex nameIndex = playerDataManager.getNameIndex();
+        for (Entry entry : entries) {
+            if (entry.name == null) {
+                entry.name = nameIndex.getName(entry.uuid);
+            }
+        }
+    }
+
+    // position 은 1 부터 시작합니다.
+    public Entry getEntry(int position) {
+        Entry[] view = this.view;
+        if (position < 1 || position > view.length) {
+            return null;
+        }
+        return view[position - 1];
+    }
+
+    public int getSize() {
+        return view.length;
+    }
+
+    public static final class Entry {
+
+        private final UUID uuid;
+        private final int point;
+        private final String pointString;
+        // 이름 색인에서 찾은 이름 (메인 스레드에서만 채움)
+        private volatile String name;
+        private volatile String offlineName;
+
+        private Entry(UUID uuid, int point, String name) {
+            this.uuid = uuid;
+            this.point = point;
+            this.pointString = String.valueOf(point);
+            this.name = name;
+        }
+
+        public UUID getUuid() {
+            return uuid;
+        }
+
+        public int getPoint() {
+            return point;
+        }
+
+        public String getPointString() {
+            return pointString;
+        }
+
+        public String getName() {
+            String name = this.name;
+            if (name != null) {
+                return name;
+            }
+            name = offlineName;
+            if (name == null) {
+                // 이름 색인에 아직 없는 플레이어는 서버에 저장된 정보를 사용합니다. (UUID 로 찾으므로 외부 조회 없음)
+                OfflinePlayer player = Bukkit.getOfflinePlayer(uuid);
+                name = player.getName() == null ? uuid.toString() : player.getName();
+                offlineName = name;
+            }
+            return name;
+        }
+    }
+}
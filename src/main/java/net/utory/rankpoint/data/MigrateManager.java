@@ -1,19 +1,207 @@
 package net.utory.rankpoint.data;
 
+import static net.utory.rankpoint.Message.sendMessage;
 
-public class MigrateManager {
+import java.io.File;
+import java.io.IOException;
+import java.sql.SQLException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import net.utory.rankpoint.MessageTemplate;
+import net.utory.rankpoint.Rankpoint;
+import net.utory.rankpoint.data.database.Storage;
+import org.bukkit.Bukkit;
+import org.bukkit.command.CommandSender;
+import org.bukkit.configuration.file.FileConfiguration;
+import org.bukkit.configuration.file.YamlConfiguration;
 
-    private DatabaseManager to;
-    private DatabaseManager from;
+// 한 저장소의 포인트를 다른 저장소로 옮깁니다. UUID 순서로 fetchSize 행씩 읽어 chunkSize 행마다 저장하며,
+// 저장한 마지막 UUID 를 상태 파일에 남겨 중단되어도 이어서 옮길 수 있습니다. 모든 작업은 별도의 스레드에서 실행됩니다.
+// 읽는 쪽은 지금 사용 중인 저장소이며, 옮기는 동안에도 서버가 함께 사용합니다.
+public final class MigrateManager {
 
-    public MigrateManager(DatabaseManager to, DatabaseManager from) {
-        this.to = to;
+    private final Rankpoint instance;
+    private final CommandSender sender;
+    private final Storage from;
+    private final StorageOpener to;
+    private final String fromName;
+    private final String toName;
+    private final int fetchSize;
+    private final int chunkSize;
+    private final long progressInterval;
+    private final File stateFile;
+    private final QueueConfig queueConfig;
+    private final ExecutorService executor = Executors
+        .newSingleThreadExecutor(runnable -> new Thread(runnable, "Rankpoint-Migrate"));
+    private volatile boolean cancelled = false;
+    // 아래는 작업 스레드에서만 사용합니다.
+    private String lastUuid = "";
+    private long copied = 0;
+    private long total = 0;
+    private long lastReport = 0;
+    // 이번 실행에서 옮기기 시작한 시각과 그때까지 옮긴 행 수 (초당 행 수 계산)
+    private long startedAt = 0;
+    private long startCopied = 0;
+
+    // progressInterval: 초. to 는 작업 스레드에서 열며, 다 옮기면 새 DatabaseManager 가 넘겨받습니다.
+    public MigrateManager(Rankpoint instance, CommandSender sender, Storage from, String fromName,
+        StorageOpener to, String toName, int fetchSize, int chunkSize, long progressInterval,
+        File stateFile, QueueConfig queueConfig) {
+        this.instance = instance;
+        this.sender = sender;
         this.from = from;
+        this.fromName = fromName;
+        this.to = to;
+        this.toName = toName;
+        this.fetchSize = Math.max(1, fetchSize);
+        this.chunkSize = Math.max(1, chunkSize);
+        this.progressInterval = TimeUnit.SECONDS.toNanos(Math.max(1, progressInterval));
+        this.stateFile = stateFile;
+        this.queueConfig = queueConfig;
+    }
+
+    // 옮기기를 마치면 새 저장소의 DatabaseManager 가, 실패하면 null 이 메인 스레드에서 전달됩니다.
+    public void start(Consumer<DatabaseManager> callback) {
+        executor.execute(() -> {
+            DatabaseManager target = null;
+            Storage storage = null;
+            try {
+                storage = to.open();
+                copy(storage);
+                if (!cancelled) {
+                    target = new DatabaseManager(storage, instance.getMetrics(), queueConfig,
+                        instance.getLogger());
+                }
+            } catch (SQLException | RuntimeException e) {
+                // 설정 값이 잘못된 경우 (IllegalArgumentException) 등도 실패로 전달해야 옮기기 상태가 풀립니다.
+                e.printStackTrace();
+                instance.getLogger().severe(fromName + " 에서 " + toName
+                    + " (으)로 데이터를 옮기는데 실패했습니다. 다시 실행하면 " + copied + " 번째 행부터 이어서 옮깁니다.");
+            }
+            if (target == null && storage != null) {
+                storage.close();
+            }
+            if (cancelled || !instance.isEnabled()) {
+                if (target != null) {
+                    target.closeDatabase();
+                }
+                return;
+            }
+            DatabaseManager result = target;
+            if (result != null && !stateFile.delete() && stateFile.exists()) {
+                instance.getLogger().warning(stateFile.getName() + " 파일을 지우는데 실패했습니다.");
+            }
+            Bukkit.getScheduler().runTask(instance, () -> callback.accept(result));
+        });
+    }
+
+    private void copy(Storage target) throws SQLException {
+        readState();
+        total = from.countRows();
+        report(instance.getMessage().CommandMigrateStart(), fromName + " -> " + toName);
+        startedAt = System.nanoTime();
+        startCopied = copied;
+        Map<UUID, Integer> chunk = new LinkedHashMap<>();
+        while (!cancelled) {
+            Map<UUID, Integer> rows = from.scan(lastUuid, fetchSize);
+            String uuid = lastUuid;
+            for (Map.Entry<UUID, Integer> row : rows.entrySet()) {
+                uuid = row.getKey().toString();
+                chunk.put(row.getKey(), row.getValue());
+                if (chunk.size() == chunkSize) {
+                    commit(target, chunk, uuid);
+                }
+            }
+            if (!chunk.isEmpty()) {
+                commit(target, chunk, uuid);
+            }
+            if (System.nanoTime() - lastReport >= progressInterval) {
+                report(instance.getMessage().CommandMigrateProgress(), progress());
+            }
+            if (rows.size() < fetchSize) {
+                break;
+            }
+        }
+    }
+
+    // 한 묶음을 한 번에 저장하고, 저장한 뒤에만 이어서 옮길 위치를 기록합니다.
+    private void commit(Storage target, Map<UUID, Integer> chunk, String uuid)
+        throws SQLException {
+        target.savePoints(chunk);
+        lastUuid = uuid;
+        copied += chunk.size();
+        chunk.clear();
+        writeState();
+    }
+
+    // 같은 방향으로 옮기다 중단된 기록이 있으면 그 위치부터 이어서 옮깁니다.
+    private void readState() {
+        if (!stateFile.exists()) {
+            return;
+        }
+        FileConfiguration state = YamlConfiguration.loadConfiguration(stateFile);
+        if (fromName.equals(state.getString("from")) && toName.equals(state.getString("to"))) {
+            lastUuid = state.getString("last-uuid", "");
+            copied = state.getLong("copied", 0);
+        }
     }
 
-    public void migrate() {
-        from.loadAllPoints(to::savePoint);
-        from.closeDatabase();
-        to.closeDatabase();
+    private void writeState() {
+        FileConfiguration state = new YamlConfiguration();
+        state.set("from", fromName);
+        state.set("to", toName);
+        state.set("last-uuid", lastUuid);
+        state.set("copied", copied);
+        try {
+            state.save(stateFile);
+        } catch (IOException e) {
+            instance.getLogger().warning(stateFile.getName() + " 파일을 저장하는데 실패했습니다.");
+        }
+    }
+
+    private String progress() {
+        long percent = total <= 0 ? 100 : Math.min(100, copied * 100 / total);
+        long elapsed = System.nanoTime() - startedAt;
+        long rate = elapsed <= 0 ? 0
+            : (copied - startCopied) * TimeUnit.SECONDS.toNanos(1) / elapsed;
+        return copied + "/" + total + " (" + percent + "%, " + rate + " rows/s)";
+    }
+
+    private void report(MessageTemplate template, String arg) {
+        lastReport = System.nanoTime();
+        instance.getLogger().info("데이터베이스 변경: " + arg);
+        if (instance.isEnabled()) {
+            Bukkit.getScheduler()
+                .runTask(instance, () -> sendMessage(sender, template, null, null, null, arg));
+        }
+    }
+
+    // 이전 저장소는 남은 쓰기를 마친 뒤 작업 스레드에서 닫습니다.
+    public void close(DatabaseManager previous) {
+        if (previous != null) {
+            executor.execute(previous::closeDatabase);
+        }
+        executor.shutdown();
+    }
+
+    // 플러그인이 비활성화될 때 호출됩니다. 진행 중인 묶음까지만 저장하고 멈춥니다.
+    public void cancel() {
+        cancelled = true;
+        executor.shutdown();
+        try {
+            executor.awaitTermination(30, TimeUnit.SECONDS);
+        } catch (InterruptedException ignored) {
+        }
+    }
+
+    @FunctionalInterface
+    public interface StorageOpener {
+
+        Storage open() throws SQLException;
     }
 }
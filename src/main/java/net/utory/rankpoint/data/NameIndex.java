@@ -0,0 +1,161 @@
+package net.utory.rankpoint.data;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.function.BiConsumer;
+import net.utory.rankpoint.Rankpoint;
+import org.bukkit.Bukkit;
+
+// 플레이어 이름으로 UUID 를 대소문자 구분 없이 찾습니다. 접속한 플레이어의 이름은 데이터베이스에 저장해 두고,
+// 접속 중이 아닌 플레이어는 메모리, 데이터베이스 순서로 찾습니다. (Mojang API 나 usercache.json 을 사용하지 않음)
+// 모든 메서드는 메인 스레드에서 호출해야 합니다.
+public final class NameIndex {
+
+    private final Rankpoint instance;
+    // 오래 사용하지 않은 이름부터 내보냅니다.
+    private final Map<UUID, String> names;
+    // 소문자 이름 -> UUID
+    private final Map<String, UUID> uuids = new HashMap<>();
+    private final Map<String, List<Lookup>> lookups = new HashMap<>();
+    private final Set<UUID> loadingNames = new HashSet<>();
+
+    NameIndex(Rankpoint instance, int maximumSize) {
+        this.instance = instance;
+        this.names = new LinkedHashMap<UUID, String>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<UUID, String> eldest) {
+                if (size() <= maximumSize) {
+                    return false;
+                }
+                uuids.remove(lower(eldest.getValue()), eldest.getKey());
+                return true;
+            }
+        };
+    }
+
+    // 접속한 플레이어의 이름을 기록하고, 처음 보거나 바뀌었으면 데이터베이스에 저장합니다.
+    void record(UUID uuid, String name) {
+        if (!name.equals(put(uuid, name))) {
+            instance.getDatabaseManager().saveName(uuid, name);
+        }
+    }
+
+    private String put(UUID uuid, String name) {
+        String oldName = names.put(uuid, name);
+        if (oldName != null && !oldName.equalsIgnoreCase(name)) {
+            uuids.remove(lower(oldName), uuid);
+        }
+        uuids.put(lower(name), uuid);
+        return oldName;
+    }
+
+    // 메모리에 있는 이름만 반환합니다. 없으면 null 입니다.
+    public String getName(UUID uuid) {
+        return names.get(uuid);
+    }
+
+    // callback 에는 UUID 와 저장된 그대로의 이름이 전달되며, 한 번도 접속하지 않은 이름이면 (null, null) 이 전달됩니다.
+    // 데이터베이스에서 읽지 못하면 onFailure 가 호출되며, 다음에 찾을 때 다시 조회합니다.
+    // 같은 이름을 동시에 여러 번 찾으면 한 번만 조회합니다.
+    public void lookup(String name, BiConsumer<UUID, String> callback, Runnable onFailure) {
+        String lowerName = lower(name);
+        UUID uuid = uuids.get(lowerName);
+        if (uuid != null) {
+            callback.accept(uuid, names.get(uuid));
+            return;
+        }
+        List<Lookup> waiting = lookups.get(lowerName);
+        if (waiting != null) {
+            waiting.add(new Lookup(callback, onFailure));
+            return;
+        }
+        waiting = new ArrayList<>();
+        waiting.add(new Lookup(callback, onFailure));
+        lookups.put(lowerName, waiting);
+        instance.getDatabaseManager().loadUuidByName(lowerName,
+            (found, exactName) -> runTask(() -> onLookup(lowerName, found, exactName)),
+            () -> runTask(() -> onLookupFailed(lowerName)));
+    }
+
+    private void onLookup(String lowerName, UUID uuid, String exactName) {
+        if (uuid != null) {
+            put(uuid, exactName);
+        }
+        List<Lookup> waiting = lookups.remove(lowerName);
+        if (waiting != null) {
+            for (Lookup lookup : waiting) {
+                lookup.callback.accept(uuid, exactName);
+            }
+        }
+    }
+
+    private void onLookupFailed(String lowerName) {
+        List<Lookup> waiting = lookups.remove(lowerName);
+        if (waiting != null) {
+            for (Lookup lookup : waiting) {
+                lookup.onFailure.run();
+            }
+        }
+    }
+
+    // 순위표처럼 여러 이름이 필요할 때 메모리에 없는 이름을 한 번에 불러옵니다. 불러오면 onLoaded 를 호출합니다.
+    void requestNames(Collection<UUID> requested, Runnable onLoaded) {
+        List<UUID> missing = new ArrayList<>();
+        for (UUID uuid : requested) {
+            if (!names.containsKey(uuid) && loadingNames.add(uuid)) {
+                missing.add(uuid);
+            }
+        }
+        if (missing.isEmpty()) {
+            return;
+        }
+        // 불러오지 못하면 load-timeout 뒤에 다시 요청합니다. (그 사이 새 이름 색인으로 바뀌었으면 요청하지 않음)
+        instance.getDatabaseManager().loadNames(missing, loaded -> runTask(() -> {
+            loadingNames.removeAll(missing);
+            if (loaded == null) {
+                PlayerDataManager playerDataManager = instance.getPlayerDataManager();
+                if (playerDataManager.getNameIndex() == this) {
+                    Bukkit.getScheduler().runTaskLater(instance,
+                        () -> requestNames(missing, onLoaded), playerDataManager.getLoadTimeout());
+                }
+                return;
+            }
+            for (UUID uuid : missing) {
+                String name = loaded.get(uuid);
+                if (name != null && !names.containsKey(uuid)) {
+                    put(uuid, name);
+                }
+            }
+            onLoaded.run();
+        }));
+    }
+
+    private void runTask(Runnable task) {
+        if (instance.isEnabled()) {
+            Bukkit.getScheduler().runTask(instance, task);
+        }
+    }
+
+    private static String lower(String name) {
+        return name.toLowerCase(Locale.ROOT);
+    }
+
+    private static final class Lookup {
+
+        private final BiConsumer<UUID, String> callback;
+        private final Runnable onFailure;
+
+        private Lookup(BiConsumer<UUID, String> callback, Runnable onFailure) {
+            this.callback = callback;
+            this.onFailure = onFailure;
+        }
+    }
+}
@@ -1,62 +1,295 @@
 package net.utory.rankpoint.data;
 
+import java.io.File;
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
-import java.util.Map.Entry;
+import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
 import java.util.function.Consumer;
 import net.utory.rankpoint.GroupConfig;
-import net.utory.rankpoint.Message;
+import net.utory.rankpoint.GroupConfig.Rank;
 import net.utory.rankpoint.Rankpoint;
+import net.utory.rankpoint.data.sync.PointChange;
+import net.utory.rankpoint.data.sync.PointChangeBus;
+import net.utory.rankpoint.metrics.Histogram;
+import net.utory.rankpoint.metrics.Metrics;
 import org.bukkit.Bukkit;
+import org.bukkit.configuration.file.FileConfiguration;
 import org.bukkit.entity.Player;
 import org.bukkit.event.EventHandler;
 import org.bukkit.event.Listener;
 import org.bukkit.event.player.PlayerJoinEvent;
+import org.bukkit.event.player.PlayerQuitEvent;
+import org.bukkit.scheduler.BukkitTask;
 
 public final class PlayerDataManager {
 
-    private final Map<UUID, PlayerData> playerDataMap = new HashMap<>();
-    private final Map<UUID, List<Consumer<PlayerData>>> loadingTask = new HashMap<>();
+    // 바꾸는 것은 메인 스레드뿐이지만, 플레이스홀더는 다른 스레드에서도 읽습니다.
+    private final Map<UUID, PlayerData> playerDataMap = new ConcurrentHashMap<>();
+    private final Map<UUID, PendingLoad> loadingTask = new HashMap<>();
+    // 마지막 저장 이후 변경된 플레이어만 모아두었다가 저장합니다. (여러 번 바뀌어도 한 번만 저장)
+    private final Set<UUID> dirtyPlayers = new LinkedHashSet<>();
+    // 캐시에서 내보냈지만 아직 저장이 확인되지 않은 데이터 (다시 불러올 때 오래된 값을 읽지 않기 위함)
+    private final Map<UUID, PlayerData> evictingData = new HashMap<>();
+    private final Map<UUID, Long> pendingDeltas = new LinkedHashMap<>();
+    private BukkitTask deltaTask;
     private final Rankpoint instance;
+    private int maximumSize;
+    private long expireAfterQuit;
+    private long expireAfterAccess;
+    // 불러오기를 기다리는 최대 시간 (틱). 지나면 기다리던 작업을 실패로 처리합니다.
+    private long loadTimeout;
+    // true 이면 포인트 대신 마지막 저장 이후의 변화량을 더해 저장합니다. (여러 서버가 같은 테이블을 쓰는 경우)
+    private boolean deltaWrite;
+    // 다른 서버와 포인트 변경을 주고받는 버스 (sync.type: none 이면 null)
+    private PointChangeBus bus;
+    private final Set<UUID> unpublished = new LinkedHashSet<>();
+    private volatile Leaderboard leaderboard;
+    private final NameIndex nameIndex;
+    private final PointDistribution distribution;
+    // 저장소를 옮기는 동안에는 캐시를 내보내지 않습니다. (옮긴 뒤 캐시의 값을 새 저장소에 다시 쓰기 위함)
+    private boolean migrating = false;
+    private int lastFlushSize = 0;
+    private long lastFlushLatency = 0;
+    // usePlayerData 를 호출했을 때 이미 캐시에 있었는지
+    private final LongAdder cacheHits;
+    private final LongAdder cacheMisses;
+    private final LongAdder evictions;
+    private final LongAdder loadFailures;
+    // 쓰기 대기열이 가득 차 미룬 저장 수
+    private final LongAdder deferredFlushes;
+    // 불러오기를 요청한 뒤 데이터를 넘겨받기까지 기다린 시간
+    private final Histogram loadWait;
+    private final Histogram flushLatency;
+    private final Histogram flushSize;
+    // 저장 주기 사이의 포인트 변경을 남기는 저널 (player-data.journal.enabled: false 이면 null)
+    private final PointJournal journal;
 
-    public PlayerDataManager(Rankpoint instance) {
+    public PlayerDataManager(Rankpoint instance, PointChangeBus bus) {
         this.instance = instance;
+        this.bus = bus;
+        Metrics metrics = instance.getMetrics();
+        this.cacheHits = metrics.counter("cache.hits");
+        this.cacheMisses = metrics.counter("cache.misses");
+        this.evictions = metrics.counter("cache.evictions");
+        this.loadFailures = metrics.counter("cache.load-failures");
+        this.deferredFlushes = metrics.counter("flush.deferred");
+        this.loadWait = metrics.latency("cache.load-wait");
+        this.flushLatency = metrics.latency("flush.latency");
+        this.flushSize = metrics.histogram("flush.size");
+        FileConfiguration cf = instance.getConfig();
+        applyConfig(cf);
+        this.journal = openJournal(cf, metrics);
+        this.nameIndex = new NameIndex(instance, maximumSize);
+        this.leaderboard = new Leaderboard(instance, this, cf.getInt("leaderboard.size", 100));
+        leaderboard.load();
+        this.distribution = new PointDistribution(instance);
+        distribution.load(this);
+        if (bus != null) {
+            bus.start(this::onRemoteChange);
+        }
+    }
+
+    private void applyConfig(FileConfiguration cf) {
+        maximumSize = cf.getInt("player-data.cache.maximum-size", 10000);
+        expireAfterQuit = TimeUnit.SECONDS
+            .toMillis(cf.getLong("player-data.cache.expire-after-quit", 300));
+        expireAfterAccess = TimeUnit.SECONDS
+            .toMillis(cf.getLong("player-data.cache.expire-after-access", 1800));
+        loadTimeout = Math.max(1, cf.getLong("player-data.load-timeout", 10)) * 20;
+        deltaWrite = "delta"
+            .equalsIgnoreCase(cf.getString("player-data.write-mode", "absolute"));
+    }
+
+    private PointJournal openJournal(FileConfiguration cf, Metrics metrics) {
+        if (!cf.getBoolean("player-data.journal.enabled", true)) {
+            return null;
+        }
+        try {
+            return new PointJournal(journalDirectory(instance),
+                cf.getInt("player-data.journal.segment-size", 1024) * 1024,
+                metrics.counter("journal.records"));
+        } catch (IOException e) {
+            instance.getLogger().warning("포인트 저널을 만들 수 없어 사용하지 않습니다. (" + e.getMessage() + ")");
+            return null;
+        }
+    }
+
+    private static File journalDirectory(Rankpoint instance) {
+        return new File(instance.getDataFolder(), "journal");
+    }
+
+    // 이전에 갑자기 종료되어 저장되지 않은 포인트를 저널에서 읽어 데이터베이스에 반영합니다. 캐시를 불러오기 전에
+    // 메인 스레드에서 호출하며 저장이 끝날 때까지 기다립니다. 반영하지 못하면 저널을 남겨 두고 false 를 반환합니다.
+    // write-mode: absolute 는 마지막 포인트를, delta 는 저장이 확인되지 않은 변화량을 저장합니다.
+    public static boolean replayJournal(Rankpoint instance, DatabaseManager databaseManager) {
+        File directory = journalDirectory(instance);
+        Map<UUID, Integer> points = new HashMap<>();
+        Map<UUID, Integer> deltas = new HashMap<>();
+        try {
+            PointJournal.read(directory, points, deltas);
+        } catch (IOException e) {
+            e.printStackTrace();
+            return false;
+        }
+        boolean delta = "delta".equalsIgnoreCase(
+            instance.getConfig().getString("player-data.write-mode", "absolute"));
+        Map<UUID, Integer> unsaved = delta ? deltas : points;
+        if (!unsaved.isEmpty()) {
+            CompletableFuture<Boolean> result = new CompletableFuture<>();
+            if (delta) {
+                databaseManager.addPoints(unsaved, stored -> result.complete(stored != null));
+            } else {
+                databaseManager.savePoint(unsaved, result::complete);
+            }
+            if (!result.join()) {
+                instance.getLogger().severe("저널의 포인트를 데이터베이스에 반영하지 못했습니다.");
+                return false;
+            }
+            instance.getLogger().info(unsaved.size() + " 명의 저장되지 않은 포인트를 저널에서 복구했습니다.");
+        }
+        PointJournal.deleteAll(directory);
+        return true;
+    }
+
+    // 저장소가 그대로일 때 다시 불러온 설정을 캐시를 유지한 채 적용하고, 새 그룹 설정으로 랭크를 다시 계산합니다.
+    // 이전 버스를 닫는 작업을 반환하며, 반환된 작업은 다른 스레드에서 실행할 수 있습니다.
+    public Runnable reconfigure(FileConfiguration cf, PointChangeBus newBus) {
+        applyConfig(cf);
+        int leaderboardSize = cf.getInt("leaderboard.size", 100);
+        if (leaderboardSize != leaderboard.getSize()) {
+            leaderboard = new Leaderboard(instance, this, leaderboardSize);
+            leaderboard.load();
+        }
+        PointChangeBus oldBus = bus;
+        bus = newBus;
+        if (newBus != null) {
+            newBus.start(this::onRemoteChange);
+        } else {
+            unpublished.clear();
+        }
+        for (PlayerData data : playerDataMap.values()) {
+            data.update();
+        }
+        for (PlayerData data : evictingData.values()) {
+            data.update();
+        }
+        return () -> {
+            if (oldBus != null) {
+                oldBus.close();
+            }
+        };
     }
 
     private void loadPlayerData(UUID uuid) {
-        if (playerDataMap.containsKey(uuid) || loadingTask.containsKey(uuid)) {
+        if (playerDataMap.containsKey(uuid) || loadingTask.containsKey(uuid)
+            || restoreEvicted(uuid)) {
             return;
         }
 
-        DatabaseManager databaseManager = instance.getDatabaseManager();
+        loadingTask.put(uuid, new PendingLoad());
+        requestLoad(Collections.singletonList(uuid));
+    }
 
-        loadingTask.put(uuid, new ArrayList<>());
-        databaseManager.loadPoint(uuid, (i) ->
+    // loadingTask 에 넣어 둔 플레이어들을 한 번에 불러옵니다. 불러오지 못하거나 load-timeout 안에 불러오지 못하면
+    // 기다리던 작업을 실패로 처리하며, 다음에 사용할 때 다시 불러옵니다.
+    private void requestLoad(List<UUID> uuids) {
+        Map<UUID, PendingLoad> requests = new HashMap<>(uuids.size() * 4 / 3 + 1);
+        for (UUID uuid : uuids) {
+            requests.put(uuid, loadingTask.get(uuid));
+        }
+        BukkitTask timeout = Bukkit.getScheduler().runTaskLater(instance,
+            () -> failLoad(requests, "시간 안에"), loadTimeout);
+        instance.getDatabaseManager().loadPoints(uuids, points ->
             Bukkit.getScheduler().runTask(instance, () -> {
-                PlayerData pd = new PlayerData(uuid, i);
-                playerDataMap.put(uuid, pd);
-                for (Consumer<PlayerData> consumer : loadingTask.remove(uuid)) {
-                    consumer.accept(pd);
+                timeout.cancel();
+                if (points == null) {
+                    failLoad(requests, "데이터베이스에서");
+                    return;
+                }
+                for (Map.Entry<UUID, PendingLoad> entry : requests.entrySet()) {
+                    completeLoad(entry.getKey(), entry.getValue(), points.get(entry.getKey()));
                 }
             }));
     }
 
+    private boolean restoreEvicted(UUID uuid) {
+        PlayerData evicted = evictingData.remove(uuid);
+        if (evicted == null) {
+            return false;
+        }
+        evicted.lastAccess = System.currentTimeMillis();
+        playerDataMap.put(uuid, evicted);
+        dirtyPlayers.add(uuid);
+        return true;
+    }
+
+    // 이미 실패로 처리된 요청의 결과는 버립니다.
+    private void completeLoad(UUID uuid, PendingLoad pending, Integer point) {
+        if (loadingTask.get(uuid) != pending) {
+            return;
+        }
+        loadingTask.remove(uuid);
+        loadWait.record(System.nanoTime() - pending.requested);
+        PlayerData pd = new PlayerData(this, uuid, point);
+        playerDataMap.put(uuid, pd);
+        for (Consumer<PlayerData> consumer : pending.consumers) {
+            consumer.accept(pd);
+        }
+    }
+
+    private void failLoad(Map<UUID, PendingLoad> requests, String reason) {
+        int failed = 0;
+        for (Map.Entry<UUID, PendingLoad> entry : requests.entrySet()) {
+            PendingLoad pending = entry.getValue();
+            if (loadingTask.get(entry.getKey()) != pending) {
+                continue;
+            }
+            loadingTask.remove(entry.getKey());
+            failed++;
+            for (Runnable onFailure : pending.failures) {
+                onFailure.run();
+            }
+        }
+        if (failed > 0) {
+            loadFailures.add(failed);
+            instance.getLogger().warning(failed + " 명의 포인트를 " + reason + " 불러오지 못했습니다.");
+        }
+    }
+
     public void usePlayerData(UUID uuid, Consumer<PlayerData> consumer) {
-        if (playerDataMap.containsKey(uuid)) {
-            consumer.accept(playerDataMap.get(uuid));
+        usePlayerData(uuid, consumer, null);
+    }
+
+    // 불러오지 못하면 consumer 대신 onFailure 가 메인 스레드에서 호출됩니다. (null 이면 호출하지 않음)
+    public void usePlayerData(UUID uuid, Consumer<PlayerData> consumer, Runnable onFailure) {
+        PlayerData data = getPlayerDataOrNull(uuid);
+        if (data != null) {
+            cacheHits.increment();
+            consumer.accept(data);
             return;
         }
+        cacheMisses.increment();
         if (loadingTask.containsKey(uuid)) {
-            loadingTask.get(uuid).add(consumer);
+            loadingTask.get(uuid).add(consumer, onFailure);
             return;
         }
         loadPlayerData(uuid);
         if (loadingTask.containsKey(uuid)) {
-            loadingTask.get(uuid).add(consumer);
+            loadingTask.get(uuid).add(consumer, onFailure);
         } else if (playerDataMap.containsKey(uuid)) {
             consumer.accept(playerDataMap.get(uuid));
         } else {
@@ -65,78 +298,571 @@ public final class PlayerDataManager {
     }
 
     public PlayerData getPlayerDataOrNull(UUID uuid) {
-        return playerDataMap.getOrDefault(uuid, null);
+        PlayerData data = playerDataMap.get(uuid);
+        if (data != null) {
+            data.lastAccess = System.currentTimeMillis();
+        }
+        return data;
+    }
+
+    // 접속 종료 또는 마지막 사용 후 오래된 데이터를 내보내고, 그래도 최대 크기를 넘으면 가장 오래 사용하지 않은
+    // 데이터부터 내보냅니다. 접속 중인 플레이어는 내보내지 않으며 변경된 데이터는 저장 후 내보냅니다.
+    public void evictExpired() {
+        if (migrating || instance.getDatabaseManager().isBackpressured()) {
+            return;
+        }
+        long now = System.currentTimeMillis();
+        List<PlayerData> candidates = new ArrayList<>();
+        List<PlayerData> expired = new ArrayList<>();
+        for (PlayerData data : playerDataMap.values()) {
+            if (Bukkit.getPlayer(data.uuid) != null) {
+                continue;
+            }
+            if ((data.quitAt > 0 && now - data.quitAt >= expireAfterQuit)
+                || now - data.lastAccess >= expireAfterAccess) {
+                expired.add(data);
+            } else {
+                candidates.add(data);
+            }
+        }
+        int overflow = playerDataMap.size() - expired.size() - maximumSize;
+        if (overflow > 0) {
+            candidates.sort(Comparator.comparingLong(data -> data.lastAccess));
+            expired.addAll(candidates.subList(0, Math.min(overflow, candidates.size())));
+        }
+        if (expired.isEmpty()) {
+            return;
+        }
+        evictions.add(expired.size());
+
+        List<PlayerData> saving = new ArrayList<>();
+        for (PlayerData data : expired) {
+            playerDataMap.remove(data.uuid);
+            if (dirtyPlayers.remove(data.uuid)) {
+                saving.add(data);
+                evictingData.put(data.uuid, data);
+            }
+        }
+        if (saving.isEmpty()) {
+            return;
+        }
+        writePlayerData(saving, null, stored -> onEvictSaved(saving, stored != null));
+    }
+
+    private void onEvictSaved(List<PlayerData> saving, boolean success) {
+        for (PlayerData data : saving) {
+            if (evictingData.get(data.uuid) != data) {
+                continue;
+            }
+            evictingData.remove(data.uuid);
+            if (!success) {
+                // 저장에 실패하면 다시 캐시에 올려 다음 저장 때 재시도합니다.
+                playerDataMap.put(data.uuid, data);
+                dirtyPlayers.add(data.uuid);
+            }
+        }
+    }
+
+    void forEachPlayerData(Consumer<PlayerData> consumer) {
+        playerDataMap.values().forEach(consumer);
+    }
+
+    public Leaderboard getLeaderboard() {
+        return leaderboard;
+    }
+
+    // 불러오지 못한 작업을 다시 시도하기까지의 시간 (틱)
+    long getLoadTimeout() {
+        return loadTimeout;
+    }
+
+    public NameIndex getNameIndex() {
+        return nameIndex;
+    }
+
+    public PointDistribution getDistribution() {
+        return distribution;
+    }
+
+    public int getCacheSize() {
+        return playerDataMap.size();
     }
 
     public void saveAllData() {
-        if (playerDataMap.isEmpty()) {
+        if (dirtyPlayers.isEmpty()) {
             return;
         }
-        Map<UUID, Integer> points = new HashMap<>();
+        if (instance.getDatabaseManager().isBackpressured()) {
+            // 바뀐 플레이어는 그대로 남아 다음 저장 때 한 번에 저장됩니다.
+            deferredFlushes.increment();
+            return;
+        }
+        List<PlayerData> dirty = collectDirtyData();
+        if (dirty.isEmpty()) {
+            return;
+        }
+
+        if (journal != null) {
+            // 이번 저장이 확인되면 지금까지의 세그먼트를 지울 수 있습니다.
+            journal.rollIfUsed();
+        }
+        long start = System.nanoTime();
+        writePlayerData(dirty, null, stored -> onFlushed(dirty, stored != null, start));
+    }
 
-        for (Entry<UUID, PlayerData> entry : new HashMap<>(playerDataMap).entrySet()) {
-            if (entry.getValue().isChanged) {
-                points.put(entry.getKey(), entry.getValue().point);
+    private void onFlushed(List<PlayerData> saved, boolean success, long start) {
+        if (!success) {
+            // 저장에 실패한 플레이어는 다음 저장 때 다시 시도합니다.
+            for (PlayerData data : saved) {
+                if (playerDataMap.get(data.uuid) == data) {
+                    dirtyPlayers.add(data.uuid);
+                }
             }
+            instance.getLogger().warning(saved.size() + " 명의 포인트를 저장하는데 실패했습니다.");
+            return;
         }
+        lastFlushSize = saved.size();
+        lastFlushLatency = System.nanoTime() - start;
+        flushSize.record(lastFlushSize);
+        flushLatency.record(lastFlushLatency);
+    }
 
-        if (!points.isEmpty()) {
-            DatabaseManager databaseManager = instance.getDatabaseManager();
-            databaseManager.savePoint(points);
+    private List<PlayerData> collectDirtyData() {
+        List<PlayerData> dirty = new ArrayList<>(dirtyPlayers.size());
+        for (UUID uuid : dirtyPlayers) {
+            PlayerData data = playerDataMap.get(uuid);
+            if (data != null) {
+                dirty.add(data);
+            }
         }
+        dirtyPlayers.clear();
+        return dirty;
+    }
+
+    // callback 은 저장이 끝난 뒤 메인 스레드에서 저장된 포인트와 함께 호출되며, 실패하면 null 이 전달됩니다.
+    // callback 이 null 이면 결과를 기다리지 않습니다. (종료 중) previous 가 있으면 저장에 성공한 플레이어의
+    // 저장 전 포인트를 채웁니다.
+    private void writePlayerData(Collection<PlayerData> players, Map<UUID, Integer> previous,
+        Consumer<Map<UUID, Integer>> callback) {
+        // 보낸 변화량은 0 으로 돌려 두고, 저장이 끝나기 전에 생긴 변화는 다음 저장 때 보냅니다.
+        Map<UUID, Integer> deltas = new HashMap<>(players.size() * 4 / 3 + 1);
+        Map<UUID, Integer> points = new HashMap<>(players.size() * 4 / 3 + 1);
+        List<PlayerData> sent = new ArrayList<>(players.size());
+        for (PlayerData data : players) {
+            if (deltaWrite && data.unsavedDelta == 0) {
+                continue;
+            }
+            deltas.put(data.uuid, data.unsavedDelta);
+            points.put(data.uuid, data.point);
+            sent.add(data);
+            data.inFlightDelta += data.unsavedDelta;
+            data.unsavedDelta = 0;
+        }
+        if (sent.isEmpty()) {
+            if (callback != null) {
+                callback.accept(Collections.emptyMap());
+            }
+            return;
+        }
+
+        JournalMark mark = new JournalMark(sent);
+        DatabaseManager databaseManager = instance.getDatabaseManager();
+        if (callback == null) {
+            if (deltaWrite) {
+                databaseManager.addPoints(deltas, stored -> {
+                    if (stored != null) {
+                        mark.acknowledge();
+                    }
+                });
+            } else {
+                databaseManager.savePoint(points, success -> {
+                    if (success) {
+                        mark.acknowledge();
+                    }
+                });
+            }
+            return;
+        }
+        Consumer<Map<UUID, Integer>> onWritten = stored -> {
+            if (stored != null) {
+                mark.acknowledge();
+            }
+            if (instance.isEnabled()) {
+                Bukkit.getScheduler().runTask(instance, () -> {
+                    // 저장소가 바뀌었으면 이전 저장소의 값으로 캐시를 맞추지 않습니다.
+                    // (캐시의 포인트는 새 저장소에 다시 썼으므로 저널에서도 저장된 것으로 보며,
+                    // 보내는 중인 변화량은 endMigration 에서 이미 비웠습니다)
+                    if (instance.getDatabaseManager() == databaseManager) {
+                        onWritten(sent, deltas, stored, previous, mark);
+                    } else if (stored == null) {
+                        mark.acknowledge();
+                    }
+                    callback.accept(stored);
+                });
+            }
+        };
+        if (deltaWrite) {
+            databaseManager.addPoints(deltas, onWritten);
+        } else {
+            databaseManager.savePoint(points, success -> onWritten.accept(success ? points : null));
+        }
+    }
+
+    // 데이터베이스에 저장된 값에 아직 결과를 받지 못한 다른 저장과 보내지 않은 변화량을 더해 캐시를 맞춥니다.
+    // (write-mode: delta 에서는 다른 서버의 변경도 여기서 반영됩니다) 저장에 실패하면 보냈던 변화량을 되돌립니다.
+    private void onWritten(List<PlayerData> sent, Map<UUID, Integer> deltas,
+        Map<UUID, Integer> stored, Map<UUID, Integer> previous, JournalMark mark) {
+        if (stored == null) {
+            mark.restore();
+        }
+        for (PlayerData data : sent) {
+            int delta = deltas.get(data.uuid);
+            data.inFlightDelta -= delta;
+            if (stored == null) {
+                data.unsavedDelta += delta;
+                continue;
+            }
+            Integer point = stored.get(data.uuid);
+            if (point != null && isCached(data)) {
+                if (previous != null) {
+                    previous.put(data.uuid, data.storedPoint);
+                }
+                data.reconcile(point);
+            }
+        }
+    }
+
+    private boolean isCached(PlayerData data) {
+        return playerDataMap.get(data.uuid) == data || evictingData.get(data.uuid) == data;
+    }
+
+    // 포인트 변경을 저널에 남깁니다. pending 이면 저장이 확인될 때까지 지금 세그먼트를 지우지 않습니다.
+    private void journal(PlayerData data, int delta, boolean pending) {
+        if (journal == null) {
+            return;
+        }
+        synchronized (journal) {
+            data.journaled += delta;
+            journal.appendPoint(data.uuid, data.point, data.journaled, data.acknowledged);
+            if (pending && data.journalSegment < 0) {
+                data.journalSegment = journal.pin();
+            }
+        }
+    }
+
+    // 이번 틱에 바뀐 플레이어를 바로 저장하고, 저장된 값을 다른 서버에 한 번의 메시지로 보냅니다.
+    // giveall 처럼 여러 명이 한꺼번에 바뀌어도 메시지는 하나입니다.
+    public void publishChanges() {
+        if (bus == null || unpublished.isEmpty()
+            || instance.getDatabaseManager().isBackpressured()) {
+            return;
+        }
+        List<PlayerData> changed = new ArrayList<>(unpublished.size());
+        for (UUID uuid : unpublished) {
+            PlayerData data = playerDataMap.get(uuid);
+            if (data != null && dirtyPlayers.remove(uuid)) {
+                changed.add(data);
+            }
+        }
+        unpublished.clear();
+        if (changed.isEmpty()) {
+            return;
+        }
+        Map<UUID, Integer> previous = new HashMap<>(changed.size() * 4 / 3 + 1);
+        writePlayerData(changed, previous, stored -> {
+            if (stored == null) {
+                for (PlayerData data : changed) {
+                    if (playerDataMap.get(data.uuid) == data) {
+                        dirtyPlayers.add(data.uuid);
+                    }
+                }
+            } else if (!stored.isEmpty()) {
+                Map<UUID, PointChange> changes = new HashMap<>(stored.size() * 4 / 3 + 1);
+                for (Map.Entry<UUID, Integer> entry : stored.entrySet()) {
+                    changes.put(entry.getKey(), new PointChange(entry.getValue(),
+                        previous.getOrDefault(entry.getKey(), PointChange.UNKNOWN)));
+                }
+                bus.publish(changes);
+            }
+        });
+    }
+
+    // 다른 서버에서 저장된 포인트를 받아 캐시에 반영합니다. 아직 저장하지 않은 이 서버의 변화량은 유지되며,
+    // 이미 저장된 값이므로 다시 저장하지 않습니다.
+    private void onRemoteChange(Map<UUID, PointChange> changes) {
+        for (Map.Entry<UUID, PointChange> entry : changes.entrySet()) {
+            UUID uuid = entry.getKey();
+            PlayerData data = playerDataMap.get(uuid);
+            if (data == null) {
+                data = evictingData.get(uuid);
+            }
+            PointChange change = entry.getValue();
+            if (data != null) {
+                data.reconcile(change.getPoint());
+                continue;
+            }
+            // 캐시에 없는 플레이어는 보낸 서버가 알려준 이전 포인트에서 옮깁니다. 이전 포인트를 모르면
+            // (이전 버전의 서버 등) 순위표만 갱신합니다.
+            leaderboard.update(uuid, change.getPoint());
+            if (change.getPrevious() != PointChange.UNKNOWN) {
+                distribution.move(change.getPrevious(), change.getPoint());
+            }
+        }
+    }
+
+    public void beginMigration() {
+        migrating = true;
+        for (UUID uuid : new ArrayList<>(evictingData.keySet())) {
+            restoreEvicted(uuid);
+        }
+    }
+
+    // 새 저장소로 바꾼 뒤에 호출하면 캐시의 모든 포인트를 새 저장소에 그대로 씁니다.
+    public void endMigration() {
+        migrating = false;
+        Map<UUID, Integer> points = new HashMap<>(playerDataMap.size() * 4 / 3 + 1);
+        for (PlayerData data : playerDataMap.values()) {
+            points.put(data.uuid, data.point);
+            data.unsavedDelta = 0;
+            data.inFlightDelta = 0;
+            data.storedPoint = data.point;
+        }
+        dirtyPlayers.clear();
+        if (points.isEmpty()) {
+            return;
+        }
+        JournalMark mark = new JournalMark(new ArrayList<>(playerDataMap.values()));
+        instance.getDatabaseManager().savePoint(points, success -> {
+            if (success) {
+                mark.acknowledge();
+            } else if (instance.isEnabled()) {
+                Bukkit.getScheduler().runTask(instance, () -> {
+                    mark.restore();
+                    for (UUID uuid : points.keySet()) {
+                        if (playerDataMap.containsKey(uuid)) {
+                            dirtyPlayers.add(uuid);
+                        }
+                    }
+                });
+            }
+        });
+    }
+
+    public int getDirtyCount() {
+        return dirtyPlayers.size();
+    }
+
+    public int getLoadingCount() {
+        return loadingTask.size();
+    }
+
+    public int getEvictingCount() {
+        return evictingData.size();
+    }
+
+    public int getJournalSegmentCount() {
+        return journal == null ? 0 : journal.getSegmentCount();
+    }
+
+    public int getLastFlushSize() {
+        return lastFlushSize;
+    }
+
+    // 마지막 저장 요청부터 데이터베이스가 저장을 확인하기까지 걸린 시간 (나노초)
+    public long getLastFlushLatency() {
+        return lastFlushLatency;
     }
 
     public void close() {
+        release().run();
+    }
+
+    // 남은 변경의 저장을 요청한 뒤, 버스와 저장소를 닫는 작업을 반환합니다. 저장소를 닫을 때는 남은 쓰기를
+    // 기다리므로, 반환된 작업을 다른 스레드에서 실행하면 메인 스레드가 멈추지 않습니다.
+    // 모든 쓰기가 저장되었으면 저널을 지우고, 아니면 다음 시작 때 반영하도록 남깁니다.
+    public Runnable release() {
+        if (deltaWrite) {
+            writeUncachedDeltas();
+        }
+        applyPendingDeltas();
         unloadAllData();
+        PointChangeBus oldBus = bus;
         DatabaseManager databaseManager = instance.getDatabaseManager();
-        databaseManager.closeDatabase();
+        return () -> {
+            if (oldBus != null) {
+                oldBus.close();
+            }
+            databaseManager.closeDatabase();
+            if (journal != null) {
+                journal.close();
+            }
+        };
     }
 
     public void allPlayerDataLoad(Collection<? extends Player> players) {
+        List<UUID> uuids = new ArrayList<>(players.size());
         for (Player player : players) {
-            loadPlayerData(player.getUniqueId());
+            uuids.add(player.getUniqueId());
+            nameIndex.record(player.getUniqueId(), player.getName());
         }
+        usePlayerData(uuids, data -> {
+        });
     }
 
-    private void unloadAllData() {
-        if (playerDataMap.isEmpty()) {
+    // 여러 플레이어의 데이터를 사용합니다. 캐시에 없는 플레이어는 한 번의 IN 쿼리로 묶어 불러옵니다.
+    public void usePlayerData(Collection<UUID> uuids, Consumer<PlayerData> consumer) {
+        usePlayerData(uuids, consumer, null);
+    }
+
+    // 불러오지 못한 플레이어마다 onFailure 가 메인 스레드에서 호출됩니다. (null 이면 호출하지 않음)
+    public void usePlayerData(Collection<UUID> uuids, Consumer<PlayerData> consumer,
+        Consumer<UUID> onFailure) {
+        List<UUID> missing = new ArrayList<>();
+        for (UUID uuid : uuids) {
+            PlayerData data = getPlayerDataOrNull(uuid);
+            if (data != null) {
+                cacheHits.increment();
+                consumer.accept(data);
+                continue;
+            }
+            cacheMisses.increment();
+            if (restoreEvicted(uuid)) {
+                consumer.accept(playerDataMap.get(uuid));
+                continue;
+            }
+            PendingLoad waiting = loadingTask.get(uuid);
+            if (waiting == null) {
+                waiting = new PendingLoad();
+                loadingTask.put(uuid, waiting);
+                missing.add(uuid);
+            }
+            waiting.add(consumer, onFailure == null ? null : () -> onFailure.accept(uuid));
+        }
+        if (missing.isEmpty()) {
             return;
         }
+        requestLoad(missing);
+    }
+
+    // 포인트 변화량을 모아 두었다가 다음 틱에 플레이어마다 한 번만 적용합니다. (한 번의 update, 한 번의 저장 표시)
+    // 음수는 차감이며, 적용 결과는 0 과 Integer.MAX_VALUE 사이로 제한됩니다. 메인 스레드에서 호출해야 합니다.
+    public void queuePointDelta(UUID uuid, int delta) {
+        pendingDeltas.merge(uuid, (long) delta, Long::sum);
+        scheduleDeltas();
+    }
+
+    public void queuePointDelta(Collection<UUID> uuids, int delta) {
+        for (UUID uuid : uuids) {
+            pendingDeltas.merge(uuid, (long) delta, Long::sum);
+        }
+        scheduleDeltas();
+    }
 
-        Map<UUID, Integer> willSaveData = new HashMap<>();
-        for (Map.Entry<UUID, PlayerData> entry : playerDataMap.entrySet()) {
-            if (entry.getValue().isChanged) {
-                willSaveData.put(entry.getKey(), entry.getValue().point);
+    private void scheduleDeltas() {
+        scheduleDeltas(1);
+    }
+
+    private void scheduleDeltas(long delay) {
+        if (deltaTask == null && !pendingDeltas.isEmpty()) {
+            deltaTask = Bukkit.getScheduler()
+                .runTaskLater(instance, this::applyPendingDeltas, delay);
+        }
+    }
+
+    // 불러오지 못한 플레이어의 변화량은 다시 모아 두었다가 load-timeout 뒤에 다시 적용합니다.
+    public void applyPendingDeltas() {
+        if (deltaTask != null) {
+            deltaTask.cancel();
+            deltaTask = null;
+        }
+        if (pendingDeltas.isEmpty()) {
+            return;
+        }
+        Map<UUID, Long> deltas = new HashMap<>(pendingDeltas);
+        pendingDeltas.clear();
+        usePlayerData(deltas.keySet(), data -> data.applyDelta(deltas.get(data.uuid)), uuid -> {
+            pendingDeltas.merge(uuid, deltas.get(uuid), Long::sum);
+            scheduleDeltas(loadTimeout);
+        });
+    }
+
+    // 종료할 때는 캐시에 없는 플레이어를 불러올 수 없으므로, 쌓인 변화량을 불러오지 않고 그대로 더해 저장합니다.
+    private void writeUncachedDeltas() {
+        Map<UUID, Integer> deltas = new HashMap<>();
+        Iterator<Map.Entry<UUID, Long>> iterator = pendingDeltas.entrySet().iterator();
+        while (iterator.hasNext()) {
+            Map.Entry<UUID, Long> entry = iterator.next();
+            UUID uuid = entry.getKey();
+            if (playerDataMap.containsKey(uuid) || evictingData.containsKey(uuid)) {
+                continue;
             }
+            long delta = entry.getValue();
+            deltas.put(uuid, (int) Math.max(-Integer.MAX_VALUE, Math.min(Integer.MAX_VALUE, delta)));
+            iterator.remove();
+        }
+        if (!deltas.isEmpty()) {
+            instance.getDatabaseManager().addPoints(deltas);
+        }
+    }
+
+    private void unloadAllData() {
+        if (playerDataMap.isEmpty() && evictingData.isEmpty()) {
+            return;
         }
+
+        List<PlayerData> willSaveData = collectDirtyData();
+        willSaveData.addAll(evictingData.values());
+        evictingData.clear();
         playerDataMap.clear();
         if (willSaveData.isEmpty()) {
             return;
         }
 
-        DatabaseManager databaseManager = instance.getDatabaseManager();
-        databaseManager.savePoint(willSaveData);
+        writePlayerData(willSaveData, null, null);
     }
 
     public static final class PlayerData {
 
-        private static final Rankpoint instance = Rankpoint.getPlugin(Rankpoint.class);
-
+        private final PlayerDataManager manager;
         private final UUID uuid;
         private int point;
         private int group = -1;
-        private String displayGroupName;
+        private Rank rank;
         private int prettyPoint;
-        private String totalPoint;
-        private String needPoint;
-        private boolean isChanged = false;
+        // 플레이스홀더가 읽는 값입니다. 포인트가 바뀔 때마다 메인 스레드에서 새로 만들어 교체하므로
+        // 다른 스레드에서도 읽을 수 있습니다.
+        private volatile Display display;
+        private volatile Ranked position;
+        private volatile Ranked percentile;
+        private volatile long lastAccess = System.currentTimeMillis();
+        private long quitAt = 0;
+        // 데이터베이스에 아직 행이 없는 플레이어 (순위 분포에 포함되지 않음)
+        private boolean fresh;
+        // 마지막으로 확인한 데이터베이스의 포인트 (-1 이면 행이 없음)
+        private int storedPoint;
+        // 마지막으로 저장을 보낸 뒤 바뀐 포인트
+        private int unsavedDelta;
+        // 저장을 보냈지만 아직 결과를 받지 못한 변화량의 합 (먼저 끝난 저장의 값으로 맞출 때 더합니다)
+        private long inFlightDelta;
+        // 저널에 남긴 변화량의 합과 그중 저장이 확인된 양 (저널로 동기화해서 바꿉니다)
+        private long journaled;
+        private long acknowledged;
+        // 저장이 확인되지 않은 변경을 처음 남긴 저널 세그먼트 (없으면 -1)
+        private long journalSegment = -1;
 
-        private PlayerData(UUID uuid, int point) {
+        private PlayerData(PlayerDataManager manager, UUID uuid, Integer point) {
+            this.manager = manager;
             this.uuid = uuid;
-            this.point = point;
+            this.point = point == null ? 0 : point;
+            this.fresh = point == null;
+            this.storedPoint = point == null ? -1 : point;
             update();
         }
 
+        public UUID getUuid() {
+            return uuid;
+        }
+
         public int getPoint() {
             return point;
         }
@@ -146,8 +872,9 @@ public final class PlayerDataManager {
                 throw new IllegalArgumentException(
                     "point cannot be less than 0 (point: " + point + ")");
             }
+            int oldPoint = this.point;
             this.point = point;
-            isChanged = true;
+            onChange(oldPoint);
             update();
         }
 
@@ -156,10 +883,11 @@ public final class PlayerDataManager {
                 throw new IllegalArgumentException(
                     "point cannot be less than 0 (point: " + point + ")");
             }
+            int oldPoint = this.point;
             try {
                 this.point = Math.addExact(this.point, point);
             } catch (ArithmeticException ignored) { }
-            isChanged = true;
+            onChange(oldPoint);
             update();
         }
 
@@ -168,30 +896,63 @@ public final class PlayerDataManager {
                 throw new IllegalArgumentException(
                     "point cannot be less than 0 (point: " + (this.point - point) + ")");
             }
+            int oldPoint = this.point;
             this.point -= point;
-            isChanged = true;
+            onChange(oldPoint);
             update();
         }
 
+        private void applyDelta(long delta) {
+            int oldPoint = point;
+            point = (int) Math.max(0, Math.min(Integer.MAX_VALUE, point + delta));
+            if (point == oldPoint) {
+                return;
+            }
+            onChange(oldPoint);
+            update();
+        }
+
+        private void onChange(int oldPoint) {
+            manager.dirtyPlayers.add(uuid);
+            if (manager.bus != null) {
+                manager.unpublished.add(uuid);
+            }
+            unsavedDelta += point - oldPoint;
+            manager.journal(this, point - oldPoint, true);
+            onMoved(oldPoint);
+        }
+
+        // 저장된 값과 아직 저장되지 않은 변화량으로 포인트를 맞춥니다. 저장할 변경이 아니므로 dirty 로 표시하지 않습니다.
+        private void reconcile(int storedPoint) {
+            this.storedPoint = storedPoint;
+            int oldPoint = point;
+            long expected = (long) storedPoint + inFlightDelta + unsavedDelta;
+            point = (int) Math.max(0, Math.min(Integer.MAX_VALUE, expected));
+            if (point == oldPoint) {
+                return;
+            }
+            manager.journal(this, 0, false);
+            onMoved(oldPoint);
+            update();
+        }
+
+        private void onMoved(int oldPoint) {
+            manager.leaderboard.update(uuid, point);
+            manager.distribution.move(fresh ? -1 : oldPoint, point);
+            fresh = false;
+        }
+
         private void update() {
-            GroupConfig groupConfig = instance.getGroupConfig();
-            Message message = instance.getMessage();
+            GroupConfig groupConfig = manager.instance.getGroupConfig();
 
             int oldGroup = group;
-            group = groupConfig.findGroup(point);
-            displayGroupName = groupConfig.getGroupName(group);
-
-            prettyPoint = groupConfig.getPrretyPoint(point);
-            int tmp = groupConfig.getTotalPoint(group);
-            totalPoint = tmp == -1 ? message.RankMaxTotalPoint() : tmp + "";
-            tmp = groupConfig.getNeedPoint(group, point);
-            needPoint = tmp == -1 ? message.RankMaxNeedPoint() : tmp + "";
-
-            if (group != -1 && oldGroup != group) {
-                Player p = Bukkit.getPlayer(uuid);
-                if (p != null) {
-                    groupConfig.updatePlayerRank(p, this);
-                }
+            rank = groupConfig.findRank(point);
+            group = rank.getIndex();
+            prettyPoint = rank.getPrettyPoint(point);
+            display = new Display(rank, point, prettyPoint);
+
+            if (group != -1 && oldGroup != group && Bukkit.getPlayer(uuid) != null) {
+                manager.instance.getRankSynchronizer().request(uuid);
             }
         }
 
@@ -199,12 +960,50 @@ public final class PlayerDataManager {
             return prettyPoint;
         }
 
+        public String getPrettyPointString() {
+            return display.prettyPoint;
+        }
+
         public String getTotalPoint() {
-            return totalPoint;
+            return display.rank.getTotalPointString();
         }
 
         public String getNeedPoint() {
-            return needPoint;
+            return display.needPoint;
+        }
+
+        public int getPosition() {
+            return manager.distribution.getPosition(display.point);
+        }
+
+        public int getPercentile() {
+            return manager.distribution.getPercentile(display.point);
+        }
+
+        // 순위 문자열은 분포와 포인트가 그대로인 동안 재사용합니다. 분포의 버전을 먼저 읽으므로 그 사이 분포가
+        // 바뀌어도 오래된 값이 새 버전으로 남지 않습니다.
+        public String getPositionString() {
+            int version = manager.distribution.getVersion();
+            Display display = this.display;
+            Ranked cached = position;
+            if (cached == null || cached.version != version || cached.point != display.point) {
+                cached = new Ranked(version, display.point,
+                    manager.distribution.getPosition(display.point));
+                position = cached;
+            }
+            return cached.value;
+        }
+
+        public String getPercentileString() {
+            int version = manager.distribution.getVersion();
+            Display display = this.display;
+            Ranked cached = percentile;
+            if (cached == null || cached.version != version || cached.point != display.point) {
+                cached = new Ranked(version, display.point,
+                    manager.distribution.getPercentile(display.point));
+                percentile = cached;
+            }
+            return cached.value;
         }
 
         public int getGroupInt() {
@@ -212,7 +1011,109 @@ public final class PlayerDataManager {
         }
 
         public String getGroup() {
-            return displayGroupName;
+            return display.rank.getDisplayName();
+        }
+    }
+
+    // PlayerData 가 다른 스레드에 보여주는 값. 만든 뒤에는 바뀌지 않습니다.
+    private static final class Display {
+
+        private final Rank rank;
+        private final int point;
+        private final String prettyPoint;
+        private final String needPoint;
+
+        private Display(Rank rank, int point, int prettyPoint) {
+            this.rank = rank;
+            this.point = point;
+            this.prettyPoint = String.valueOf(prettyPoint);
+            this.needPoint = rank.isMax() ? rank.getMaxNeedPoint()
+                : String.valueOf(rank.getNeedPoint(point));
+        }
+    }
+
+    // 분포의 버전과 포인트로 구한 순위 문자열
+    private static final class Ranked {
+
+        private final int version;
+        private final int point;
+        private final String value;
+
+        private Ranked(int version, int point, int value) {
+            this.version = version;
+            this.point = point;
+            this.value = String.valueOf(value);
+        }
+    }
+
+    // 불러오는 중인 플레이어를 기다리는 작업
+    private static final class PendingLoad {
+
+        private final List<Consumer<PlayerData>> consumers = new ArrayList<>();
+        private final List<Runnable> failures = new ArrayList<>();
+        private final long requested = System.nanoTime();
+
+        private void add(Consumer<PlayerData> consumer, Runnable onFailure) {
+            consumers.add(consumer);
+            if (onFailure != null) {
+                failures.add(onFailure);
+            }
+        }
+    }
+
+    // 저장을 보낸 플레이어의 저널 위치. 저장이 확인되면 데이터베이스 스레드에서 acknowledge 를,
+    // 실패하면 메인 스레드에서 restore 를 호출합니다.
+    private final class JournalMark {
+
+        private final List<PlayerData> players;
+        private final long[] segments;
+        private final long[] journaled;
+
+        private JournalMark(List<PlayerData> players) {
+            this.players = players;
+            this.segments = new long[players.size()];
+            this.journaled = new long[players.size()];
+            for (int i = 0; i < segments.length; i++) {
+                PlayerData data = players.get(i);
+                segments[i] = data.journalSegment;
+                journaled[i] = data.journaled;
+                data.journalSegment = -1;
+            }
+        }
+
+        private void acknowledge() {
+            if (journal == null) {
+                return;
+            }
+            synchronized (journal) {
+                for (int i = 0; i < segments.length; i++) {
+                    PlayerData data = players.get(i);
+                    if (journaled[i] > data.acknowledged) {
+                        data.acknowledged = journaled[i];
+                        journal.appendAck(data.uuid, data.journaled, data.acknowledged);
+                    }
+                    if (segments[i] >= 0) {
+                        journal.release(segments[i]);
+                    }
+                }
+            }
+        }
+
+        // 보낸 뒤에 다시 바뀐 플레이어는 더 최근 세그먼트를 잡고 있으므로, 보낼 때의 세그먼트로 되돌립니다.
+        private void restore() {
+            if (journal == null) {
+                return;
+            }
+            for (int i = 0; i < segments.length; i++) {
+                if (segments[i] < 0) {
+                    continue;
+                }
+                PlayerData data = players.get(i);
+                if (data.journalSegment >= 0) {
+                    journal.release(data.journalSegment);
+                }
+                data.journalSegment = segments[i];
+            }
         }
     }
 
@@ -227,7 +1128,22 @@ public final class PlayerDataManager {
         @EventHandler
         public void onJoin(PlayerJoinEvent event) {
             PlayerDataManager playerDataManager = instance.getPlayerDataManager();
-            playerDataManager.loadPlayerData(event.getPlayer().getUniqueId());
+            UUID uuid = event.getPlayer().getUniqueId();
+            playerDataManager.nameIndex.record(uuid, event.getPlayer().getName());
+            playerDataManager.loadPlayerData(uuid);
+            PlayerData data = playerDataManager.getPlayerDataOrNull(uuid);
+            if (data != null) {
+                data.quitAt = 0;
+            }
+        }
+
+        @EventHandler
+        public void onQuit(PlayerQuitEvent event) {
+            PlayerDataManager playerDataManager = instance.getPlayerDataManager();
+            PlayerData data = playerDataManager.getPlayerDataOrNull(event.getPlayer().getUniqueId());
+            if (data != null) {
+                data.quitAt = System.currentTimeMillis();
+            }
         }
     }
 }
@@ -0,0 +1,160 @@
+package net.utory.rankpoint.data;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import net.utory.rankpoint.Rankpoint;
+import org.bukkit.Bukkit;
+
+// 포인트별 플레이어 수를 펜윅 트리로 관리해 순위와 백분위를 O(log n) 으로 구합니다.
+// 분포를 바꾸는 것은 메인 스레드뿐이고, 순위와 백분위는 플레이스홀더가 다른 스레드에서도 읽으므로 트리를 읽고
+// 쓰는 동안 이 객체를 잠급니다.
+public final class PointDistribution {
+
+    // 이 값 이상의 포인트는 트리 대신 TreeMap 에 보관합니다. (트리 크기 제한: 4MB)
+    private static final int MAX_CAPACITY = 1 << 20;
+
+    private final Rankpoint instance;
+    // tree[i] 는 포인트 (i - 1) 을 포함하는 구간의 플레이어 수입니다. (1 부터 시작)
+    private int[] tree = new int[1024 + 1];
+    private int treeTotal = 0;
+    private final TreeMap<Integer, Integer> overflow = new TreeMap<>();
+    private volatile int total = 0;
+    // 분포가 바뀔 때마다 증가합니다. 순위 문자열 캐시를 무효화하는데 사용합니다.
+    private volatile int version = 0;
+    private volatile boolean loaded = false;
+    // 불러오는 동안 생긴 변경은 불러온 뒤에 다시 적용합니다. {old, new} (old 가 -1 이면 새 플레이어)
+    private List<int[]> pending = new ArrayList<>();
+
+    PointDistribution(Rankpoint instance) {
+        this.instance = instance;
+    }
+
+    // 저장 대기 중인 변경을 먼저 데이터베이스에 보낸 뒤, 같은 쓰기 순서 안에서 포인트별 인원을 읽습니다.
+    // 불러오지 못하면 load-timeout 뒤에 다시 불러옵니다. 다시 불러온 인원에는 그 사이의 변경이 이미 저장되어
+    // 있으므로, 모아 둔 변경은 버립니다.
+    void load(PlayerDataManager playerDataManager) {
+        pending = new ArrayList<>();
+        playerDataManager.saveAllData();
+        DatabaseManager databaseManager = instance.getDatabaseManager();
+        databaseManager.loadPointCounts(counts -> {
+            if (instance.isEnabled()) {
+                Bukkit.getScheduler().runTask(instance, () -> {
+                    if (counts != null) {
+                        onLoaded(counts);
+                    } else if (instance.getPlayerDataManager() == playerDataManager) {
+                        Bukkit.getScheduler().runTaskLater(instance, () -> load(playerDataManager),
+                            playerDataManager.getLoadTimeout());
+                    }
+                });
+            }
+        });
+    }
+
+    private synchronized void onLoaded(Map<Integer, Integer> counts) {
+        for (Map.Entry<Integer, Integer> entry : counts.entrySet()) {
+            add(entry.getKey(), entry.getValue());
+        }
+        List<int[]> changes = pending;
+        pending = null;
+        loaded = true;
+        for (int[] change : changes) {
+            move(change[0], change[1]);
+        }
+    }
+
+    // old 가 -1 이면 데이터베이스에 없던 새 플레이어입니다.
+    synchronized void move(int oldPoint, int newPoint) {
+        if (!loaded && pending != null) {
+            pending.add(new int[]{oldPoint, newPoint});
+            return;
+        }
+        if (oldPoint == newPoint) {
+            return;
+        }
+        if (oldPoint >= 0) {
+            add(oldPoint, -1);
+        }
+        add(newPoint, 1);
+    }
+
+    private void add(int point, int count) {
+        total += count;
+        version++;
+        if (point >= MAX_CAPACITY) {
+            overflow.merge(point, count, (a, b) -> a + b == 0 ? null : a + b);
+            return;
+        }
+        while (point + 1 >= tree.length) {
+            grow();
+        }
+        treeTotal += count;
+        for (int i = point + 1; i < tree.length; i += i & -i) {
+            tree[i] += count;
+        }
+    }
+
+    // 2의 거듭제곱 크기의 펜윅 트리는 기존 칸을 그대로 두고 새 마지막 칸에 전체 합만 넣으면 됩니다.
+    private void grow() {
+        int size = tree.length - 1;
+        tree = Arrays.copyOf(tree, size * 2 + 1);
+        tree[size * 2] = treeTotal;
+    }
+
+    // point 이하인 플레이어 수 (point < MAX_CAPACITY)
+    private int countAtMost(int point) {
+        int sum = 0;
+        for (int i = Math.min(point + 1, tree.length - 1); i > 0; i -= i & -i) {
+            sum += tree[i];
+        }
+        return sum;
+    }
+
+    public synchronized int countAbove(int point) {
+        if (point >= MAX_CAPACITY) {
+            int sum = 0;
+            for (int count : overflow.tailMap(point, false).values()) {
+                sum += count;
+            }
+            return sum;
+        }
+        return total - countAtMost(point);
+    }
+
+    public synchronized int countBelow(int point) {
+        if (point <= 0) {
+            return 0;
+        }
+        if (point >= MAX_CAPACITY) {
+            int sum = treeTotal;
+            for (int count : overflow.headMap(point, false).values()) {
+                sum += count;
+            }
+            return sum;
+        }
+        return countAtMost(point - 1);
+    }
+
+    public int getPosition(int point) {
+        return countAbove(point) + 1;
+    }
+
+    // point 보다 적은 포인트를 가진 플레이어의 비율 (0 ~ 100)
+    public synchronized int getPercentile(int point) {
+        return total <= 0 ? 100 : (int) (countBelow(point) * 100L / total);
+    }
+
+    public int getTotal() {
+        return total;
+    }
+
+    public int getVersion() {
+        return version;
+    }
+
+    public boolean isLoaded() {
+        return loaded;
+    }
+}
@@ -0,0 +1,286 @@
+package net.utory.rankpoint.data;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.concurrent.atomic.LongAdder;
+
+// 저장 주기 사이의 포인트 변경을 메모리 맵 파일에 남겨, 서버가 갑자기 꺼져도 다음 시작 때 데이터베이스에 반영합니다.
+// 파일은 segmentSize 크기의 세그먼트로 나누어 앞에서부터 기록하며, 세그먼트에 기록된 변경이 모두 저장되면 지웁니다.
+// 한 플레이어의 기록에는 그 플레이어가 지금까지 바꾼 양 (journaled) 과 저장이 확인된 양 (acknowledged) 이 함께 있어
+// 마지막 기록만으로 아직 저장되지 않은 변화량을 알 수 있습니다. (write-mode: absolute 는 마지막 포인트를 사용)
+// 프로세스가 죽어도 운영체제가 페이지 캐시를 파일에 쓰므로 남지만, 운영체제가 멈추면 잃을 수 있습니다.
+// 메인 스레드와 데이터베이스 스레드에서 함께 사용하므로 모든 메서드는 이 객체로 동기화됩니다.
+final class PointJournal {
+
+    // 포인트를 바꾸거나 다시 맞춘 기록
+    private static final int POINT = 1;
+    // 저장이 확인된 기록 (포인트는 기록하지 않음)
+    private static final int ACK = 2;
+    // UUID (16) + type (4) + point (4) + journaled (8) + acknowledged (8) + checksum (4)
+    private static final int RECORD_SIZE = 44;
+    private static final String EXTENSION = ".journal";
+
+    private final File directory;
+    // 이번에 만든 세그먼트의 이름 앞부분. 다시 불러와 새 PlayerDataManager 를 만들면 달라집니다.
+    private final String epoch;
+    private final int segmentSize;
+    private final LongAdder records;
+    // 세그먼트 번호 -> 세그먼트 (오래된 순서)
+    private final TreeMap<Long, Segment> segments = new TreeMap<>();
+    private Segment active;
+    private long nextId = 0;
+    private boolean closed = false;
+
+    PointJournal(File directory, int segmentSize, LongAdder records) throws IOException {
+        this.directory = directory;
+        this.epoch = String.format("%013d", System.currentTimeMillis());
+        this.segmentSize = Math.max(1, segmentSize / RECORD_SIZE) * RECORD_SIZE;
+        this.records = records;
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Cannot create " + directory);
+        }
+        roll();
+    }
+
+    // 마지막 기록 (journaled, acknowledged) 은 바뀐 뒤의 값입니다.
+    synchronized void appendPoint(UUID uuid, int point, long journaled, long acknowledged) {
+        append(uuid, POINT, point, journaled, acknowledged);
+    }
+
+    synchronized void appendAck(UUID uuid, long journaled, long acknowledged) {
+        append(uuid, ACK, 0, journaled, acknowledged);
+    }
+
+    private void append(UUID uuid, int type, int point, long journaled, long acknowledged) {
+        if (closed) {
+            return;
+        }
+        if (active.offset + RECORD_SIZE > segmentSize) {
+            try {
+                roll();
+            } catch (IOException e) {
+                // 새 세그먼트를 만들지 못하면 이번 기록은 남기지 못하지만 정기 저장은 계속됩니다.
+                return;
+            }
+        }
+        MappedByteBuffer buffer = active.buffer;
+        int offset = active.offset;
+        long msb = uuid.getMostSignificantBits();
+        long lsb = uuid.getLeastSignificantBits();
+        buffer.putLong(offset, msb);
+        buffer.putLong(offset + 8, lsb);
+        buffer.putInt(offset + 16, type);
+        buffer.putInt(offset + 20, point);
+        buffer.putLong(offset + 24, journaled);
+        buffer.putLong(offset + 32, acknowledged);
+        // 체크섬을 마지막에 써서 쓰다 만 기록은 읽지 않습니다.
+        buffer.putInt(offset + 40, checksum(msb, lsb, type, point, journaled, acknowledged));
+        active.offset = offset + RECORD_SIZE;
+        records.increment();
+    }
+
+    // 아직 저장되지 않은 변경이 지금 세그먼트에 있음을 표시하고 세그먼트 번호를 반환합니다.
+    // 저장이 확인되면 같은 번호로 release 를 호출해야 세그먼트를 지울 수 있습니다.
+    synchronized long pin() {
+        if (closed) {
+            return -1;
+        }
+        active.pending++;
+        return active.id;
+    }
+
+    synchronized void release(long id) {
+        Segment segment = segments.get(id);
+        if (segment == null) {
+            return;
+        }
+        segment.pending--;
+        deleteSaved();
+    }
+
+    // 정기 저장을 보내기 전에 호출합니다. 그 전의 기록은 저장이 확인되면 이전 세그먼트와 함께 지울 수 있습니다.
+    synchronized void rollIfUsed() {
+        if (closed || active.offset == 0) {
+            return;
+        }
+        try {
+            roll();
+        } catch (IOException ignored) {
+            // 지금 세그먼트를 계속 사용합니다.
+        }
+    }
+
+    private void roll() throws IOException {
+        long id = nextId++;
+        File file = new File(directory, epoch + "-" + String.format("%06d", id) + EXTENSION);
+        MappedByteBuffer buffer;
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE,
+            StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            buffer = channel.map(MapMode.READ_WRITE, 0, segmentSize);
+        }
+        Segment segment = new Segment(id, file, buffer);
+        segments.put(id, segment);
+        active = segment;
+        deleteSaved();
+    }
+
+    // 앞에서부터 모든 변경이 저장된 세그먼트를 지웁니다. 사용 중인 세그먼트는 남깁니다.
+    private void deleteSaved() {
+        Iterator<Segment> iterator = segments.values().iterator();
+        while (iterator.hasNext()) {
+            Segment segment = iterator.next();
+            if (segment == active || segment.pending > 0) {
+                break;
+            }
+            segment.discard();
+            iterator.remove();
+        }
+    }
+
+    synchronized int getSegmentCount() {
+        return segments.size();
+    }
+
+    // 모든 변경이 저장되었으면 세그먼트를 모두 지우고, 아니면 다음 시작 때 다시 반영하도록 남깁니다.
+    synchronized void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        boolean saved = true;
+        for (Segment segment : segments.values()) {
+            if (segment.pending > 0) {
+                saved = false;
+                break;
+            }
+        }
+        if (saved) {
+            for (Segment segment : segments.values()) {
+                segment.discard();
+            }
+            segments.clear();
+        } else {
+            for (Segment segment : segments.values()) {
+                segment.buffer.force();
+            }
+        }
+    }
+
+    private static int checksum(long msb, long lsb, int type, int point, long journaled,
+        long acknowledged) {
+        long hash = 0x5A17C0DEL;
+        hash = hash * 31 + msb;
+        hash = hash * 31 + lsb;
+        hash = hash * 31 + type;
+        hash = hash * 31 + point;
+        hash = hash * 31 + journaled;
+        hash = hash * 31 + acknowledged;
+        int result = (int) (hash ^ (hash >>> 32));
+        // 비어 있는 (0 으로 채워진) 자리와 구분합니다.
+        return result == 0 ? 1 : result;
+    }
+
+    // 디렉터리에 남은 기록을 읽어 아직 저장되지 않은 값을 돌려줍니다. 세그먼트 이름 순서 (시간 순서) 로 읽으며,
+    // 플레이어마다 epoch 별 마지막 기록을 사용합니다. 기록이 없으면 두 Map 모두 비어 있습니다.
+    // points 에는 마지막 포인트가, deltas 에는 저장이 확인되지 않은 변화량의 합이 들어갑니다.
+    static void read(File directory, Map<UUID, Integer> points, Map<UUID, Integer> deltas)
+        throws IOException {
+        File[] files = directory.listFiles((dir, name) -> name.endsWith(EXTENSION));
+        if (files == null) {
+            return;
+        }
+        Arrays.sort(files);
+        String epoch = null;
+        Map<UUID, Long> unsaved = new HashMap<>();
+        Map<UUID, Long> epochUnsaved = new HashMap<>();
+        for (File file : files) {
+            String name = file.getName();
+            String fileEpoch = name.substring(0, Math.max(0, name.indexOf('-')));
+            if (!fileEpoch.equals(epoch)) {
+                epochUnsaved.forEach((uuid, delta) -> unsaved.merge(uuid, delta, Long::sum));
+                epochUnsaved.clear();
+                epoch = fileEpoch;
+            }
+            ByteBuffer buffer = ByteBuffer.wrap(Files.readAllBytes(file.toPath()));
+            for (int offset = 0; offset + RECORD_SIZE <= buffer.limit(); offset += RECORD_SIZE) {
+                long msb = buffer.getLong(offset);
+                long lsb = buffer.getLong(offset + 8);
+                int type = buffer.getInt(offset + 16);
+                int point = buffer.getInt(offset + 20);
+                long journaled = buffer.getLong(offset + 24);
+                long acknowledged = buffer.getLong(offset + 32);
+                if (buffer.getInt(offset + 40)
+                    != checksum(msb, lsb, type, point, journaled, acknowledged)) {
+                    // 여기서부터는 아직 쓰지 않았거나 쓰다 만 자리입니다.
+                    break;
+                }
+                UUID uuid = new UUID(msb, lsb);
+                if (type == POINT) {
+                    points.put(uuid, point);
+                }
+                epochUnsaved.put(uuid, journaled - acknowledged);
+            }
+        }
+        epochUnsaved.forEach((uuid, delta) -> unsaved.merge(uuid, delta, Long::sum));
+        for (Map.Entry<UUID, Long> entry : unsaved.entrySet()) {
+            long delta = entry.getValue();
+            if (delta != 0) {
+                deltas.put(entry.getKey(),
+                    (int) Math.max(-Integer.MAX_VALUE, Math.min(Integer.MAX_VALUE, delta)));
+            }
+        }
+    }
+
+    // 다시 반영한 뒤 호출합니다. 지우지 못한 파일은 비워 두어 다시 반영하지 않도록 합니다.
+    static void deleteAll(File directory) {
+        File[] files = directory.listFiles((dir, name) -> name.endsWith(EXTENSION));
+        if (files == null) {
+            return;
+        }
+        for (File file : files) {
+            if (!file.delete()) {
+                try {
+                    Files.write(file.toPath(), new byte[0], StandardOpenOption.TRUNCATE_EXISTING);
+                } catch (IOException ignored) {
+                }
+            }
+        }
+    }
+
+    private static final class Segment {
+
+        private final long id;
+        private final File file;
+        private final MappedByteBuffer buffer;
+        private int offset = 0;
+        // 이 세그먼트에 저장되지 않은 변경이 남아 있는 플레이어 수
+        private int pending = 0;
+
+        private Segment(long id, File file, MappedByteBuffer buffer) {
+            this.id = id;
+            this.file = file;
+            this.buffer = buffer;
+        }
+
+        // 첫 기록을 지워 다시 읽지 않도록 한 뒤 파일을 지웁니다. (매핑된 파일을 지울 수 없는 운영체제에서는
+        // 빈 세그먼트로 남았다가 다음 시작 때 지워집니다)
+        private void discard() {
+            for (int i = 0; i < RECORD_SIZE; i += 4) {
+                buffer.putInt(i, 0);
+            }
+            file.delete();
+        }
+    }
+}
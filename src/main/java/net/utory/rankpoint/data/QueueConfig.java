@@ -0,0 +1,49 @@
+package net.utory.rankpoint.data;
+
+import java.io.File;
+
+public final class QueueConfig {
+
+    // 파일에 남기지 않는 설정 (벤치마크)
+    public static final QueueConfig DEFAULT = new QueueConfig(1000, 4, 200, 10000, null);
+
+    private final int capacity;
+    private final int retryAttempts;
+    private final long retryDelay;
+    private final long retryMaxDelay;
+    private final File spillDirectory;
+
+    // 시간 단위는 모두 밀리초, spillDirectory 가 null 이면 저장하지 못한 묶음을 파일에 남기지 않습니다.
+    public QueueConfig(int capacity, int retryAttempts, long retryDelay, long retryMaxDelay,
+        File spillDirectory) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException(
+                "capacity cannot be less than 1 (capacity: " + capacity + ")");
+        }
+        this.capacity = capacity;
+        this.retryAttempts = Math.max(1, retryAttempts);
+        this.retryDelay = Math.max(1, retryDelay);
+        this.retryMaxDelay = Math.max(this.retryDelay, retryMaxDelay);
+        this.spillDirectory = spillDirectory;
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    public int getRetryAttempts() {
+        return retryAttempts;
+    }
+
+    public long getRetryDelay() {
+        return retryDelay;
+    }
+
+    public long getRetryMaxDelay() {
+        return retryMaxDelay;
+    }
+
+    public File getSpillDirectory() {
+        return spillDirectory;
+    }
+}
@@ -0,0 +1,245 @@
+package net.utory.rankpoint.data;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
+import java.util.zip.CheckedOutputStream;
+
+// 데이터베이스에 저장하지 못한 묶음을 파일 하나씩 남겨 두었다가, 데이터베이스가 돌아오면 남긴 순서대로 저장합니다.
+// 파일은 임시 파일에 쓰고 디스크에 기록한 뒤 이름을 바꾸므로, 쓰다 만 묶음은 읽지 않습니다. (그 묶음은 저장에
+// 실패한 것으로 처리되어 저널에 남습니다) 남은 묶음은 메모리에도 보관하여, 불러온 포인트에 겹쳐 최신 값을 돌려줍니다.
+// 쓰기 스레드와 읽기 스레드에서 함께 사용하므로 모든 메서드는 이 객체로 동기화됩니다.
+final class SpillQueue {
+
+    static final int SAVE = 1;
+    static final int ADD = 2;
+    private static final int MAGIC = 0x52505350; // "RPSP"
+    private static final String EXTENSION = ".spill";
+    // 사용 중인 SpillQueue 의 이름 앞부분. 다시 불러오는 동안 이전 DatabaseManager 의 파일을 가져오지 않습니다.
+    private static final Set<String> LIVE = new HashSet<>();
+    private static long lastEpoch = 0;
+
+    private final File directory;
+    private final String epoch;
+    private final Deque<Batch> batches = new ArrayDeque<>();
+    private long nextId = 0;
+    private long rows = 0;
+
+    // 사용 중이 아닌 이전 파일 (이전 실행에서 저장하지 못한 묶음) 을 먼저 저장하도록 가져옵니다.
+    // 읽을 수 없는 파일은 .broken 으로 이름을 바꾸어 남깁니다.
+    SpillQueue(File directory) throws IOException {
+        this.directory = directory;
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Cannot create " + directory);
+        }
+        synchronized (LIVE) {
+            lastEpoch = Math.max(lastEpoch + 1, System.currentTimeMillis());
+            this.epoch = String.format("%013d", lastEpoch);
+            File[] files = directory.listFiles((dir, name) -> !LIVE.contains(epochOf(name)));
+            LIVE.add(epoch);
+            if (files == null) {
+                return;
+            }
+            // 이름의 epoch, 번호가 0 으로 채워져 있으므로 이름 순서가 남긴 순서입니다.
+            Arrays.sort(files);
+            for (File file : files) {
+                if (file.getName().endsWith(EXTENSION + ".tmp")) {
+                    // 쓰다 만 묶음
+                    file.delete();
+                    continue;
+                }
+                if (!file.getName().endsWith(EXTENSION)) {
+                    continue;
+                }
+                try {
+                    Batch batch = read(file);
+                    batches.add(batch);
+                    rows += batch.rows.size();
+                } catch (IOException e) {
+                    file.renameTo(new File(directory, file.getName() + ".broken"));
+                }
+            }
+        }
+    }
+
+    synchronized boolean isEmpty() {
+        return batches.isEmpty();
+    }
+
+    synchronized int size() {
+        return batches.size();
+    }
+
+    synchronized long getRows() {
+        return rows;
+    }
+
+    // 묶음을 파일에 남깁니다. 반환된 뒤에는 디스크에 기록되어 있습니다.
+    // id 는 변화량 묶음을 다시 보낼 때 두 번 더하지 않도록 저장소에 함께 보내는 묶음 번호입니다.
+    synchronized void append(int type, UUID id, Map<UUID, Integer> points) throws IOException {
+        File file = new File(directory,
+            epoch + "-" + String.format("%010d", nextId++) + EXTENSION);
+        File temp = new File(directory, file.getName() + ".tmp");
+        CRC32 crc = new CRC32();
+        try (FileOutputStream fileOut = new FileOutputStream(temp);
+            DataOutputStream out = new DataOutputStream(
+                new CheckedOutputStream(new BufferedOutputStream(fileOut), crc))) {
+            out.writeInt(MAGIC);
+            out.writeInt(type);
+            out.writeLong(id.getMostSignificantBits());
+            out.writeLong(id.getLeastSignificantBits());
+            out.writeInt(points.size());
+            for (Map.Entry<UUID, Integer> entry : points.entrySet()) {
+                out.writeLong(entry.getKey().getMostSignificantBits());
+                out.writeLong(entry.getKey().getLeastSignificantBits());
+                out.writeInt(entry.getValue());
+            }
+            out.flush();
+            new DataOutputStream(fileOut).writeInt((int) crc.getValue());
+            fileOut.getFD().sync();
+        } catch (IOException e) {
+            temp.delete();
+            throw e;
+        }
+        Files.move(temp.toPath(), file.toPath(), StandardCopyOption.ATOMIC_MOVE);
+        batches.add(new Batch(file, type, id, new LinkedHashMap<>(points)));
+        rows += points.size();
+    }
+
+    // 가장 오래된 묶음, 없으면 null
+    synchronized Batch peek() {
+        return batches.peekFirst();
+    }
+
+    // 저장을 마친 가장 오래된 묶음을 지웁니다.
+    synchronized void remove(Batch batch) {
+        if (batches.peekFirst() != batch) {
+            return;
+        }
+        batches.removeFirst();
+        rows -= batch.rows.size();
+        batch.file.delete();
+    }
+
+    // 데이터베이스에서 읽은 포인트 (행이 없으면 null) 에 아직 저장하지 못한 묶음을 남긴 순서대로 겹칩니다.
+    synchronized Integer adjust(UUID uuid, Integer stored) {
+        Integer point = stored;
+        for (Batch batch : batches) {
+            Integer value = batch.rows.get(uuid);
+            if (value == null) {
+                continue;
+            }
+            if (batch.type == SAVE) {
+                point = value;
+            } else {
+                // 새 행은 0 에서 시작하며, 결과는 0 과 Integer.MAX_VALUE 사이로 제한됩니다.
+                long added = (point == null ? 0L : point) + value;
+                point = (int) Math.max(0, Math.min(Integer.MAX_VALUE, added));
+            }
+        }
+        return point;
+    }
+
+    // 남은 묶음이 없으면 stored 를 그대로, 있으면 겹친 새 Map 을 반환합니다.
+    synchronized Map<UUID, Integer> adjust(Map<UUID, Integer> stored, Collection<UUID> uuids) {
+        if (batches.isEmpty()) {
+            return stored;
+        }
+        Map<UUID, Integer> adjusted = new HashMap<>(stored);
+        for (UUID uuid : uuids) {
+            Integer point = adjust(uuid, stored.get(uuid));
+            if (point != null) {
+                adjusted.put(uuid, point);
+            }
+        }
+        return adjusted;
+    }
+
+    // 남은 파일은 다음 시작 때 (또는 다음 SpillQueue 가) 가져갑니다.
+    void close() {
+        synchronized (LIVE) {
+            LIVE.remove(epoch);
+        }
+    }
+
+    private static String epochOf(String name) {
+        int dash = name.indexOf('-');
+        return dash < 0 ? name : name.substring(0, dash);
+    }
+
+    private static Batch read(File file) throws IOException {
+        CRC32 crc = new CRC32();
+        try (FileInputStream fileIn = new FileInputStream(file);
+            BufferedInputStream buffered = new BufferedInputStream(fileIn);
+            DataInputStream in = new DataInputStream(new CheckedInputStream(buffered, crc))) {
+            if (in.readInt() != MAGIC) {
+                throw new IOException(file + " is not a Rankpoint spill file.");
+            }
+            int type = in.readInt();
+            UUID id = new UUID(in.readLong(), in.readLong());
+            int count = in.readInt();
+            // UUID (16) + point (4)
+            if ((type != SAVE && type != ADD) || count < 0 || count > file.length() / 20) {
+                throw new IOException(file + " is broken.");
+            }
+            Map<UUID, Integer> points = new LinkedHashMap<>(count * 4 / 3 + 1);
+            for (int i = 0; i < count; i++) {
+                points.put(new UUID(in.readLong(), in.readLong()), in.readInt());
+            }
+            int expected = (int) crc.getValue();
+            if (new DataInputStream(buffered).readInt() != expected) {
+                throw new IOException(file + " is broken.");
+            }
+            return new Batch(file, type, id, points);
+        } catch (EOFException e) {
+            throw new IOException(file + " is broken.", e);
+        }
+    }
+
+    static final class Batch {
+
+        private final File file;
+        private final int type;
+        private final UUID id;
+        private final Map<UUID, Integer> rows;
+
+        private Batch(File file, int type, UUID id, Map<UUID, Integer> rows) {
+            this.file = file;
+            this.type = type;
+            this.id = id;
+            this.rows = rows;
+        }
+
+        int getType() {
+            return type;
+        }
+
+        UUID getId() {
+            return id;
+        }
+
+        Map<UUID, Integer> getRows() {
+            return rows;
+        }
+    }
+}
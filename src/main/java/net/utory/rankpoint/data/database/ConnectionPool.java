@@ -0,0 +1,134 @@
+package net.utory.rankpoint.data.database;
+
+import java.sql.SQLException;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public final class ConnectionPool {
+
+    // 이 시간보다 짧게 쉰 연결은 검증하지 않습니다. (매번 ping 을 보내지 않기 위함)
+    private static final long VALIDATION_BYPASS_MILLIS = 1000;
+
+    private final Database database;
+    private final PoolConfig config;
+    private final LinkedBlockingDeque<PooledConnection> idle = new LinkedBlockingDeque<>();
+    private final AtomicInteger size = new AtomicInteger();
+    private volatile boolean closed = false;
+
+    public ConnectionPool(Database database, PoolConfig config) throws SQLException {
+        this.database = database;
+        this.config = config;
+        for (int i = 0; i < config.getMinimumIdle(); i++) {
+            size.incrementAndGet();
+            try {
+                idle.addLast(new PooledConnection(database.getConnection()));
+            } catch (SQLException e) {
+                size.decrementAndGet();
+                close();
+                throw e;
+            }
+        }
+    }
+
+    public PooledConnection borrow() throws SQLException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(config.getConnectionTimeout());
+        while (true) {
+            if (closed) {
+                throw new SQLException("Connection pool is closed.");
+            }
+            PooledConnection connection = idle.pollFirst();
+            if (connection == null) {
+                if (reserve()) {
+                    try {
+                        return new PooledConnection(database.getConnection());
+                    } catch (SQLException e) {
+                        size.decrementAndGet();
+                        throw e;
+                    }
+                }
+                long remaining = deadline - System.nanoTime();
+                try {
+                    connection = remaining > 0 ? idle.pollFirst(remaining, TimeUnit.NANOSECONDS) : null;
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new SQLException("Interrupted while waiting for a connection.", e);
+                }
+                if (connection == null) {
+                    throw new SQLException("Timed out waiting for a connection. (pool size: "
+                        + size.get() + ")");
+                }
+            }
+            if (System.currentTimeMillis() - connection.getLastUsed() < VALIDATION_BYPASS_MILLIS
+                || connection.isValid(config.getValidationTimeout())) {
+                return connection;
+            }
+            discard(connection);
+        }
+    }
+
+    public void release(PooledConnection connection) {
+        if (closed) {
+            discard(connection);
+            return;
+        }
+        connection.touch();
+        // 최근에 사용한 연결을 앞에 두어 뒤쪽의 오래 쉰 연결이 정리되도록 합니다.
+        idle.offerFirst(connection);
+        evictIdle();
+    }
+
+    // 오류가 발생한 연결은 풀에 돌려놓지 않고 닫습니다.
+    public void invalidate(PooledConnection connection) {
+        discard(connection);
+    }
+
+    public int getSize() {
+        return size.get();
+    }
+
+    public int getIdleCount() {
+        return idle.size();
+    }
+
+    public void close() {
+        closed = true;
+        PooledConnection connection;
+        while ((connection = idle.pollFirst()) != null) {
+            discard(connection);
+        }
+    }
+
+    private boolean reserve() {
+        while (true) {
+            int current = size.get();
+            if (current >= config.getMaximumSize()) {
+                return false;
+            }
+            if (size.compareAndSet(current, current + 1)) {
+                return true;
+            }
+        }
+    }
+
+    private void evictIdle() {
+        if (config.getIdleTimeout() <= 0) {
+            return;
+        }
+        long cutoff = System.currentTimeMillis() - TimeUnit.SECONDS.toMillis(config.getIdleTimeout());
+        while (size.get() > config.getMinimumIdle()) {
+            PooledConnection oldest = idle.peekLast();
+            if (oldest == null || oldest.getLastUsed() > cutoff) {
+                return;
+            }
+            if (idle.removeLastOccurrence(oldest)) {
+                discard(oldest);
+            }
+        }
+    }
+
+    private void discard(PooledConnection connection) {
+        size.decrementAndGet();
+        connection.close();
+    }
+}
@@ -1,13 +1,38 @@
 package net.utory.rankpoint.data.database;
 
 import java.sql.Connection;
-import java.sql.PreparedStatement;
 import java.sql.SQLException;
+import java.util.List;
 
 public interface Database {
     Connection getConnection() throws SQLException;
+    // 이름 테이블을 만듭니다. 포인트 테이블은 스키마 버전에 따라 JdbcStorage 가 createPointTable 로 만듭니다.
     void initTable(Connection conn) throws SQLException;
-    PreparedStatement getSelectStatement(Connection conn) throws SQLException;
-    PreparedStatement getInsertStatement(Connection conn) throws SQLException;
+    // table 과 (Point, UUID) 인덱스를 만듭니다. 이미 있으면 형식을 바꾸지 않습니다.
+    void createPointTable(Connection conn, String table, UuidFormat format) throws SQLException;
+    // 다 옮긴 converted 테이블을 포인트 테이블로 바꾸고 이전 테이블을 지우는 문장들
+    List<String> getSwapQueries(String converted);
+    // 여러 서버가 같은 테이블을 쓸 때 한 서버만 형식을 바꾸도록 name 을 잠급니다. 잠금은 conn 에 묶이며,
+    // 다른 서버가 잡고 있으면 기다리지 않고 false 를 반환합니다. (한 서버만 쓰는 저장소는 항상 true)
+    boolean tryLock(Connection conn, String name) throws SQLException;
+    void unlock(Connection conn, String name) throws SQLException;
+    // 스키마 테이블의 (Name, Value) 를 모두 읽는 문장. 트랜잭션이 끝날 때까지 다른 서버가 값을 바꾸지 못하게 합니다.
+    String getSchemaReadQuery(String schemaTable);
+    String getSelectQuery(String table);
+    // rows 행의 (UUID, 포인트) 를 그대로 저장하는 문장
+    String getInsertQuery(String table, int rows);
+    // rows 행의 (UUID, 0 이상의 변화량) 을 기존 포인트에 더하는 문장
+    String getAddQuery(String table, int rows);
+    // 한 행의 (UUID, 새 행의 포인트, 변화량) 을 더하는 문장 (음수 변화량)
+    String getAddQuery(String table);
+    // rows 행의 (UUID, 포인트) 중 없는 행만 넣는 문장 (형식을 바꾸며 옮길 때)
+    String getInsertMissingQuery(String table, int rows);
+    String getInsertNameQuery();
     String getTableName();
+    String getNameTableName();
+    // 포인트 테이블에 사용할 UUID 형식 (설정 값)
+    UuidFormat getUuidFormat();
+    PoolConfig getPoolConfig();
+    // 한 문장에 넣을 수 있는 최대 매개변수 수
+    int getMaxParameters();
 }
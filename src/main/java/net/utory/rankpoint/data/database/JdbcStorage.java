@@ -0,0 +1,774 @@
+package net.utory.rankpoint.data.database;
+
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.AbstractMap.SimpleImmutableEntry;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.logging.Logger;
+
+// Database (Sqlite, Mysql) 에 JDBC 로 저장합니다. 작업마다 풀에서 연결을 빌리며, 실패한 연결은 버립니다.
+// 포인트 테이블의 UUID 형식은 <테이블>_Schema 의 버전으로 기록하며, 설정된 형식과 다르면 서버를 켠 채로 바꿉니다.
+// 바꾸는 동안에는 새 형식의 <테이블>_Convert 에도 함께 쓰고 (읽기는 이전 테이블), 별도의 스레드가 이전 테이블을
+// UUID 순서로 convertChunkSize 행씩 없는 행만 옮깁니다. 다 옮기면 쓰기를 잠시 막고 테이블을 바꿉니다.
+// 여러 서버가 같은 테이블을 쓰면 형식은 잠금 (MySQL GET_LOCK) 을 얻은 한 서버만 바꾸며, 다른 서버도 바꾸는 동안에는
+// 새 테이블에 함께 씁니다. 쓰기 전마다 스키마 버전을 (실제 열 형식은 주기적으로) 확인해 이 서버가 쓰는 형식과
+// 다르면 쓰지 않습니다. 다른 서버가 이 서버의 설정대로 바꿨으면 그 형식으로 씁니다.
+// 이름 테이블은 UUID 로 찾는 일이 적으므로 CHAR(36) 을 그대로 사용합니다.
+// 변화량 묶음은 <테이블>_Batch 에 묶음 번호를 같은 트랜잭션으로 기록하여, 다시 보내도 한 번만 더합니다.
+public final class JdbcStorage implements Storage {
+
+    // IN 절에 들어가는 UUID 수. 마지막 묶음은 가장 가까운 크기로 채워 PreparedStatement 를 재사용합니다.
+    private static final int[] BULK_LOAD_SIZES = {1, 10, 50, 100, 500};
+    private static final int TOP_PAGE_SIZE = 500;
+    // 옮기는 묶음 사이에 쉬는 시간 (서버의 쓰기가 밀리지 않도록)
+    private static final long CONVERT_PAUSE_MILLIS = 50;
+    private static final long CONVERT_REPORT_INTERVAL = TimeUnit.SECONDS.toNanos(10);
+    // 적용한 묶음 번호를 보관하는 시간. 파일에 남은 묶음은 그 안에 다시 보낸다고 봅니다.
+    private static final long BATCH_RETENTION = TimeUnit.DAYS.toMillis(7);
+    private static final long BATCH_PRUNE_INTERVAL = TimeUnit.HOURS.toMillis(1);
+    // 쓰기 전에 실제 열 형식을 다시 확인하는 간격 (버전은 쓰기마다 확인합니다)
+    private static final long FORMAT_CHECK_INTERVAL = TimeUnit.MINUTES.toMillis(1);
+
+    private final Database database;
+    private final ConnectionPool pool;
+    private final int writeChunkSize;
+    private final int convertChunkSize;
+    private final Logger logger;
+    private final String schemaTable;
+    private final String batchTable;
+    private final String convertTable;
+    // 쓰기 스레드에서만 사용합니다.
+    private long lastBatchPrune = 0;
+    private long lastFormatCheck = 0;
+    // 작업은 읽기 잠금을, 테이블을 바꿀 때는 쓰기 잠금을 얻습니다.
+    private final ReadWriteLock tableLock = new ReentrantReadWriteLock();
+    // 쓰기 스레드가 다른 서버의 변환을 따라 바꿀 수 있습니다.
+    private volatile PointTable points;
+    // 형식을 바꾸는 중이면 새 형식의 테이블, 아니면 null
+    private volatile PointTable converting;
+    // 형식 변환 잠금을 잡은 연결 (이 서버가 바꾸는 동안만, 풀과 별도)
+    private Connection convertLock;
+    private Thread converter;
+    private volatile boolean closed = false;
+
+    // writeChunkSize: 한 INSERT 문장에 넣을 최대 행 수, convertChunkSize: 형식을 바꿀 때 한 번에 옮길 행 수
+    public JdbcStorage(Database database, int writeChunkSize, int convertChunkSize, Logger logger)
+        throws SQLException {
+        this.database = database;
+        this.writeChunkSize = writeChunkSize;
+        this.convertChunkSize = Math.max(1, convertChunkSize);
+        this.logger = logger;
+        this.schemaTable = database.getTableName() + "_Schema";
+        this.batchTable = database.getTableName() + "_Batch";
+        this.convertTable = database.getTableName() + "_Convert";
+        this.pool = new ConnectionPool(database, database.getPoolConfig());
+        PooledConnection connection = pool.borrow();
+        try {
+            database.initTable(connection.getConnection());
+            initPointTable(connection.getConnection());
+        } catch (SQLException e) {
+            pool.invalidate(connection);
+            unlockConvert();
+            pool.close();
+            throw e;
+        }
+        pool.release(connection);
+        if (converting != null && convertLock != null) {
+            converter = new Thread(this::convert, "Rankpoint-DB-Convert");
+            converter.start();
+        } else {
+            unlockConvert();
+        }
+    }
+
+    // 버전이 없으면 이 기능이 생기기 전의 CHAR(36) 테이블이거나 새로 만드는 테이블입니다.
+    private void initPointTable(Connection conn) throws SQLException {
+        try (Statement stmt = conn.createStatement()) {
+            stmt.execute("CREATE TABLE IF NOT EXISTS " + schemaTable
+                + " (Name VARCHAR(32) NOT NULL PRIMARY KEY, Value VARCHAR(64) NOT NULL)");
+            stmt.execute("CREATE TABLE IF NOT EXISTS " + batchTable
+                + " (BatchId CHAR(36) NOT NULL PRIMARY KEY, Applied BIGINT NOT NULL)");
+        }
+        String table = database.getTableName();
+        UuidFormat target = database.getUuidFormat();
+        String version = readSchema(conn, "version");
+        boolean exists = tableExists(conn, table);
+        UuidFormat actual = exists ? columnFormat(conn, table) : null;
+        // 잠금을 얻지 못하면 다른 서버가 바꾸는 중이므로, 기록을 고치거나 변환 테이블을 지우지 않습니다.
+        boolean locked = lockConvert();
+        UuidFormat current;
+        if (version != null) {
+            UuidFormat marked = UuidFormat.fromVersion(Integer.parseInt(version));
+            current = actual != null ? actual : marked;
+            if (current != marked && locked) {
+                // MySQL 은 RENAME, DROP 이 바로 커밋되므로, 버전을 기록한 뒤 테이블을 바꾸기 전에 멈출 수 있습니다.
+                // 기록보다 실제 열 형식을 믿고 버전을 되돌립니다. (_Old 는 Mysql 의 이전 테이블)
+                logger.warning(table + " 테이블의 UUID 형식이 기록 (" + marked + ") 과 달라 " + actual
+                    + " (으)로 고칩니다.");
+                writeSchema(conn, "version", String.valueOf(current.getVersion()));
+                writeSchema(conn, "convert-after", null);
+                try (Statement stmt = conn.createStatement()) {
+                    stmt.execute("DROP TABLE IF EXISTS " + table + "_Old");
+                }
+            }
+        } else {
+            current = actual != null ? actual : exists ? UuidFormat.TEXT : target;
+            writeSchema(conn, "version", String.valueOf(current.getVersion()));
+        }
+        database.createPointTable(conn, table, current);
+        points = new PointTable(table, current);
+        boolean pending = readSchema(conn, "convert-after") != null;
+        if (current != target && locked) {
+            // 다른 서버가 새 테이블에도 쓰도록, 옮기기 전에 바꾸는 중임을 기록합니다.
+            database.createPointTable(conn, convertTable, target);
+            converting = new PointTable(convertTable, target);
+            if (!pending) {
+                writeSchema(conn, "convert-after", "");
+            }
+            logger.info(table + " 테이블의 UUID 형식을 " + current + " 에서 " + target
+                + " (으)로 바꿉니다. 바꾸는 동안에도 서버를 사용할 수 있습니다.");
+        } else if (current != target) {
+            logger.info(table + " 테이블의 UUID 형식을 다른 서버가 바꾸는 중입니다."
+                + " 다 바꾸면 " + target + " 형식으로 씁니다.");
+        } else if (pending && locked) {
+            // 바꾸던 중에 설정을 되돌렸습니다. 기록을 먼저 지워 다른 서버가 새 테이블에 쓰지 않도록 합니다.
+            writeSchema(conn, "convert-after", null);
+            try (Statement stmt = conn.createStatement()) {
+                stmt.execute("DROP TABLE IF EXISTS " + convertTable);
+            }
+        } else if (pending) {
+            logger.warning(table + " 테이블의 UUID 형식을 다른 서버가 " + current + " 이 아닌 형식으로"
+                + " 바꾸는 중입니다. 서버마다 uuid-format 설정이 같은지 확인하세요.");
+        }
+    }
+
+    // 형식 변환 잠금을 얻으면 잠금을 잡은 연결을 convertLock 에 보관합니다.
+    private boolean lockConvert() throws SQLException {
+        Connection conn = database.getConnection();
+        boolean locked = false;
+        try {
+            locked = database.tryLock(conn, schemaTable);
+        } finally {
+            if (locked) {
+                convertLock = conn;
+            } else {
+                conn.close();
+            }
+        }
+        return locked;
+    }
+
+    private void unlockConvert() {
+        Connection conn = convertLock;
+        if (conn == null) {
+            return;
+        }
+        convertLock = null;
+        try {
+            database.unlock(conn, schemaTable);
+        } catch (SQLException ignored) {
+            // 연결을 닫으면 풀립니다.
+        }
+        try {
+            conn.close();
+        } catch (SQLException ignored) {
+        }
+    }
+
+    // 다른 서버가 테이블을 바꾸지 않았는지 쓰기 트랜잭션 안에서 확인합니다. 버전은 트랜잭션이 끝날 때까지 잠기므로,
+    // 확인한 뒤 쓰는 사이에 다른 서버가 테이블을 바꾸지 못합니다. 다른 서버가 바꾸는 중이면 새 테이블에도 씁니다.
+    private void checkFormat(PooledConnection connection) throws SQLException {
+        Map<String, String> schema = new HashMap<>();
+        try (Statement stmt = connection.getConnection().createStatement();
+            ResultSet rs = stmt.executeQuery(database.getSchemaReadQuery(schemaTable))) {
+            while (rs.next()) {
+                schema.put(rs.getString(1), rs.getString(2));
+            }
+        }
+        Connection conn = connection.getConnection();
+        String version = schema.get("version");
+        UuidFormat marked = version == null ? null
+            : UuidFormat.fromVersion(Integer.parseInt(version));
+        long now = System.currentTimeMillis();
+        if (marked != points.format || now - lastFormatCheck >= FORMAT_CHECK_INTERVAL) {
+            UuidFormat actual = columnFormat(conn, points.table);
+            if (marked != points.format && marked == actual
+                && marked == database.getUuidFormat()) {
+                logger.info(points.table + " 테이블의 UUID 형식을 다른 서버가 " + marked
+                    + " (으)로 바꿨습니다.");
+                points = new PointTable(points.table, marked);
+                converting = null;
+            } else if (marked != points.format || actual != null && actual != points.format) {
+                throw new SQLException(points.table + " 테이블의 UUID 형식 (기록: " + marked
+                    + ", 실제: " + actual + ") 이 이 서버가 쓰는 형식 (" + points.format
+                    + ") 과 달라 저장하지 않습니다. 서버마다 uuid-format 설정이 같은지 확인하세요.");
+            }
+            lastFormatCheck = now;
+        }
+        if (!schema.containsKey("convert-after")) {
+            converting = null;
+        } else if (converting == null) {
+            UuidFormat format = columnFormat(conn, convertTable);
+            if (format != null && format != points.format) {
+                converting = new PointTable(convertTable, format);
+            }
+        }
+    }
+
+    private static boolean tableExists(Connection conn, String table) throws SQLException {
+        DatabaseMetaData meta = conn.getMetaData();
+        for (String name : new String[]{table, table.toUpperCase(Locale.ROOT),
+            table.toLowerCase(Locale.ROOT)}) {
+            try (ResultSet rs = meta.getTables(conn.getCatalog(), null, name, null)) {
+                if (rs.next()) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    // 포인트 테이블의 UUID 열 형식. 알 수 없으면 null
+    private static UuidFormat columnFormat(Connection conn, String table) throws SQLException {
+        DatabaseMetaData meta = conn.getMetaData();
+        for (String name : new String[]{table, table.toUpperCase(Locale.ROOT),
+            table.toLowerCase(Locale.ROOT)}) {
+            try (ResultSet rs = meta.getColumns(conn.getCatalog(), null, name, null)) {
+                while (rs.next()) {
+                    if (!"UUID".equalsIgnoreCase(rs.getString("COLUMN_NAME"))) {
+                        continue;
+                    }
+                    String type = rs.getString("TYPE_NAME").toUpperCase(Locale.ROOT);
+                    if (type.contains("BINARY") || type.contains("BLOB")) {
+                        return UuidFormat.BINARY;
+                    }
+                    if (type.contains("CHAR") || type.contains("TEXT")) {
+                        return UuidFormat.TEXT;
+                    }
+                    return null;
+                }
+            }
+        }
+        return null;
+    }
+
+    private String readSchema(Connection conn, String name) throws SQLException {
+        try (PreparedStatement select = conn
+            .prepareStatement("SELECT Value FROM " + schemaTable + " WHERE Name = ?")) {
+            select.setString(1, name);
+            try (ResultSet rs = select.executeQuery()) {
+                return rs.next() ? rs.getString(1) : null;
+            }
+        }
+    }
+
+    // value 가 null 이면 지웁니다.
+    private void writeSchema(Connection conn, String name, String value) throws SQLException {
+        try (PreparedStatement delete = conn
+            .prepareStatement("DELETE FROM " + schemaTable + " WHERE Name = ?")) {
+            delete.setString(1, name);
+            delete.executeUpdate();
+        }
+        if (value == null) {
+            return;
+        }
+        try (PreparedStatement insert = conn
+            .prepareStatement("INSERT INTO " + schemaTable + " (Name, Value) VALUES (?, ?)")) {
+            insert.setString(1, name);
+            insert.setString(2, value);
+            insert.executeUpdate();
+        }
+    }
+
+    @Override
+    public int getReaderThreads() {
+        return database.getPoolConfig().getMaximumSize() - 1;
+    }
+
+    @Override
+    public Integer selectPoint(UUID uuid) throws SQLException {
+        return withConnection(connection -> {
+            PreparedStatement selectPoint = connection
+                .prepare(database.getSelectQuery(points.table));
+            points.format.set(selectPoint, 1, uuid);
+            try (ResultSet rs = selectPoint.executeQuery()) {
+                return rs.next() ? rs.getInt(1) : null;
+            }
+        });
+    }
+
+    // IN 절로 묶어 불러옵니다.
+    @Override
+    public Map<UUID, Integer> selectPoints(List<UUID> uuids) throws SQLException {
+        return withConnection(connection -> selectPoints(connection, uuids));
+    }
+
+    private Map<UUID, Integer> selectPoints(PooledConnection connection, List<UUID> uuids)
+        throws SQLException {
+        Map<UUID, Integer> map = new HashMap<>(uuids.size() * 4 / 3 + 1);
+        UuidFormat format = points.format;
+        selectIn(connection, "SELECT UUID, Point FROM " + points.table, format, uuids,
+            rs -> map.put(format.get(rs, 1), rs.getInt(2)));
+        return map;
+    }
+
+    private static void selectIn(PooledConnection connection, String select, UuidFormat format,
+        List<UUID> list, RowReader reader) throws SQLException {
+        int maxChunk = BULK_LOAD_SIZES[BULK_LOAD_SIZES.length - 1];
+        for (int from = 0; from < list.size(); from += maxChunk) {
+            List<UUID> chunk = list.subList(from, Math.min(from + maxChunk, list.size()));
+            int size = bulkLoadSize(chunk.size());
+            PreparedStatement statement = connection.prepare(selectInQuery(select, size));
+            for (int i = 0; i < size; i++) {
+                // 남는 자리는 마지막 UUID 로 채웁니다.
+                format.set(statement, i + 1, chunk.get(Math.min(i, chunk.size() - 1)));
+            }
+            try (ResultSet rs = statement.executeQuery()) {
+                while (rs.next()) {
+                    reader.read(rs);
+                }
+            }
+        }
+    }
+
+    private static String selectInQuery(String select, int size) {
+        StringBuilder sb = new StringBuilder(select).append(" WHERE UUID IN (");
+        for (int i = 0; i < size; i++) {
+            sb.append(i == 0 ? "?" : ", ?");
+        }
+        return sb.append(')').toString();
+    }
+
+    private static int bulkLoadSize(int count) {
+        for (int size : BULK_LOAD_SIZES) {
+            if (count <= size) {
+                return size;
+            }
+        }
+        return BULK_LOAD_SIZES[BULK_LOAD_SIZES.length - 1];
+    }
+
+    // (Point, UUID) 인덱스를 따라 키셋 방식으로 나누어 읽습니다.
+    @Override
+    public Map<UUID, Integer> selectTopPoints(int limit) throws SQLException {
+        return withConnection(connection -> {
+            Map<UUID, Integer> map = new LinkedHashMap<>();
+            String table = points.table;
+            UuidFormat format = points.format;
+            String firstQuery = "SELECT UUID, Point FROM " + table
+                + " ORDER BY Point DESC, UUID DESC LIMIT ?";
+            String nextQuery = "SELECT UUID, Point FROM " + table
+                + " WHERE Point < ? OR (Point = ? AND UUID < ?) ORDER BY Point DESC, UUID DESC LIMIT ?";
+            UUID lastUuid = null;
+            int lastPoint = 0;
+            while (map.size() < limit) {
+                int pageSize = Math.min(TOP_PAGE_SIZE, limit - map.size());
+                PreparedStatement statement;
+                if (lastUuid == null) {
+                    statement = connection.prepare(firstQuery);
+                    statement.setInt(1, pageSize);
+                } else {
+                    statement = connection.prepare(nextQuery);
+                    statement.setInt(1, lastPoint);
+                    statement.setInt(2, lastPoint);
+                    format.set(statement, 3, lastUuid);
+                    statement.setInt(4, pageSize);
+                }
+                int read = 0;
+                try (ResultSet rs = statement.executeQuery()) {
+                    while (rs.next()) {
+                        lastUuid = format.get(rs, 1);
+                        lastPoint = rs.getInt(2);
+                        map.put(lastUuid, lastPoint);
+                        read++;
+                    }
+                }
+                if (read < pageSize) {
+                    break;
+                }
+            }
+            return map;
+        });
+    }
+
+    @Override
+    public Map<Integer, Integer> countPoints() throws SQLException {
+        return withConnection(connection -> {
+            Map<Integer, Integer> map = new HashMap<>();
+            try (Statement statement = connection.getConnection().createStatement();
+                ResultSet resultSet = statement.executeQuery("SELECT Point, COUNT(*) FROM "
+                    + points.table + " GROUP BY Point")) {
+                while (resultSet.next()) {
+                    map.put(resultSet.getInt(1), resultSet.getInt(2));
+                }
+            }
+            return map;
+        });
+    }
+
+    @Override
+    public Map.Entry<UUID, String> selectUuidByName(String lowerName) throws SQLException {
+        return withConnection(connection -> {
+            PreparedStatement select = connection.prepare("SELECT UUID, Name FROM "
+                + database.getNameTableName() + " WHERE LowerName = ? ORDER BY Seen DESC LIMIT 1");
+            select.setString(1, lowerName);
+            try (ResultSet rs = select.executeQuery()) {
+                return rs.next() ? new SimpleImmutableEntry<>(UUID.fromString(rs.getString(1)),
+                    rs.getString(2)) : null;
+            }
+        });
+    }
+
+    @Override
+    public Map<UUID, String> selectNames(List<UUID> uuids) throws SQLException {
+        return withConnection(connection -> {
+            Map<UUID, String> map = new HashMap<>(uuids.size() * 4 / 3 + 1);
+            selectIn(connection, "SELECT UUID, Name FROM " + database.getNameTableName(),
+                UuidFormat.TEXT, uuids,
+                rs -> map.put(UUID.fromString(rs.getString(1)), rs.getString(2)));
+            return map;
+        });
+    }
+
+    @Override
+    public void saveName(UUID uuid, String name, long seen) throws SQLException {
+        withConnection(connection -> {
+            PreparedStatement insertName = connection.prepare(database.getInsertNameQuery());
+            insertName.setString(1, uuid.toString());
+            insertName.setString(2, name);
+            insertName.setString(3, name.toLowerCase(Locale.ROOT));
+            insertName.setLong(4, seen);
+            return insertName.executeUpdate();
+        });
+    }
+
+    // 형식을 바꾸는 중이면 같은 트랜잭션으로 새 테이블에도 씁니다.
+    @Override
+    public void savePoints(Map<UUID, Integer> points) throws SQLException {
+        withConnection(connection -> transaction(connection, () -> {
+            checkFormat(connection);
+            this.points.upsert.save(connection::prepare, points);
+            if (converting != null) {
+                converting.upsert.save(connection::prepare, points);
+            }
+        }));
+    }
+
+    // 0 이상의 변화량은 여러 행씩, 차감은 새 행에 0 을 넣어야 하므로 한 행씩 묶어 보냅니다.
+    // 새 테이블에는 아직 옮기지 않은 행이 있을 수 있으므로, 더한 뒤의 값을 읽어 그대로 저장합니다.
+    @Override
+    public void addPoints(UUID batchId, Map<UUID, Integer> deltas) throws SQLException {
+        pruneBatches();
+        withConnection(connection -> transaction(connection, () -> {
+            checkFormat(connection);
+            if (!recordBatch(connection, batchId)) {
+                return;
+            }
+            Map<UUID, Integer> increments = new LinkedHashMap<>();
+            PreparedStatement subtract = null;
+            for (Map.Entry<UUID, Integer> entry : deltas.entrySet()) {
+                if (entry.getValue() >= 0) {
+                    increments.put(entry.getKey(), entry.getValue());
+                    continue;
+                }
+                if (subtract == null) {
+                    subtract = connection.prepare(database.getAddQuery(points.table));
+                }
+                points.format.set(subtract, 1, entry.getKey());
+                subtract.setInt(2, 0);
+                subtract.setInt(3, entry.getValue());
+                subtract.addBatch();
+            }
+            points.upsert.add(connection::prepare, increments);
+            if (subtract != null) {
+                subtract.executeBatch();
+            }
+            if (converting != null) {
+                converting.upsert.save(connection::prepare,
+                    selectPoints(connection, new ArrayList<>(deltas.keySet())));
+            }
+        }));
+    }
+
+    // 이미 적용한 묶음이면 false 를 반환합니다.
+    private boolean recordBatch(PooledConnection connection, UUID batchId) throws SQLException {
+        PreparedStatement select = connection
+            .prepare("SELECT 1 FROM " + batchTable + " WHERE BatchId = ?");
+        select.setString(1, batchId.toString());
+        try (ResultSet rs = select.executeQuery()) {
+            if (rs.next()) {
+                return false;
+            }
+        }
+        PreparedStatement insert = connection
+            .prepare("INSERT INTO " + batchTable + " (BatchId, Applied) VALUES (?, ?)");
+        insert.setString(1, batchId.toString());
+        insert.setLong(2, System.currentTimeMillis());
+        insert.executeUpdate();
+        return true;
+    }
+
+    private void pruneBatches() throws SQLException {
+        long now = System.currentTimeMillis();
+        if (now - lastBatchPrune < BATCH_PRUNE_INTERVAL) {
+            return;
+        }
+        withConnection(connection -> {
+            PreparedStatement delete = connection
+                .prepare("DELETE FROM " + batchTable + " WHERE Applied < ?");
+            delete.setLong(1, now - BATCH_RETENTION);
+            return delete.executeUpdate();
+        });
+        lastBatchPrune = now;
+    }
+
+    @Override
+    public long countRows() throws SQLException {
+        return withConnection(connection -> {
+            try (Statement statement = connection.getConnection().createStatement();
+                ResultSet rs = statement.executeQuery("SELECT COUNT(*) FROM " + points.table)) {
+                return rs.next() ? rs.getLong(1) : 0L;
+            }
+        });
+    }
+
+    @Override
+    public Map<UUID, Integer> scan(String afterUuid, int limit) throws SQLException {
+        return withConnection(connection ->
+            scan(connection, points, afterUuid.isEmpty() ? null : UUID.fromString(afterUuid),
+                limit));
+    }
+
+    // after 가 null 이면 처음부터 읽습니다.
+    private static Map<UUID, Integer> scan(PooledConnection connection, PointTable from,
+        UUID after, int limit) throws SQLException {
+        PreparedStatement select;
+        if (after == null) {
+            select = connection.prepare("SELECT UUID, Point FROM " + from.table
+                + " ORDER BY UUID LIMIT ?");
+            select.setInt(1, limit);
+        } else {
+            select = connection.prepare("SELECT UUID, Point FROM " + from.table
+                + " WHERE UUID > ? ORDER BY UUID LIMIT ?");
+            from.format.set(select, 1, after);
+            select.setInt(2, limit);
+        }
+        select.setFetchSize(limit);
+        Map<UUID, Integer> map = new LinkedHashMap<>();
+        try (ResultSet rs = select.executeQuery()) {
+            while (rs.next()) {
+                map.put(from.format.get(rs, 1), rs.getInt(2));
+            }
+        }
+        return map;
+    }
+
+    // 형식 변환 스레드. 옮긴 마지막 UUID 를 같은 트랜잭션으로 기록하므로 서버를 다시 시작해도 이어서 옮깁니다.
+    // 서버의 쓰기는 새 테이블에도 가장 최근 값을 쓰므로, 옮길 때는 없는 행만 넣어 그 값을 덮어쓰지 않습니다.
+    private void convert() {
+        PointTable target = converting;
+        PointUpsert insertMissing = new PointUpsert(database, target.table, target.format,
+            writeChunkSize);
+        try {
+            String saved = withConnection(
+                connection -> readSchema(connection.getConnection(), "convert-after"));
+            UUID after = saved == null || saved.isEmpty() ? null : UUID.fromString(saved);
+            long copied = 0;
+            long lastReport = System.nanoTime();
+            while (!closed) {
+                UUID from = after;
+                Map<UUID, Integer> chunk = withConnection(connection -> {
+                    Map<UUID, Integer> rows = scan(connection, points, from, convertChunkSize);
+                    transaction(connection, () -> {
+                        insertMissing.insertMissing(connection::prepare, rows);
+                        if (!rows.isEmpty()) {
+                            writeSchema(connection.getConnection(), "convert-after",
+                                lastKey(rows).toString());
+                        }
+                    });
+                    return rows;
+                });
+                copied += chunk.size();
+                if (chunk.size() < convertChunkSize) {
+                    swap(target, insertMissing, chunk.isEmpty() ? after : lastKey(chunk));
+                    logger.info(points.table + " 테이블의 UUID 형식을 " + target.format
+                        + " (으)로 바꿨습니다.");
+                    return;
+                }
+                after = lastKey(chunk);
+                if (System.nanoTime() - lastReport >= CONVERT_REPORT_INTERVAL) {
+                    lastReport = System.nanoTime();
+                    logger.info(points.table + " 테이블의 UUID 형식을 바꾸는 중... " + copied + " 행");
+                    // 잠금을 잡은 연결이 쉬다가 끊기지 않도록 확인합니다. 끊겼으면 잠금도 풀렸으므로 멈춥니다.
+                    if (!convertLock.isValid(5)) {
+                        logger.warning(points.table + " 테이블의 형식 변환 잠금을 잃어 멈춥니다."
+                            + " 다음 시작 때 이어서 옮깁니다.");
+                        return;
+                    }
+                }
+                Thread.sleep(CONVERT_PAUSE_MILLIS);
+            }
+        } catch (InterruptedException ignored) {
+            // 닫는 중입니다. 다음 시작 때 이어서 옮깁니다.
+        } catch (SQLException e) {
+            if (!closed) {
+                e.printStackTrace();
+                logger.severe(points.table + " 테이블의 UUID 형식을 바꾸는데 실패했습니다."
+                    + " 다음 시작 때 이어서 옮깁니다.");
+            }
+        } finally {
+            unlockConvert();
+        }
+    }
+
+    // 쓰기를 막은 채 마지막 묶음 뒤에 추가된 행까지 옮기고 테이블을 바꿉니다. 버전을 먼저 고쳐, 다른 서버의 쓰기
+    // 중 이미 버전을 확인한 쓰기는 끝나기를 기다리고 이후의 쓰기는 바뀐 버전을 보고 멈추도록 합니다.
+    // MySQL 은 RENAME 전에 그때까지를 커밋하므로, 테이블을 바꾸지 못했으면 버전을 되돌립니다.
+    private void swap(PointTable target, PointUpsert insertMissing, UUID after)
+        throws SQLException {
+        tableLock.writeLock().lock();
+        try {
+            withConnection(connection -> {
+                Connection conn = connection.getConnection();
+                try {
+                    transaction(connection, () -> {
+                        writeSchema(conn, "version", String.valueOf(target.format.getVersion()));
+                        writeSchema(conn, "convert-after", null);
+                        UUID from = after;
+                        Map<UUID, Integer> rows;
+                        do {
+                            rows = scan(connection, points, from, convertChunkSize);
+                            insertMissing.insertMissing(connection::prepare, rows);
+                            from = rows.isEmpty() ? from : lastKey(rows);
+                        } while (rows.size() == convertChunkSize);
+                        try (Statement stmt = conn.createStatement()) {
+                            for (String query : database.getSwapQueries(target.table)) {
+                                stmt.execute(query);
+                            }
+                        }
+                    });
+                } catch (SQLException e) {
+                    if (columnFormat(conn, points.table) != target.format) {
+                        writeSchema(conn, "version", String.valueOf(points.format.getVersion()));
+                        writeSchema(conn, "convert-after", after == null ? "" : after.toString());
+                        throw e;
+                    }
+                    // 이전 테이블을 지우지 못했을 뿐 바꾸기는 마쳤습니다.
+                    logger.warning(points.table + "_Old 테이블을 지우지 못했습니다. (" + e.getMessage()
+                        + ")");
+                }
+                return null;
+            });
+            points = new PointTable(points.table, target.format);
+            converting = null;
+        } finally {
+            tableLock.writeLock().unlock();
+        }
+    }
+
+    private static UUID lastKey(Map<UUID, Integer> rows) {
+        UUID last = null;
+        for (UUID uuid : rows.keySet()) {
+            last = uuid;
+        }
+        return last;
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        if (converter != null) {
+            converter.interrupt();
+            try {
+                converter.join(TimeUnit.SECONDS.toMillis(30));
+            } catch (InterruptedException ignored) {
+            }
+        }
+        pool.close();
+    }
+
+    // 묶음 전체를 하나의 트랜잭션으로 저장합니다. (autocommit 이면 문장마다 커밋하고 디스크에 씁니다)
+    // 실패하면 되돌리고 예외를 그대로 던지므로, 일부만 저장되지 않습니다.
+    private static Void transaction(PooledConnection connection, SqlWork work)
+        throws SQLException {
+        Connection conn = connection.getConnection();
+        conn.setAutoCommit(false);
+        try {
+            work.run();
+            conn.commit();
+        } catch (SQLException e) {
+            conn.rollback();
+            throw e;
+        } finally {
+            conn.setAutoCommit(true);
+        }
+        return null;
+    }
+
+    // 예외가 발생한 연결은 상태를 알 수 없으므로 풀에 돌려놓지 않습니다.
+    private <T> T withConnection(ConnectionTask<T> task) throws SQLException {
+        tableLock.readLock().lock();
+        try {
+            PooledConnection connection = pool.borrow();
+            boolean broken = true;
+            try {
+                T result = task.run(connection);
+                broken = false;
+                return result;
+            } finally {
+                if (broken) {
+                    pool.invalidate(connection);
+                } else {
+                    pool.release(connection);
+                }
+            }
+        } finally {
+            tableLock.readLock().unlock();
+        }
+    }
+
+    // 포인트 테이블과 그 UUID 형식
+    private final class PointTable {
+
+        private final String table;
+        private final UuidFormat format;
+        private final PointUpsert upsert;
+
+        private PointTable(String table, UuidFormat format) {
+            this.table = table;
+            this.format = format;
+            this.upsert = new PointUpsert(database, table, format, writeChunkSize);
+        }
+    }
+
+    @FunctionalInterface
+    private interface ConnectionTask<T> {
+
+        T run(PooledConnection connection) throws SQLException;
+    }
+
+    @FunctionalInterface
+    private interface SqlWork {
+
+        void run() throws SQLException;
+    }
+
+    @FunctionalInterface
+    private interface RowReader {
+
+        void read(ResultSet rs) throws SQLException;
+    }
+}
@@ -0,0 +1,394 @@
+package net.utory.rankpoint.data.database;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.sql.SQLException;
+import java.util.AbstractMap.SimpleImmutableEntry;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.UUID;
+
+// 같은 프로세스의 메모리 맵 파일에 저장합니다. 포인트는 (UUID, 포인트) 20 바이트 레코드로, 이름은 같은 경로에
+// .names 를 붙인 파일에 64 바이트 레코드로 저장하며 모두 제자리에서 고칩니다. 불러오기는 색인을 찾아 한 번 읽는 것으로
+// 끝나므로 데이터베이스를 거치지 않습니다. 모든 메서드는 이 객체로 동기화되며, 읽기도 쓰기 스레드에서 실행합니다.
+// forceOnSave 가 false 이면 저장한 내용을 디스크에 쓰는 것은 운영체제에 맡깁니다. (프로세스가 죽어도 남지만
+// 운영체제가 멈추면 잃을 수 있습니다)
+public final class MmapStorage implements Storage {
+
+    // UUID (16) + point (4)
+    private static final int POINT_RECORD_SIZE = 20;
+    // UUID (16) + seen (8) + 이름 길이 (2) + UTF-8 이름 (38)
+    private static final int NAME_RECORD_SIZE = 64;
+    private static final int NAME_BYTES = 38;
+
+    private final MmapTable points;
+    private final MmapTable names;
+    private final boolean forceOnSave;
+    // 소문자 이름 -> 이름 레코드 번호. 오픈 어드레싱 테이블이며 값은 레코드 번호 + 1, 0 은 빈 자리, -1 은 지운 자리입니다.
+    // 같은 이름의 플레이어가 여럿이면 각각 자리를 차지합니다.
+    private int[] nameSlots;
+    private int nameSlotsUsed = 0;
+    // /rankpoint migrate 에서 읽는 UUID 순서의 포인트 레코드 번호. 처음부터 읽을 때 만듭니다.
+    private int[] scanOrder;
+
+    public MmapStorage(File file, boolean forceOnSave) throws SQLException {
+        this.forceOnSave = forceOnSave;
+        try {
+            this.points = new MmapTable(file, POINT_RECORD_SIZE);
+        } catch (IOException e) {
+            throw new SQLException("Cannot open " + file, e);
+        }
+        File nameFile = new File(file.getPath() + ".names");
+        try {
+            this.names = new MmapTable(nameFile, NAME_RECORD_SIZE);
+        } catch (IOException e) {
+            points.close();
+            throw new SQLException("Cannot open " + nameFile, e);
+        }
+        int length = 16;
+        while (length < names.size() * 2 + 2) {
+            length <<= 1;
+        }
+        nameSlots = new int[length];
+        for (int index = 0; index < names.size(); index++) {
+            addNameSlot(lowerName(index), index);
+        }
+    }
+
+    @Override
+    public int getReaderThreads() {
+        return 0;
+    }
+
+    @Override
+    public synchronized Integer selectPoint(UUID uuid) {
+        int index = points.find(uuid.getMostSignificantBits(), uuid.getLeastSignificantBits());
+        return index < 0 ? null : point(index);
+    }
+
+    @Override
+    public synchronized Map<UUID, Integer> selectPoints(List<UUID> uuids) {
+        Map<UUID, Integer> map = new HashMap<>(uuids.size() * 4 / 3 + 1);
+        for (UUID uuid : uuids) {
+            int index = points.find(uuid.getMostSignificantBits(), uuid.getLeastSignificantBits());
+            if (index >= 0) {
+                map.put(uuid, point(index));
+            }
+        }
+        return map;
+    }
+
+    // 모든 레코드를 읽으며 상위 limit 개만 힙에 남깁니다.
+    @Override
+    public synchronized Map<UUID, Integer> selectTopPoints(int limit) {
+        Map<UUID, Integer> map = new LinkedHashMap<>();
+        if (limit <= 0) {
+            return map;
+        }
+        // 힙의 맨 위가 가장 낮은 순위
+        PriorityQueue<Integer> heap = new PriorityQueue<>(limit + 1, this::compareRank);
+        for (int index = 0; index < points.size(); index++) {
+            if (heap.size() < limit) {
+                heap.add(index);
+            } else if (compareRank(index, heap.peek()) > 0) {
+                heap.poll();
+                heap.add(index);
+            }
+        }
+        Integer[] top = heap.toArray(new Integer[0]);
+        Arrays.sort(top, (a, b) -> compareRank(b, a));
+        for (int index : top) {
+            map.put(uuid(index), point(index));
+        }
+        return map;
+    }
+
+    // 포인트, 같으면 UUID 문자열 순서 (부호 없는 128 비트 값의 순서와 같음) 로 비교합니다.
+    private int compareRank(int a, int b) {
+        int result = Integer.compare(point(a), point(b));
+        return result != 0 ? result : compareUuid(a, b);
+    }
+
+    private int compareUuid(int a, int b) {
+        int result = Long.compareUnsigned(points.msb(a), points.msb(b));
+        return result != 0 ? result : Long.compareUnsigned(points.lsb(a), points.lsb(b));
+    }
+
+    @Override
+    public synchronized Map<Integer, Integer> countPoints() {
+        Map<Integer, Integer> map = new HashMap<>();
+        for (int index = 0; index < points.size(); index++) {
+            map.merge(point(index), 1, Integer::sum);
+        }
+        return map;
+    }
+
+    @Override
+    public synchronized Map.Entry<UUID, String> selectUuidByName(String lowerName) {
+        int mask = nameSlots.length - 1;
+        int found = -1;
+        for (int slot = lowerName.hashCode() & mask; nameSlots[slot] != 0;
+            slot = (slot + 1) & mask) {
+            int index = nameSlots[slot] - 1;
+            if (index >= 0 && lowerName.equals(lowerName(index))
+                && (found < 0 || seen(index) > seen(found))) {
+                found = index;
+            }
+        }
+        return found < 0 ? null
+            : new SimpleImmutableEntry<>(new UUID(names.msb(found), names.lsb(found)),
+                name(found));
+    }
+
+    @Override
+    public synchronized Map<UUID, String> selectNames(List<UUID> uuids) {
+        Map<UUID, String> map = new HashMap<>(uuids.size() * 4 / 3 + 1);
+        for (UUID uuid : uuids) {
+            int index = names.find(uuid.getMostSignificantBits(), uuid.getLeastSignificantBits());
+            if (index >= 0) {
+                map.put(uuid, name(index));
+            }
+        }
+        return map;
+    }
+
+    @Override
+    public synchronized void saveName(UUID uuid, String name, long seen) throws SQLException {
+        long msb = uuid.getMostSignificantBits();
+        long lsb = uuid.getLeastSignificantBits();
+        byte[] bytes = encodeName(name);
+        int index = names.find(msb, lsb);
+        if (index < 0) {
+            try {
+                index = names.insert(msb, lsb, (buffer, offset) -> writeName(buffer, offset, seen,
+                    bytes));
+            } catch (IOException e) {
+                throw new SQLException("Cannot grow " + names.getFile(), e);
+            }
+            addNameSlot(name.toLowerCase(Locale.ROOT), index);
+            return;
+        }
+        String oldLower = lowerName(index);
+        writeName(names.buffer(), names.offset(index), seen, bytes);
+        String newLower = lowerName(index);
+        if (!oldLower.equals(newLower)) {
+            removeNameSlot(oldLower, index);
+            addNameSlot(newLower, index);
+        }
+    }
+
+    private static byte[] encodeName(String name) {
+        byte[] bytes = name.getBytes(StandardCharsets.UTF_8);
+        while (bytes.length > NAME_BYTES) {
+            name = name.substring(0, name.length() - 1);
+            bytes = name.getBytes(StandardCharsets.UTF_8);
+        }
+        return bytes;
+    }
+
+    private static void writeName(MappedByteBuffer buffer, int offset, long seen, byte[] bytes) {
+        buffer.putLong(offset + 16, seen);
+        for (int i = 0; i < bytes.length; i++) {
+            buffer.put(offset + 26 + i, bytes[i]);
+        }
+        buffer.putShort(offset + 24, (short) bytes.length);
+    }
+
+    private String name(int index) {
+        MappedByteBuffer buffer = names.buffer();
+        int offset = names.offset(index);
+        int length = Math.min(NAME_BYTES, Math.max(0, buffer.getShort(offset + 24)));
+        byte[] bytes = new byte[length];
+        for (int i = 0; i < length; i++) {
+            bytes[i] = buffer.get(offset + 26 + i);
+        }
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private String lowerName(int index) {
+        return name(index).toLowerCase(Locale.ROOT);
+    }
+
+    private long seen(int index) {
+        return names.buffer().getLong(names.offset(index) + 16);
+    }
+
+    private void addNameSlot(String lowerName, int index) {
+        if ((nameSlotsUsed + 1) * 2 > nameSlots.length) {
+            rehashNames(nameSlots.length * 2);
+        }
+        int mask = nameSlots.length - 1;
+        int slot = lowerName.hashCode() & mask;
+        while (nameSlots[slot] > 0) {
+            slot = (slot + 1) & mask;
+        }
+        if (nameSlots[slot] == 0) {
+            nameSlotsUsed++;
+        }
+        nameSlots[slot] = index + 1;
+    }
+
+    // 지운 자리는 뒤의 자리를 찾을 수 있도록 -1 로 남기며, 다시 만들 때 없어집니다.
+    private void removeNameSlot(String lowerName, int index) {
+        int mask = nameSlots.length - 1;
+        for (int slot = lowerName.hashCode() & mask; nameSlots[slot] != 0;
+            slot = (slot + 1) & mask) {
+            if (nameSlots[slot] == index + 1) {
+                nameSlots[slot] = -1;
+                return;
+            }
+        }
+    }
+
+    private void rehashNames(int length) {
+        int[] old = nameSlots;
+        nameSlots = new int[length];
+        nameSlotsUsed = 0;
+        for (int entry : old) {
+            if (entry > 0) {
+                addNameSlot(lowerName(entry - 1), entry - 1);
+            }
+        }
+    }
+
+    @Override
+    public synchronized void savePoints(Map<UUID, Integer> points) throws SQLException {
+        reserve(points.keySet());
+        for (Map.Entry<UUID, Integer> entry : points.entrySet()) {
+            put(entry.getKey(), entry.getValue());
+        }
+        if (forceOnSave) {
+            this.points.force();
+        }
+    }
+
+    // JDBC 저장소의 getAddQuery 와 같은 결과가 되도록 제한합니다. 파일에 직접 쓰며 쓰기 전에만 실패하므로 (reserve),
+    // 적용된 묶음이 실패로 보이는 일이 없어 batchId 를 기록하지 않습니다.
+    @Override
+    public synchronized void addPoints(UUID batchId, Map<UUID, Integer> deltas)
+        throws SQLException {
+        reserve(deltas.keySet());
+        for (Map.Entry<UUID, Integer> entry : deltas.entrySet()) {
+            UUID uuid = entry.getKey();
+            int delta = entry.getValue();
+            int index = points.find(uuid.getMostSignificantBits(), uuid.getLeastSignificantBits());
+            long point = (index < 0 ? 0L : point(index)) + delta;
+            if (delta < 0) {
+                point = Math.max(0, point);
+            }
+            put(uuid, (int) Math.min(Integer.MAX_VALUE, point));
+        }
+        if (forceOnSave) {
+            points.force();
+        }
+    }
+
+    // 새 플레이어의 레코드를 넣을 자리를 먼저 만들어, 파일을 늘리지 못하면 아무것도 쓰지 않고 실패합니다.
+    // (일부만 더해진 채로 실패하면 다시 보낼 때 두 번 더해집니다)
+    private void reserve(Collection<UUID> uuids) throws SQLException {
+        int missing = 0;
+        for (UUID uuid : uuids) {
+            if (points.find(uuid.getMostSignificantBits(), uuid.getLeastSignificantBits()) < 0) {
+                missing++;
+            }
+        }
+        try {
+            points.reserve(missing);
+        } catch (IOException e) {
+            throw new SQLException("Cannot grow " + points.getFile(), e);
+        }
+    }
+
+    // 한 레코드의 포인트는 4 바이트 한 번에 쓰므로 중간에 멈춰도 이전 값이나 새 값 중 하나가 남습니다.
+    private void put(UUID uuid, int point) throws SQLException {
+        long msb = uuid.getMostSignificantBits();
+        long lsb = uuid.getLeastSignificantBits();
+        int index = points.find(msb, lsb);
+        if (index >= 0) {
+            points.buffer().putInt(points.offset(index) + 16, point);
+            return;
+        }
+        try {
+            points.insert(msb, lsb, (buffer, offset) -> buffer.putInt(offset + 16, point));
+        } catch (IOException e) {
+            throw new SQLException("Cannot grow " + points.getFile(), e);
+        }
+    }
+
+    private int point(int index) {
+        return points.buffer().getInt(points.offset(index) + 16);
+    }
+
+    private UUID uuid(int index) {
+        return new UUID(points.msb(index), points.lsb(index));
+    }
+
+    @Override
+    public synchronized long countRows() {
+        return points.size();
+    }
+
+    // 처음부터 읽을 때 그때까지의 레코드를 UUID 순서로 정렬해 두고, 끝까지 읽으면 버립니다.
+    // 옮기는 동안 새로 추가된 플레이어는 캐시에 남아 있다가 옮긴 뒤에 다시 저장됩니다.
+    @Override
+    public synchronized Map<UUID, Integer> scan(String afterUuid, int limit) {
+        if (scanOrder == null || afterUuid.isEmpty()) {
+            Integer[] order = new Integer[points.size()];
+            for (int i = 0; i < order.length; i++) {
+                order[i] = i;
+            }
+            Arrays.sort(order, this::compareUuid);
+            scanOrder = new int[order.length];
+            for (int i = 0; i < order.length; i++) {
+                scanOrder[i] = order[i];
+            }
+        }
+        int from = 0;
+        if (!afterUuid.isEmpty()) {
+            UUID after = UUID.fromString(afterUuid);
+            from = firstAfter(after.getMostSignificantBits(), after.getLeastSignificantBits());
+        }
+        Map<UUID, Integer> map = new LinkedHashMap<>();
+        for (int i = from; i < scanOrder.length && map.size() < limit; i++) {
+            map.put(uuid(scanOrder[i]), point(scanOrder[i]));
+        }
+        if (map.size() < limit) {
+            scanOrder = null;
+        }
+        return map;
+    }
+
+    // scanOrder 에서 (msb, lsb) 보다 큰 첫 위치
+    private int firstAfter(long msb, long lsb) {
+        int low = 0;
+        int high = scanOrder.length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            int index = scanOrder[mid];
+            int result = Long.compareUnsigned(points.msb(index), msb);
+            if (result == 0) {
+                result = Long.compareUnsigned(points.lsb(index), lsb);
+            }
+            if (result <= 0) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    @Override
+    public synchronized void close() {
+        points.close();
+        names.close();
+    }
+}
@@ -0,0 +1,210 @@
+package net.utory.rankpoint.data.database;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.file.StandardOpenOption;
+
+// UUID 로 시작하는 고정 크기 레코드를 메모리 맵 파일에 차례로 저장합니다. 레코드는 지우지 않으며 제자리에서 고칩니다.
+// UUID -> 레코드 번호 색인은 파일을 열 때 레코드를 읽어 메모리에 만드는 오픈 어드레싱 (선형 탐사) 해시 테이블입니다.
+// 새 레코드는 내용을 모두 쓴 뒤 머리의 레코드 수를 늘리므로, 쓰다 만 레코드는 다시 열 때 읽지 않습니다.
+// 파일은 잠가 두어 다른 프로세스 (또는 같은 파일을 연 다른 MmapTable) 와 함께 쓰지 않습니다. 동기화는 호출하는 쪽에서 합니다.
+final class MmapTable {
+
+    private static final int MAGIC = 0x52504D4D; // "RPMM"
+    // magic (4) + 레코드 크기 (4) + 레코드 수 (4) + 예비 (4)
+    private static final int HEADER_SIZE = 16;
+    private static final int INITIAL_CAPACITY = 1024;
+
+    private final File file;
+    private final int recordSize;
+    private final FileChannel channel;
+    private final FileLock lock;
+    private MappedByteBuffer buffer;
+    private int capacity;
+    private int size;
+    // 레코드 번호 + 1 (0 이면 빈 자리). 크기는 2 의 거듭제곱이며 절반 이상 채우지 않습니다.
+    private int[] slots;
+
+    MmapTable(File file, int recordSize) throws IOException {
+        this.file = file;
+        this.recordSize = recordSize;
+        File parent = file.getAbsoluteFile().getParentFile();
+        if (parent != null && !parent.isDirectory() && !parent.mkdirs()) {
+            throw new IOException("Cannot create " + parent);
+        }
+        this.channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE,
+            StandardOpenOption.READ, StandardOpenOption.WRITE);
+        try {
+            this.lock = lock(channel, file);
+            long length = channel.size();
+            if (length < HEADER_SIZE) {
+                map(INITIAL_CAPACITY);
+                buffer.putInt(0, MAGIC);
+                buffer.putInt(4, recordSize);
+                buffer.putInt(8, 0);
+            } else {
+                map((int) Math.max(INITIAL_CAPACITY, (length - HEADER_SIZE) / recordSize));
+                if (buffer.getInt(0) != MAGIC || buffer.getInt(4) != recordSize) {
+                    throw new IOException(file + " is not a Rankpoint data file.");
+                }
+            }
+            size = Math.min(buffer.getInt(8), capacity);
+            slots = new int[slotCount(size)];
+            for (int index = 0; index < size; index++) {
+                // 같은 UUID 가 두 번 있으면 나중 레코드를 사용합니다.
+                int slot = findSlot(msb(index), lsb(index));
+                slots[slot] = index + 1;
+            }
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    private static FileLock lock(FileChannel channel, File file) throws IOException {
+        FileLock lock;
+        try {
+            lock = channel.tryLock();
+        } catch (OverlappingFileLockException e) {
+            lock = null;
+        }
+        if (lock == null) {
+            throw new IOException(file + " is in use.");
+        }
+        return lock;
+    }
+
+    private void map(int capacity) throws IOException {
+        this.buffer = channel.map(MapMode.READ_WRITE, 0,
+            HEADER_SIZE + (long) capacity * recordSize);
+        this.capacity = capacity;
+    }
+
+    int size() {
+        return size;
+    }
+
+    MappedByteBuffer buffer() {
+        return buffer;
+    }
+
+    // 레코드의 시작 위치. 레코드를 추가하면 buffer 가 바뀔 수 있으므로 매번 buffer() 와 함께 얻습니다.
+    int offset(int index) {
+        return HEADER_SIZE + index * recordSize;
+    }
+
+    long msb(int index) {
+        return buffer.getLong(offset(index));
+    }
+
+    long lsb(int index) {
+        return buffer.getLong(offset(index) + 8);
+    }
+
+    // 레코드 번호, 없으면 -1
+    int find(long msb, long lsb) {
+        return slots[findSlot(msb, lsb)] - 1;
+    }
+
+    // 같은 UUID 의 레코드가 있는 자리, 없으면 넣을 빈 자리
+    private int findSlot(long msb, long lsb) {
+        int mask = slots.length - 1;
+        int slot = hash(msb, lsb) & mask;
+        while (true) {
+            int entry = slots[slot];
+            if (entry == 0) {
+                return slot;
+            }
+            int index = entry - 1;
+            if (msb(index) == msb && lsb(index) == lsb) {
+                return slot;
+            }
+            slot = (slot + 1) & mask;
+        }
+    }
+
+    // 없는 UUID 의 레코드를 추가하고 번호를 반환합니다. writer 가 나머지 내용을 쓴 뒤에 레코드 수를 늘립니다.
+    int insert(long msb, long lsb, RecordWriter writer) throws IOException {
+        reserve(1);
+        int index = size;
+        int offset = offset(index);
+        buffer.putLong(offset, msb);
+        buffer.putLong(offset + 8, lsb);
+        writer.write(buffer, offset);
+        slots[findSlot(msb, lsb)] = index + 1;
+        size++;
+        buffer.putInt(8, size);
+        return index;
+    }
+
+    // 레코드를 count 개 더 추가해도 파일과 색인을 늘리지 않도록 미리 늘립니다.
+    void reserve(int count) throws IOException {
+        int needed = size + count;
+        if (needed > capacity) {
+            int grown = capacity;
+            while (grown < needed) {
+                grown *= 2;
+            }
+            map(grown);
+        }
+        if (needed * 2 > slots.length) {
+            rehash(slotCount(needed));
+        }
+    }
+
+    private void rehash(int length) {
+        int[] old = slots;
+        slots = new int[length];
+        for (int entry : old) {
+            if (entry != 0) {
+                slots[findSlot(msb(entry - 1), lsb(entry - 1))] = entry;
+            }
+        }
+    }
+
+    // 바뀐 페이지를 디스크에 씁니다.
+    void force() {
+        buffer.force();
+    }
+
+    // 매핑은 GC 될 때 풀립니다.
+    void close() {
+        buffer.force();
+        try {
+            lock.release();
+            channel.close();
+        } catch (IOException ignored) {
+        }
+    }
+
+    File getFile() {
+        return file;
+    }
+
+    private static int slotCount(int size) {
+        int length = 16;
+        while (length < size * 2 + 2) {
+            length <<= 1;
+        }
+        return length;
+    }
+
+    private static int hash(long msb, long lsb) {
+        long h = msb * 0x9E3779B97F4A7C15L ^ lsb;
+        h ^= h >>> 31;
+        h *= 0xBF58476D1CE4E5B9L;
+        return (int) (h ^ h >>> 32);
+    }
+
+    @FunctionalInterface
+    interface RecordWriter {
+
+        // offset 의 UUID 다음 (offset + 16) 부터 씁니다.
+        void write(MappedByteBuffer buffer, int offset);
+    }
+}
@@ -1,13 +1,21 @@
 package net.utory.rankpoint.data.database;
 
 import java.sql.Connection;
+import java.sql.DatabaseMetaData;
 import java.sql.DriverManager;
 import java.sql.PreparedStatement;
+import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
+import java.util.Arrays;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
 public class Mysql implements Database {
 
+    private static final Pattern PATCH_VERSION = Pattern.compile("^\\d+\\.\\d+\\.(\\d+)");
+
     static {
         try {
             Class.forName("com.mysql.jdbc.Driver");
@@ -22,9 +30,13 @@ public class Mysql implements Database {
     private final String tableName;
     private final String userName;
     private final String password;
+    private final PoolConfig poolConfig;
+    private final UuidFormat uuidFormat;
+    // INSERT ... AS new 의 행 별칭을 사용할 수 있는 서버이면 true (initTable 에서 확인합니다)
+    private volatile boolean rowAlias = false;
 
     public Mysql(String hostName, int port, String database, String parameters, String tableName,
-        String userName, String password) {
+        String userName, String password, PoolConfig poolConfig, UuidFormat uuidFormat) {
         this.hostName = hostName;
         this.port = port;
         this.database = database;
@@ -32,6 +44,8 @@ public class Mysql implements Database {
         this.tableName = tableName;
         this.userName = userName;
         this.password = password;
+        this.poolConfig = poolConfig;
+        this.uuidFormat = uuidFormat;
     }
 
     @Override
@@ -43,25 +57,164 @@ public class Mysql implements Database {
 
     @Override
     public void initTable(Connection conn) throws SQLException {
+        rowAlias = supportsRowAlias(conn.getMetaData());
         try (Statement stmt = conn.createStatement()) {
-            stmt.execute("CREATE TABLE IF NOT EXISTS " + tableName
-                + " (UUID CHAR(36) NOT NULL PRIMARY KEY, Point INT NOT NULL)");
+            String nameTable = getNameTableName();
+            stmt.execute("CREATE TABLE IF NOT EXISTS " + nameTable
+                + " (UUID CHAR(36) NOT NULL PRIMARY KEY, Name VARCHAR(16) NOT NULL,"
+                + " LowerName VARCHAR(16) NOT NULL, Seen BIGINT NOT NULL)");
+            if (!hasIndex(stmt, nameTable, nameTable + "_LowerName")) {
+                stmt.execute("CREATE INDEX " + nameTable + "_LowerName ON " + nameTable
+                    + " (LowerName, Seen)");
+            }
         }
     }
 
+    // 인덱스 이름은 테이블마다 따로이므로 변환 중인 테이블에도 같은 이름으로 만들어 두고 이름만 바꿉니다.
     @Override
-    public PreparedStatement getSelectStatement(Connection conn) throws SQLException {
-        return conn.prepareStatement("SELECT Point FROM " + tableName + " WHERE UUID = ?");
+    public void createPointTable(Connection conn, String table, UuidFormat format)
+        throws SQLException {
+        try (Statement stmt = conn.createStatement()) {
+            stmt.execute("CREATE TABLE IF NOT EXISTS " + table + " (UUID "
+                + (format == UuidFormat.BINARY ? "BINARY(16)" : "CHAR(36)")
+                + " NOT NULL PRIMARY KEY, Point INT NOT NULL)");
+            if (!hasIndex(stmt, table, tableName + "_Point")) {
+                stmt.execute("CREATE INDEX " + tableName + "_Point ON " + table + " (Point, UUID)");
+            }
+        }
+    }
+
+    // VALUES() 로 새 행의 값을 읽는 방법은 8.0.20 부터 사용 중단 예정이므로, 행 별칭을 지원하는 8.0.19 부터는
+    // 별칭을 사용합니다. (MariaDB 는 행 별칭을 지원하지 않음)
+    private static boolean supportsRowAlias(DatabaseMetaData meta) throws SQLException {
+        String version = meta.getDatabaseProductVersion();
+        if (version.contains("MariaDB")) {
+            return false;
+        }
+        int major = meta.getDatabaseMajorVersion();
+        int minor = meta.getDatabaseMinorVersion();
+        if (major != 8 || minor != 0) {
+            return major > 8;
+        }
+        Matcher matcher = PATCH_VERSION.matcher(version);
+        return matcher.find() && Integer.parseInt(matcher.group(1)) >= 19;
     }
 
+    // 새 행의 열 값 (행 별칭 또는 VALUES())
+    private String inserted(String column) {
+        return rowAlias ? "new." + column : "VALUES(" + column + ")";
+    }
+
+    private String onDuplicateKey() {
+        return rowAlias ? " AS new ON DUPLICATE KEY UPDATE " : " ON DUPLICATE KEY UPDATE ";
+    }
+
+    // MySQL 은 CREATE INDEX IF NOT EXISTS 를 지원하지 않으므로 직접 확인합니다.
+    private static boolean hasIndex(Statement stmt, String table, String index)
+        throws SQLException {
+        try (ResultSet rs = stmt.executeQuery(
+            "SHOW INDEX FROM " + table + " WHERE Key_name = '" + index + "'")) {
+            return rs.next();
+        }
+    }
+
+    // RENAME TABLE 은 두 테이블의 이름을 한 번에 바꿉니다. DDL 은 트랜잭션으로 묶이지 않습니다.
     @Override
-    public PreparedStatement getInsertStatement(Connection conn) throws SQLException {
-        return conn.prepareStatement("INSERT INTO " + tableName
-            + " (UUID, Point) VALUES (?, ?) ON DUPLICATE KEY UPDATE Point = ?");
+    public List<String> getSwapQueries(String converted) {
+        return Arrays.asList(
+            "RENAME TABLE " + tableName + " TO " + tableName + "_Old, " + converted + " TO "
+                + tableName,
+            "DROP TABLE " + tableName + "_Old");
+    }
+
+    // GET_LOCK 의 이름은 서버 전체에서 하나이므로 데이터베이스 이름을 붙입니다. (최대 64 자)
+    @Override
+    public boolean tryLock(Connection conn, String name) throws SQLException {
+        try (PreparedStatement stmt = conn.prepareStatement("SELECT GET_LOCK(?, 0)")) {
+            stmt.setString(1, lockName(name));
+            try (ResultSet rs = stmt.executeQuery()) {
+                return rs.next() && rs.getInt(1) == 1;
+            }
+        }
+    }
+
+    @Override
+    public void unlock(Connection conn, String name) throws SQLException {
+        try (PreparedStatement stmt = conn.prepareStatement("SELECT RELEASE_LOCK(?)")) {
+            stmt.setString(1, lockName(name));
+            stmt.executeQuery().close();
+        }
+    }
+
+    private String lockName(String name) {
+        String lockName = database + "." + name;
+        return lockName.length() > 64 ? lockName.substring(0, 64) : lockName;
+    }
+
+    // 공유 잠금은 형식을 바꾸는 서버가 버전을 고칠 때 (배타 잠금) 그 전에 시작한 쓰기가 끝나기를 기다리게 합니다.
+    @Override
+    public String getSchemaReadQuery(String schemaTable) {
+        return "SELECT Name, Value FROM " + schemaTable + " LOCK IN SHARE MODE";
+    }
+
+    @Override
+    public String getSelectQuery(String table) {
+        return "SELECT Point FROM " + table + " WHERE UUID = ?";
+    }
+
+    @Override
+    public String getInsertQuery(String table, int rows) {
+        return "INSERT INTO " + table + " (UUID, Point) VALUES " + PointUpsert.values(rows)
+            + onDuplicateKey() + "Point = " + inserted("Point");
+    }
+
+    @Override
+    public String getAddQuery(String table, int rows) {
+        return "INSERT INTO " + table + " (UUID, Point) VALUES " + PointUpsert.values(rows)
+            + onDuplicateKey() + "Point = LEAST(2147483647, Point + " + inserted("Point") + ")";
+    }
+
+    // 변화량 (UUID, 새 행의 포인트, 변화량) 을 기존 포인트에 더합니다. 결과는 0 ~ Integer.MAX_VALUE 로 제한됩니다.
+    @Override
+    public String getAddQuery(String table) {
+        return "INSERT INTO " + table + " (UUID, Point) VALUES (?, ?)"
+            + " ON DUPLICATE KEY UPDATE Point = GREATEST(0, LEAST(2147483647, Point + ?))";
+    }
+
+    @Override
+    public String getInsertMissingQuery(String table, int rows) {
+        return "INSERT IGNORE INTO " + table + " (UUID, Point) VALUES " + PointUpsert.values(rows);
+    }
+
+    @Override
+    public String getInsertNameQuery() {
+        return "INSERT INTO " + getNameTableName() + " (UUID, Name, LowerName, Seen)"
+            + " VALUES (?, ?, ?, ?)" + onDuplicateKey() + "Name = " + inserted("Name")
+            + ", LowerName = " + inserted("LowerName") + ", Seen = " + inserted("Seen");
     }
 
     @Override
     public String getTableName() {
         return tableName;
     }
+
+    @Override
+    public String getNameTableName() {
+        return tableName + "_Names";
+    }
+
+    @Override
+    public UuidFormat getUuidFormat() {
+        return uuidFormat;
+    }
+
+    @Override
+    public PoolConfig getPoolConfig() {
+        return poolConfig;
+    }
+
+    @Override
+    public int getMaxParameters() {
+        return 65535;
+    }
 }
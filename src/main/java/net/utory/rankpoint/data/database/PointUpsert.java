@@ -0,0 +1,116 @@
+package net.utory.rankpoint.data.database;
+
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.UUID;
+
+// 포인트를 INSERT ... VALUES (?, ?),(?, ?) 한 문장으로 chunkSize 행씩 저장합니다. 매개변수는 행마다 (UUID, 포인트)
+// 두 개이며, 같은 문장을 재사용할 수 있도록 남은 행은 정해진 크기 (64, 8, 1) 로 나누어 저장합니다.
+// 하나의 스레드에서만 사용하며 (쓰기 스레드 또는 형식 변환 스레드), 트랜잭션은 호출하는 쪽에서 관리합니다.
+public final class PointUpsert {
+
+    private static final int[] TAIL_SIZES = {64, 8, 1};
+
+    private final Database database;
+    private final String table;
+    private final UuidFormat format;
+    private final int chunkSize;
+    // 행 수 -> 문장 (매번 긴 문자열을 만들지 않기 위함)
+    private final Map<Integer, String> insertQueries = new HashMap<>();
+    private final Map<Integer, String> addQueries = new HashMap<>();
+    private final Map<Integer, String> missingQueries = new HashMap<>();
+
+    public PointUpsert(Database database, String table, UuidFormat format, int chunkSize) {
+        this.database = database;
+        this.table = table;
+        this.format = format;
+        this.chunkSize = Math.max(1, Math.min(chunkSize, database.getMaxParameters() / 2));
+    }
+
+    public int getChunkSize() {
+        return chunkSize;
+    }
+
+    // 포인트를 그대로 저장합니다.
+    public void save(StatementSource statements, Map<UUID, Integer> points) throws SQLException {
+        write(statements, points, insertQueries);
+    }
+
+    // 0 이상의 변화량을 기존 포인트에 더합니다. 음수는 새 행에 0 을 넣어야 하므로 Database.getAddQuery(table)
+    // 로 한 행씩 저장해야 합니다.
+    public void add(StatementSource statements, Map<UUID, Integer> deltas) throws SQLException {
+        write(statements, deltas, addQueries);
+    }
+
+    // 없는 행만 넣고 이미 있는 행은 그대로 둡니다.
+    public void insertMissing(StatementSource statements, Map<UUID, Integer> points)
+        throws SQLException {
+        write(statements, points, missingQueries);
+    }
+
+    private void write(StatementSource statements, Map<UUID, Integer> rows,
+        Map<Integer, String> queries) throws SQLException {
+        Iterator<Map.Entry<UUID, Integer>> iterator = rows.entrySet().iterator();
+        int remaining = rows.size();
+        while (remaining > 0) {
+            int size = statementSize(remaining);
+            PreparedStatement statement = statements.prepare(query(size, queries));
+            int index = 1;
+            for (int i = 0; i < size; i++) {
+                Map.Entry<UUID, Integer> row = iterator.next();
+                format.set(statement, index++, row.getKey());
+                statement.setInt(index++, row.getValue());
+            }
+            statement.executeUpdate();
+            remaining -= size;
+        }
+    }
+
+    private int statementSize(int remaining) {
+        if (remaining >= chunkSize) {
+            return chunkSize;
+        }
+        for (int size : TAIL_SIZES) {
+            if (size < chunkSize && remaining >= size) {
+                return size;
+            }
+        }
+        return 1;
+    }
+
+    private String query(int rows, Map<Integer, String> queries) {
+        String query = queries.get(rows);
+        if (query == null) {
+            if (queries == addQueries) {
+                query = database.getAddQuery(table, rows);
+            } else if (queries == missingQueries) {
+                query = database.getInsertMissingQuery(table, rows);
+            } else {
+                query = database.getInsertQuery(table, rows);
+            }
+            queries.put(rows, query);
+        }
+        return query;
+    }
+
+    // rows 개의 (?, ?) 를 쉼표로 이은 VALUES 목록
+    static String values(int rows) {
+        StringBuilder sb = new StringBuilder(rows * 7);
+        for (int i = 0; i < rows; i++) {
+            if (i > 0) {
+                sb.append(',');
+            }
+            sb.append("(?, ?)");
+        }
+        return sb.toString();
+    }
+
+    @FunctionalInterface
+    public interface StatementSource {
+
+        PreparedStatement prepare(String sql) throws SQLException;
+    }
+}
@@ -0,0 +1,47 @@
+package net.utory.rankpoint.data.database;
+
+public final class PoolConfig {
+
+    // SQLite 는 하나의 쓰기 연결만 허용하므로 연결 하나를 계속 유지합니다.
+    public static final PoolConfig SINGLE = new PoolConfig(1, 1, 5, 0, 30);
+
+    private final int minimumIdle;
+    private final int maximumSize;
+    private final int validationTimeout;
+    private final long idleTimeout;
+    private final long connectionTimeout;
+
+    // 시간 단위는 모두 초, idleTimeout 이 0 이하면 유휴 연결을 닫지 않습니다.
+    public PoolConfig(int minimumIdle, int maximumSize, int validationTimeout, long idleTimeout,
+        long connectionTimeout) {
+        if (maximumSize < 1) {
+            throw new IllegalArgumentException(
+                "maximum size cannot be less than 1 (maximum size: " + maximumSize + ")");
+        }
+        this.maximumSize = maximumSize;
+        this.minimumIdle = Math.max(0, Math.min(minimumIdle, maximumSize));
+        this.validationTimeout = Math.max(1, validationTimeout);
+        this.idleTimeout = idleTimeout;
+        this.connectionTimeout = Math.max(1, connectionTimeout);
+    }
+
+    public int getMinimumIdle() {
+        return minimumIdle;
+    }
+
+    public int getMaximumSize() {
+        return maximumSize;
+    }
+
+    public int getValidationTimeout() {
+        return validationTimeout;
+    }
+
+    public long getIdleTimeout() {
+        return idleTimeout;
+    }
+
+    public long getConnectionTimeout() {
+        return connectionTimeout;
+    }
+}
@@ -3,9 +3,10 @@ package net.utory.rankpoint.data.database;
 import java.io.File;
 import java.sql.Connection;
 import java.sql.DriverManager;
-import java.sql.PreparedStatement;
 import java.sql.SQLException;
 import java.sql.Statement;
+import java.util.Arrays;
+import java.util.List;
 
 public final class Sqlite implements Database {
 
@@ -18,38 +19,139 @@ public final class Sqlite implements Database {
 
     private final String tableName;
     private final String dbFile;
+    private final SqliteProfile profile;
+    private final UuidFormat uuidFormat;
 
-    public Sqlite(String tableName, File dbFile) {
+    public Sqlite(String tableName, File dbFile, SqliteProfile profile, UuidFormat uuidFormat) {
         this.tableName = tableName;
         this.dbFile = dbFile.getPath();
+        this.profile = profile;
+        this.uuidFormat = uuidFormat;
     }
 
     @Override
     public Connection getConnection() throws SQLException {
-        return DriverManager.getConnection("jdbc:sqlite:" + dbFile);
+        Connection connection = DriverManager.getConnection("jdbc:sqlite:" + dbFile);
+        try (Statement stmt = connection.createStatement()) {
+            for (String pragma : profile.getPragmas()) {
+                stmt.execute(pragma);
+            }
+        } catch (SQLException e) {
+            connection.close();
+            throw e;
+        }
+        return connection;
     }
 
     @Override
     public void initTable(Connection conn) throws SQLException {
         try (Statement stmt = conn.createStatement()) {
-            stmt.execute("CREATE TABLE IF NOT EXISTS " + tableName
-                + " (UUID CHAR(36) NOT NULL PRIMARY KEY, Point INT NOT NULL)");
+            stmt.execute("CREATE TABLE IF NOT EXISTS " + getNameTableName()
+                + " (UUID CHAR(36) NOT NULL PRIMARY KEY, Name VARCHAR(16) NOT NULL,"
+                + " LowerName VARCHAR(16) NOT NULL, Seen BIGINT NOT NULL)");
+            stmt.execute("CREATE INDEX IF NOT EXISTS " + getNameTableName() + "_LowerName ON "
+                + getNameTableName() + " (LowerName, Seen)");
+        }
+    }
+
+    // 인덱스 이름은 데이터베이스 전체에서 하나여야 하므로, 변환 중인 테이블에는 인덱스를 만들지 않고 바꿀 때 만듭니다.
+    @Override
+    public void createPointTable(Connection conn, String table, UuidFormat format)
+        throws SQLException {
+        try (Statement stmt = conn.createStatement()) {
+            stmt.execute("CREATE TABLE IF NOT EXISTS " + table + " (UUID "
+                + (format == UuidFormat.BINARY ? "BLOB" : "CHAR(36)")
+                + " NOT NULL PRIMARY KEY, Point INT NOT NULL)");
+            if (table.equals(tableName)) {
+                stmt.execute("CREATE INDEX IF NOT EXISTS " + tableName + "_Point ON " + tableName
+                    + " (Point, UUID)");
+            }
         }
     }
 
+    // 하나의 트랜잭션으로 실행되므로 중간에 멈추면 이전 테이블이 그대로 남습니다.
+    @Override
+    public List<String> getSwapQueries(String converted) {
+        return Arrays.asList(
+            "DROP TABLE " + tableName,
+            "ALTER TABLE " + converted + " RENAME TO " + tableName,
+            "CREATE INDEX " + tableName + "_Point ON " + tableName + " (Point, UUID)");
+    }
+
+    // 한 서버만 파일을 사용하고, 쓰기는 파일 전체를 잠그므로 따로 잠그지 않습니다.
+    @Override
+    public boolean tryLock(Connection conn, String name) {
+        return true;
+    }
+
+    @Override
+    public void unlock(Connection conn, String name) {
+    }
+
+    @Override
+    public String getSchemaReadQuery(String schemaTable) {
+        return "SELECT Name, Value FROM " + schemaTable;
+    }
+
+    @Override
+    public String getSelectQuery(String table) {
+        return "SELECT Point FROM " + table + " WHERE UUID = ?";
+    }
+
     @Override
-    public PreparedStatement getSelectStatement(Connection conn) throws SQLException {
-        return conn.prepareStatement("SELECT Point FROM " + tableName + " WHERE UUID = ?");
+    public String getInsertQuery(String table, int rows) {
+        return "INSERT OR REPLACE INTO " + table + " (UUID, Point) VALUES "
+            + PointUpsert.values(rows);
     }
 
     @Override
-    public PreparedStatement getInsertStatement(Connection conn) throws SQLException {
-        return conn.prepareStatement(
-            "INSERT OR REPLACE INTO " + tableName + " (UUID, Point) VALUES (?, ?)");
+    public String getAddQuery(String table, int rows) {
+        return "INSERT INTO " + table + " (UUID, Point) VALUES " + PointUpsert.values(rows)
+            + " ON CONFLICT(UUID) DO UPDATE SET Point = MIN(2147483647, Point + excluded.Point)";
+    }
+
+    // 변화량 (UUID, 새 행의 포인트, 변화량) 을 기존 포인트에 더합니다. 결과는 0 ~ Integer.MAX_VALUE 로 제한됩니다.
+    @Override
+    public String getAddQuery(String table) {
+        return "INSERT INTO " + table + " (UUID, Point) VALUES (?, ?)"
+            + " ON CONFLICT(UUID) DO UPDATE SET Point = MAX(0, MIN(2147483647, Point + ?))";
+    }
+
+    @Override
+    public String getInsertMissingQuery(String table, int rows) {
+        return "INSERT OR IGNORE INTO " + table + " (UUID, Point) VALUES "
+            + PointUpsert.values(rows);
+    }
+
+    @Override
+    public String getInsertNameQuery() {
+        return "INSERT OR REPLACE INTO " + getNameTableName()
+            + " (UUID, Name, LowerName, Seen) VALUES (?, ?, ?, ?)";
     }
 
     @Override
     public String getTableName() {
         return tableName;
     }
+
+    @Override
+    public String getNameTableName() {
+        return tableName + "_Names";
+    }
+
+    @Override
+    public UuidFormat getUuidFormat() {
+        return uuidFormat;
+    }
+
+    @Override
+    public PoolConfig getPoolConfig() {
+        return PoolConfig.SINGLE;
+    }
+
+    // 3.32 이전의 SQLITE_MAX_VARIABLE_NUMBER (서버에 포함된 드라이버가 오래되었을 수 있음)
+    @Override
+    public int getMaxParameters() {
+        return 999;
+    }
 }
@@ -0,0 +1,62 @@
+package net.utory.rankpoint.data.database;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+
+// 연결을 열 때마다 적용하는 SQLite PRAGMA 설정
+public final class SqliteProfile {
+
+    private static final List<String> JOURNAL_MODES = Arrays
+        .asList("DELETE", "TRUNCATE", "PERSIST", "MEMORY", "WAL", "OFF");
+    private static final List<String> SYNCHRONOUS = Arrays.asList("OFF", "NORMAL", "FULL", "EXTRA");
+
+    // WAL 에서는 synchronous=NORMAL 이어도 데이터베이스가 손상되지 않으며, 커밋마다 fsync 하지 않습니다.
+    public static final SqliteProfile DEFAULT = new SqliteProfile("WAL", "NORMAL", 16384, 64);
+
+    private final String journalMode;
+    private final String synchronous;
+    private final int cacheSize;
+    private final long mmapSize;
+
+    // cacheSize 는 KB, mmapSize 는 MB 단위이며 mmapSize 가 0 이면 메모리 맵을 사용하지 않습니다.
+    public SqliteProfile(String journalMode, String synchronous, int cacheSize, long mmapSize) {
+        this.journalMode = journalMode.toUpperCase(Locale.ROOT);
+        this.synchronous = synchronous.toUpperCase(Locale.ROOT);
+        if (!JOURNAL_MODES.contains(this.journalMode)) {
+            throw new IllegalArgumentException(
+                "unknown journal mode (journal mode: " + journalMode + ")");
+        }
+        if (!SYNCHRONOUS.contains(this.synchronous)) {
+            throw new IllegalArgumentException(
+                "unknown synchronous (synchronous: " + synchronous + ")");
+        }
+        this.cacheSize = Math.max(0, cacheSize);
+        this.mmapSize = Math.max(0, mmapSize);
+    }
+
+    public String getJournalMode() {
+        return journalMode;
+    }
+
+    public String getSynchronous() {
+        return synchronous;
+    }
+
+    public int getCacheSize() {
+        return cacheSize;
+    }
+
+    public long getMmapSize() {
+        return mmapSize;
+    }
+
+    // 값은 생성자에서 확인했으므로 그대로 넣습니다. cache_size 가 음수이면 KB 단위입니다.
+    List<String> getPragmas() {
+        return Arrays.asList(
+            "PRAGMA journal_mode=" + journalMode,
+            "PRAGMA synchronous=" + synchronous,
+            "PRAGMA cache_size=-" + cacheSize,
+            "PRAGMA mmap_size=" + mmapSize * 1024 * 1024);
+    }
+}
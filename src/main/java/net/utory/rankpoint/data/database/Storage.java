@@ -0,0 +1,49 @@
+package net.utory.rankpoint.data.database;
+
+import java.sql.SQLException;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+// 포인트와 이름을 보관하는 저장소. JDBC 데이터베이스 (Sqlite, Mysql) 는 JdbcStorage 가, 메모리 맵 파일은
+// MmapStorage 가 구현합니다. DatabaseManager 의 작업 스레드와 옮기기 스레드에서 호출되며, 쓰기는 한 스레드에서만
+// 호출됩니다. 저장소의 종류와 관계없이 실패는 SQLException 으로 전달됩니다.
+public interface Storage {
+
+    // 쓰기 스레드와 별도로 읽기에 사용할 스레드 수 (0 이면 읽기도 쓰기 스레드에서 실행합니다)
+    int getReaderThreads();
+
+    // 데이터가 없으면 null
+    Integer selectPoint(UUID uuid) throws SQLException;
+
+    // 데이터가 없는 플레이어는 결과에 포함되지 않습니다.
+    Map<UUID, Integer> selectPoints(List<UUID> uuids) throws SQLException;
+
+    // 포인트가 높은 순서 (같으면 UUID 가 큰 순서) 로 최대 limit 명. 순서가 유지되는 Map 을 반환합니다.
+    Map<UUID, Integer> selectTopPoints(int limit) throws SQLException;
+
+    // 포인트 -> 플레이어 수
+    Map<Integer, Integer> countPoints() throws SQLException;
+
+    // 소문자 이름으로 가장 최근에 접속한 플레이어의 (UUID, 이름) 을 찾습니다. 없으면 null
+    Map.Entry<UUID, String> selectUuidByName(String lowerName) throws SQLException;
+
+    Map<UUID, String> selectNames(List<UUID> uuids) throws SQLException;
+
+    void saveName(UUID uuid, String name, long seen) throws SQLException;
+
+    // 포인트를 그대로 저장합니다. 모두 저장되거나 하나도 저장되지 않습니다.
+    void savePoints(Map<UUID, Integer> points) throws SQLException;
+
+    // 변화량을 기존 포인트에 더합니다. 결과는 0 ~ Integer.MAX_VALUE 로 제한되며, 새 행은 0 에 더합니다.
+    // 커밋된 뒤 연결이 끊겨 실패로 보인 묶음을 다시 보내도 두 번 더하지 않도록, 이미 적용한 batchId 는 건너뜁니다.
+    void addPoints(UUID batchId, Map<UUID, Integer> deltas) throws SQLException;
+
+    // 아래 두 메서드는 /rankpoint migrate 에서 사용합니다.
+    long countRows() throws SQLException;
+
+    // UUID 문자열 순서로 afterUuid 다음부터 최대 limit 행을 읽습니다. ("" 이면 처음부터)
+    Map<UUID, Integer> scan(String afterUuid, int limit) throws SQLException;
+
+    void close();
+}
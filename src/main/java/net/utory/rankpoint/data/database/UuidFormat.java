@@ -0,0 +1,73 @@
+package net.utory.rankpoint.data.database;
+
+import java.nio.ByteBuffer;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Locale;
+import java.util.UUID;
+
+// 포인트 테이블의 UUID 열 형식. BINARY 는 16 바이트 (msb, lsb 순서의 빅 엔디언) 로 저장하며, 바이트 순서로 비교해도
+// TEXT 의 문자열 순서와 같으므로 키셋 조회와 /rankpoint migrate 의 순서가 바뀌지 않습니다.
+public enum UuidFormat {
+
+    TEXT(1) {
+        @Override
+        public void set(PreparedStatement statement, int index, UUID uuid) throws SQLException {
+            statement.setString(index, uuid.toString());
+        }
+
+        @Override
+        public UUID get(ResultSet rs, int index) throws SQLException {
+            return UUID.fromString(rs.getString(index));
+        }
+    },
+    BINARY(2) {
+        @Override
+        public void set(PreparedStatement statement, int index, UUID uuid) throws SQLException {
+            statement.setBytes(index, ByteBuffer.allocate(16)
+                .putLong(uuid.getMostSignificantBits())
+                .putLong(uuid.getLeastSignificantBits()).array());
+        }
+
+        @Override
+        public UUID get(ResultSet rs, int index) throws SQLException {
+            ByteBuffer buffer = ByteBuffer.wrap(rs.getBytes(index));
+            return new UUID(buffer.getLong(), buffer.getLong());
+        }
+    };
+
+    // 포인트 테이블의 스키마 버전
+    private final int version;
+
+    UuidFormat(int version) {
+        this.version = version;
+    }
+
+    public int getVersion() {
+        return version;
+    }
+
+    public abstract void set(PreparedStatement statement, int index, UUID uuid)
+        throws SQLException;
+
+    public abstract UUID get(ResultSet rs, int index) throws SQLException;
+
+    public static UuidFormat fromVersion(int version) throws SQLException {
+        for (UuidFormat format : values()) {
+            if (format.version == version) {
+                return format;
+            }
+        }
+        throw new SQLException("Unknown schema version (version: " + version + ")");
+    }
+
+    // 설정 값 (text, binary)
+    public static UuidFormat of(String name) {
+        try {
+            return valueOf(name.toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("unknown uuid format (uuid format: " + name + ")");
+        }
+    }
+}
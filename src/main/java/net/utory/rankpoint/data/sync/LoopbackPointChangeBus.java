@@ -0,0 +1,43 @@
+package net.utory.rankpoint.data.sync;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.function.Consumer;
+import net.utory.rankpoint.Rankpoint;
+import org.bukkit.Bukkit;
+
+// 보낸 메시지를 다음 틱에 같은 서버로 되돌려 보냅니다. 서버 하나로 동기화 경로를 확인할 때 사용합니다.
+public final class LoopbackPointChangeBus implements PointChangeBus {
+
+    private final Rankpoint instance;
+    private Consumer<Map<UUID, PointChange>> listener;
+
+    public LoopbackPointChangeBus(Rankpoint instance) {
+        this.instance = instance;
+    }
+
+    @Override
+    public void start(Consumer<Map<UUID, PointChange>> listener) {
+        this.listener = listener;
+    }
+
+    @Override
+    public void publish(Map<UUID, PointChange> changes) {
+        Consumer<Map<UUID, PointChange>> target = listener;
+        if (target == null) {
+            return;
+        }
+        Map<UUID, PointChange> copy = new HashMap<>(changes);
+        Bukkit.getScheduler().runTask(instance, () -> {
+            if (listener == target) {
+                target.accept(copy);
+            }
+        });
+    }
+
+    @Override
+    public void close() {
+        listener = null;
+    }
+}
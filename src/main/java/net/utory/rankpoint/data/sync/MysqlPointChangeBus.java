@@ -0,0 +1,284 @@
+package net.utory.rankpoint.data.sync;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+import net.utory.rankpoint.Rankpoint;
+import net.utory.rankpoint.data.database.Database;
+import org.bukkit.Bukkit;
+import org.bukkit.scheduler.BukkitTask;
+
+// 공유 MySQL 테이블에 메시지를 쌓고 서버마다 주기적으로 새 행을 읽습니다.
+// 한 번의 publish 는 (최대 MAX_ENTRIES_PER_MESSAGE 명씩) 한 행으로 저장되며, 오래된 행은 retention 이 지나면 지웁니다.
+// 메시지는 한 줄에 한 명씩 UUID:포인트:이전 포인트 이며, 이전 포인트가 없는 줄 (이전 버전) 도 읽습니다.
+// 여러 서버가 동시에 넣으면 작은 Id 의 행이 나중에 커밋되어 보일 수 있으므로, 건너뛴 Id 는 retention 동안 다시 찾습니다.
+public final class MysqlPointChangeBus implements PointChangeBus {
+
+    private static final int MAX_ENTRIES_PER_MESSAGE = 1000;
+    private static final int POLL_LIMIT = 100;
+    // 다시 찾을 건너뛴 Id 의 최대 수 (넘으면 오래된 Id 부터 포기합니다)
+    private static final int MAX_GAPS = 256;
+
+    private final Rankpoint instance;
+    private final Database database;
+    private final String tableName;
+    private final long pollInterval;
+    private final long retention;
+    // 자신이 보낸 메시지를 구분하기 위한 서버 식별자 (시작할 때마다 새로 만듭니다)
+    private final String serverId = UUID.randomUUID().toString();
+    private final ExecutorService executor = Executors
+        .newSingleThreadExecutor(runnable -> new Thread(runnable, "Rankpoint-Sync"));
+    private final AtomicBoolean polling = new AtomicBoolean();
+    private volatile Consumer<Map<UUID, PointChange>> listener;
+    private BukkitTask task;
+    // 아래는 작업 스레드에서만 사용합니다.
+    private Connection connection;
+    private long lastId = -1;
+    private long lastCleanup = 0;
+    // 건너뛴 Id -> 처음 건너뛴 시각
+    private final TreeMap<Long, Long> gaps = new TreeMap<>();
+    // 플레이어 -> 마지막으로 반영한 메시지의 Id. 늦게 보인 행이 더 새로운 값을 덮어쓰지 않도록 합니다.
+    private final Map<UUID, Long> applied = new HashMap<>();
+
+    // pollInterval: 틱, retention: 초
+    public MysqlPointChangeBus(Rankpoint instance, Database database, String tableName,
+        long pollInterval, long retention) {
+        this.instance = instance;
+        this.database = database;
+        this.tableName = tableName;
+        this.pollInterval = Math.max(1, pollInterval);
+        this.retention = TimeUnit.SECONDS.toMillis(Math.max(1, retention));
+    }
+
+    @Override
+    public void start(Consumer<Map<UUID, PointChange>> listener) {
+        this.listener = listener;
+        executor.execute(() -> {
+            try {
+                init();
+            } catch (SQLException e) {
+                fail("동기화 테이블을 준비하는데 실패했습니다.", e);
+            }
+        });
+        task = Bukkit.getScheduler().runTaskTimer(instance, () -> {
+            if (polling.compareAndSet(false, true)) {
+                executor.execute(this::poll);
+            }
+        }, pollInterval, pollInterval);
+    }
+
+    private void init() throws SQLException {
+        try (Statement stmt = connection().createStatement()) {
+            stmt.execute("CREATE TABLE IF NOT EXISTS " + tableName
+                + " (Id BIGINT NOT NULL AUTO_INCREMENT PRIMARY KEY, Server CHAR(36) NOT NULL,"
+                + " Created BIGINT NOT NULL, Payload MEDIUMTEXT NOT NULL)");
+            // 시작하기 전의 메시지는 이미 데이터베이스에 반영되어 있으므로 읽지 않습니다.
+            try (ResultSet rs = stmt.executeQuery("SELECT MAX(Id) FROM " + tableName)) {
+                lastId = rs.next() ? rs.getLong(1) : 0;
+            }
+        }
+    }
+
+    @Override
+    public void publish(Map<UUID, PointChange> changes) {
+        Map<UUID, PointChange> copy = new HashMap<>(changes);
+        executor.execute(() -> {
+            try {
+                insert(copy);
+            } catch (SQLException e) {
+                fail(copy.size() + " 명의 포인트 변경을 다른 서버에 알리는데 실패했습니다.", e);
+            }
+        });
+    }
+
+    private void insert(Map<UUID, PointChange> changes) throws SQLException {
+        try (PreparedStatement insert = connection().prepareStatement(
+            "INSERT INTO " + tableName + " (Server, Created, Payload) VALUES (?, ?, ?)")) {
+            Iterator<Map.Entry<UUID, PointChange>> iterator = changes.entrySet().iterator();
+            StringBuilder payload = new StringBuilder();
+            while (iterator.hasNext()) {
+                payload.setLength(0);
+                for (int i = 0; i < MAX_ENTRIES_PER_MESSAGE && iterator.hasNext(); i++) {
+                    Map.Entry<UUID, PointChange> entry = iterator.next();
+                    PointChange change = entry.getValue();
+                    payload.append(entry.getKey()).append(':').append(change.getPoint());
+                    if (change.getPrevious() != PointChange.UNKNOWN) {
+                        payload.append(':').append(change.getPrevious());
+                    }
+                    payload.append('\n');
+                }
+                insert.setString(1, serverId);
+                insert.setLong(2, System.currentTimeMillis());
+                insert.setString(3, payload.toString());
+                insert.addBatch();
+            }
+            insert.executeBatch();
+        }
+    }
+
+    private void poll() {
+        try {
+            if (lastId < 0) {
+                init();
+            }
+            long now = System.currentTimeMillis();
+            // 지워졌을 행은 더 찾지 않습니다.
+            gaps.values().removeIf(skipped -> now - skipped >= retention);
+            StringBuilder query = new StringBuilder("SELECT Id, Server, Payload FROM ")
+                .append(tableName).append(" WHERE Id > ?");
+            if (!gaps.isEmpty()) {
+                query.append(" OR Id IN (");
+                for (int i = 0; i < gaps.size(); i++) {
+                    query.append(i == 0 ? "?" : ", ?");
+                }
+                query.append(')');
+            }
+            query.append(" ORDER BY Id LIMIT ").append(POLL_LIMIT);
+            Map<UUID, PointChange> points = new HashMap<>();
+            try (PreparedStatement select = connection().prepareStatement(query.toString())) {
+                int index = 1;
+                select.setLong(index++, lastId);
+                for (long gap : gaps.keySet()) {
+                    select.setLong(index++, gap);
+                }
+                try (ResultSet rs = select.executeQuery()) {
+                    while (rs.next()) {
+                        long id = rs.getLong(1);
+                        if (gaps.remove(id) == null) {
+                            skip(id, now);
+                        }
+                        if (!serverId.equals(rs.getString(2))) {
+                            // 같은 플레이어가 여러 번 나오면 Id 가 큰 메시지의 값을 사용합니다.
+                            merge(id, rs.getString(3), points);
+                        }
+                    }
+                }
+            }
+            // 건너뛴 Id 보다 큰 메시지만 늦게 보인 행과 비교하면 됩니다.
+            long oldestGap = gaps.isEmpty() ? Long.MAX_VALUE : gaps.firstKey();
+            applied.values().removeIf(id -> id < oldestGap);
+            Consumer<Map<UUID, PointChange>> target = listener;
+            if (!points.isEmpty() && target != null && instance.isEnabled()) {
+                Bukkit.getScheduler().runTask(instance, () -> target.accept(points));
+            }
+            if (now - lastCleanup >= retention) {
+                lastCleanup = now;
+                try (PreparedStatement delete = connection()
+                    .prepareStatement("DELETE FROM " + tableName + " WHERE Created < ?")) {
+                    delete.setLong(1, now - retention);
+                    delete.executeUpdate();
+                }
+            }
+        } catch (SQLException e) {
+            fail("다른 서버의 포인트 변경을 읽어오는데 실패했습니다.", e);
+        } finally {
+            polling.set(false);
+        }
+    }
+
+    // lastId 다음부터 id 앞까지를 건너뛴 Id 로 기록합니다.
+    private void skip(long id, long now) {
+        for (long missing = Math.max(lastId + 1, id - MAX_GAPS); missing < id; missing++) {
+            gaps.put(missing, now);
+        }
+        while (gaps.size() > MAX_GAPS) {
+            gaps.pollFirstEntry();
+        }
+        lastId = Math.max(lastId, id);
+    }
+
+    // 이번에 읽은 메시지에 같은 플레이어가 이미 있으면, 처음 메시지의 이전 포인트에서 마지막 포인트로 바뀐 것으로
+    // 합칩니다.
+    private void merge(long id, String payload, Map<UUID, PointChange> points) {
+        Map<UUID, PointChange> message = new HashMap<>();
+        parse(payload, message);
+        for (Map.Entry<UUID, PointChange> entry : message.entrySet()) {
+            Long newer = applied.get(entry.getKey());
+            if (newer == null || newer < id) {
+                applied.put(entry.getKey(), id);
+                PointChange earlier = points.get(entry.getKey());
+                PointChange change = entry.getValue();
+                points.put(entry.getKey(), earlier == null ? change
+                    : new PointChange(change.getPoint(), earlier.getPrevious()));
+            }
+        }
+    }
+
+    private static void parse(String payload, Map<UUID, PointChange> points) {
+        int start = 0;
+        while (start < payload.length()) {
+            int end = payload.indexOf('\n', start);
+            if (end == -1) {
+                end = payload.length();
+            }
+            int separator = payload.indexOf(':', start);
+            if (separator > start && separator < end) {
+                int second = payload.indexOf(':', separator + 1);
+                if (second == -1 || second > end) {
+                    second = end;
+                }
+                try {
+                    int point = Integer.parseInt(payload.substring(separator + 1, second));
+                    int previous = second == end ? PointChange.UNKNOWN
+                        : Integer.parseInt(payload.substring(second + 1, end));
+                    points.put(UUID.fromString(payload.substring(start, separator)),
+                        new PointChange(point, previous));
+                } catch (IllegalArgumentException ignored) {
+                }
+            }
+            start = end + 1;
+        }
+    }
+
+    private Connection connection() throws SQLException {
+        if (connection == null) {
+            connection = database.getConnection();
+        }
+        return connection;
+    }
+
+    // 연결을 닫아 두고 다음 작업에서 다시 연결합니다.
+    private void fail(String message, SQLException e) {
+        instance.getLogger().warning(message + " (" + e.getMessage() + ")");
+        closeConnection();
+    }
+
+    private void closeConnection() {
+        if (connection == null) {
+            return;
+        }
+        try {
+            connection.close();
+        } catch (SQLException ignored) {
+        }
+        connection = null;
+    }
+
+    @Override
+    public void close() {
+        listener = null;
+        if (task != null) {
+            task.cancel();
+            task = null;
+        }
+        // 남은 메시지를 보낸 뒤 연결을 닫습니다.
+        executor.execute(this::closeConnection);
+        executor.shutdown();
+        try {
+            executor.awaitTermination(5, TimeUnit.SECONDS);
+        } catch (InterruptedException ignored) {
+        }
+    }
+}
@@ -0,0 +1,24 @@
+package net.utory.rankpoint.data.sync;
+
+// 다른 서버에 알리는 저장된 포인트와, 그 저장 전에 데이터베이스에 있던 포인트입니다.
+// 이전 포인트가 -1 이면 새 행이고, UNKNOWN 이면 보낸 서버도 알지 못합니다. (이전 버전의 서버가 보낸 메시지 등)
+public final class PointChange {
+
+    public static final int UNKNOWN = Integer.MIN_VALUE;
+
+    private final int point;
+    private final int previous;
+
+    public PointChange(int point, int previous) {
+        this.point = point;
+        this.previous = previous;
+    }
+
+    public int getPoint() {
+        return point;
+    }
+
+    public int getPrevious() {
+        return previous;
+    }
+}
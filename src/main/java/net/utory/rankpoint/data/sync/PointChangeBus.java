@@ -0,0 +1,17 @@
+package net.utory.rankpoint.data.sync;
+
+import java.util.Map;
+import java.util.UUID;
+import java.util.function.Consumer;
+
+// 여러 서버가 같은 데이터베이스를 사용할 때, 저장된 포인트를 다른 서버의 캐시에 알립니다.
+public interface PointChangeBus {
+
+    // listener 는 다른 서버에서 보낸 변경과 함께 메인 스레드에서 호출됩니다.
+    void start(Consumer<Map<UUID, PointChange>> listener);
+
+    // 데이터베이스에 저장된 포인트를 한 번의 메시지로 보냅니다. 메인 스레드에서 호출됩니다.
+    void publish(Map<UUID, PointChange> changes);
+
+    void close();
+}
@@ -0,0 +1,106 @@
+package net.utory.rankpoint.metrics;
+
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+// 값의 분포를 2 의 거듭제곱마다 4 칸으로 나누어 셉니다. 기록할 때 잠금이나 할당이 없으며,
+// 백분위 값은 칸의 상한이므로 실제 값보다 최대 25% 클 수 있습니다. 플러그인이 켜진 뒤의 모든 값을 셉니다.
+public final class Histogram {
+
+    // 0 ~ 3 은 그대로, 그 위로는 2^2 ~ 2^62 의 각 구간을 4 칸으로 나눕니다.
+    private static final int BUCKETS = 4 + 61 * 4;
+
+    // true 이면 나노초를 기록하고 밀리초로 표시합니다.
+    private final boolean nanos;
+    private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+    private final LongAdder count = new LongAdder();
+    private final LongAdder sum = new LongAdder();
+    private final LongAccumulator max = new LongAccumulator(Math::max, 0);
+
+    Histogram(boolean nanos) {
+        this.nanos = nanos;
+    }
+
+    public void record(long value) {
+        if (value < 0) {
+            value = 0;
+        }
+        buckets.incrementAndGet(bucket(value));
+        count.increment();
+        sum.add(value);
+        max.accumulate(value);
+    }
+
+    private static int bucket(long value) {
+        if (value < 4) {
+            return (int) value;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        int sub = (int) (value >>> (exponent - 2)) & 3;
+        return (exponent - 1) * 4 + sub;
+    }
+
+    private static long upperBound(int bucket) {
+        if (bucket < 4) {
+            return bucket;
+        }
+        int exponent = bucket / 4 + 1;
+        long width = 1L << (exponent - 2);
+        return (4 + bucket % 4) * width + width - 1;
+    }
+
+    public long getCount() {
+        return count.sum();
+    }
+
+    public double getMean() {
+        long n = count.sum();
+        return n == 0 ? 0 : (double) sum.sum() / n;
+    }
+
+    public long getMax() {
+        return max.get();
+    }
+
+    // percentile: 0 ~ 1
+    public long getPercentile(double percentile) {
+        long[] counts = new long[BUCKETS];
+        long total = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            counts[i] = buckets.get(i);
+            total += counts[i];
+        }
+        if (total == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(total * percentile));
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += counts[i];
+            if (seen >= rank) {
+                return Math.min(upperBound(i), getMax());
+            }
+        }
+        return getMax();
+    }
+
+    public boolean isNanos() {
+        return nanos;
+    }
+
+    // 나노초는 밀리초로 바꿉니다.
+    double scale(double value) {
+        return nanos ? value / 1_000_000 : value;
+    }
+
+    @Override
+    public String toString() {
+        String unit = nanos ? "ms" : "";
+        return String.format(Locale.ROOT,
+            "n=%d avg=%.2f%s p50=%.2f%s p95=%.2f%s p99=%.2f%s max=%.2f%s", getCount(),
+            scale(getMean()), unit, scale(getPercentile(0.5)), unit, scale(getPercentile(0.95)),
+            unit, scale(getPercentile(0.99)), unit, scale(getMax()), unit);
+    }
+}
@@ -0,0 +1,134 @@
+package net.utory.rankpoint.metrics;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+import java.util.function.Supplier;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+// 플러그인의 카운터, 게이지, 히스토그램을 이름 순서로 모아 /rankpoint stats 와 JMX 로 보여줍니다.
+// 같은 이름으로 다시 등록하면 기존 카운터와 히스토그램을 돌려주므로 저장소를 바꾸어도 값이 이어집니다.
+// 기록은 어느 스레드에서나 할 수 있습니다.
+public final class Metrics {
+
+    public static final String OBJECT_NAME = "net.utory.rankpoint:type=Metrics";
+
+    private final Map<String, Object> metrics = new TreeMap<>();
+    private ObjectName registeredName;
+
+    public synchronized LongAdder counter(String name) {
+        return get(name, LongAdder.class, LongAdder::new);
+    }
+
+    // 나노초를 기록하고 밀리초로 표시합니다.
+    public synchronized Histogram latency(String name) {
+        Histogram histogram = get(name, Histogram.class, () -> new Histogram(true));
+        if (!histogram.isNanos()) {
+            throw new IllegalArgumentException(name + " is not a latency histogram");
+        }
+        return histogram;
+    }
+
+    public synchronized Histogram histogram(String name) {
+        Histogram histogram = get(name, Histogram.class, () -> new Histogram(false));
+        if (histogram.isNanos()) {
+            throw new IllegalArgumentException(name + " is a latency histogram");
+        }
+        return histogram;
+    }
+
+    // 게이지는 읽을 때마다 계산하며, 같은 이름으로 다시 등록하면 새 값으로 바꿉니다.
+    public synchronized void gauge(String name, LongSupplier gauge) {
+        Object old = metrics.get(name);
+        if (old != null && !(old instanceof LongSupplier)) {
+            throw new IllegalArgumentException(name + " is already registered");
+        }
+        metrics.put(name, gauge);
+    }
+
+    private <T> T get(String name, Class<T> type, Supplier<T> factory) {
+        Object metric = metrics.get(name);
+        if (metric == null) {
+            T created = factory.get();
+            metrics.put(name, created);
+            return created;
+        }
+        if (!type.isInstance(metric)) {
+            throw new IllegalArgumentException(name + " is already registered");
+        }
+        return type.cast(metric);
+    }
+
+    // 한 지표에 한 줄씩 "이름: 값" 형식으로 만듭니다.
+    public List<String> format() {
+        List<String> lines = new ArrayList<>();
+        for (Map.Entry<String, Object> entry : entries()) {
+            lines.add(entry.getKey() + ": " + value(entry.getValue()));
+        }
+        return lines;
+    }
+
+    // JMX 속성. 히스토그램은 이름.count, 이름.p99 처럼 나누며 지연 시간은 밀리초입니다.
+    public Map<String, Number> values() {
+        Map<String, Number> values = new LinkedHashMap<>();
+        for (Map.Entry<String, Object> entry : entries()) {
+            String name = entry.getKey();
+            Object metric = entry.getValue();
+            if (metric instanceof Histogram) {
+                Histogram histogram = (Histogram) metric;
+                values.put(name + ".count", histogram.getCount());
+                values.put(name + ".mean", histogram.scale(histogram.getMean()));
+                values.put(name + ".p50", histogram.scale(histogram.getPercentile(0.5)));
+                values.put(name + ".p95", histogram.scale(histogram.getPercentile(0.95)));
+                values.put(name + ".p99", histogram.scale(histogram.getPercentile(0.99)));
+                values.put(name + ".max", histogram.scale(histogram.getMax()));
+            } else {
+                values.put(name, (Number) value(metric));
+            }
+        }
+        return values;
+    }
+
+    private synchronized List<Map.Entry<String, Object>> entries() {
+        return new ArrayList<>(metrics.entrySet());
+    }
+
+    private static Object value(Object metric) {
+        if (metric instanceof LongAdder) {
+            return ((LongAdder) metric).sum();
+        }
+        if (metric instanceof LongSupplier) {
+            return ((LongSupplier) metric).getAsLong();
+        }
+        return metric;
+    }
+
+    // 이전에 같은 이름으로 등록된 MBean (플러그인을 다시 불러온 경우 등) 은 바꿉니다.
+    public synchronized void registerMBean() throws JMException {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        ObjectName name = new ObjectName(OBJECT_NAME);
+        if (server.isRegistered(name)) {
+            server.unregisterMBean(name);
+        }
+        server.registerMBean(new MetricsMBean(this), name);
+        registeredName = name;
+    }
+
+    public synchronized void unregisterMBean() {
+        if (registeredName == null) {
+            return;
+        }
+        try {
+            ManagementFactory.getPlatformMBeanServer().unregisterMBean(registeredName);
+        } catch (JMException ignored) {
+        }
+        registeredName = null;
+    }
+}
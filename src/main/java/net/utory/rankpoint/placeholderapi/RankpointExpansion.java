@@ -1,19 +1,36 @@
 package net.utory.rankpoint.placeholderapi;
 
-import java.util.UUID;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import me.clip.placeholderapi.expansion.PlaceholderExpansion;
 import net.utory.rankpoint.Rankpoint;
+import net.utory.rankpoint.data.Leaderboard;
 import net.utory.rankpoint.data.PlayerDataManager;
 import net.utory.rankpoint.data.PlayerDataManager.PlayerData;
 import org.bukkit.entity.Player;
 
+// PlaceholderAPI 는 다른 스레드 (비동기 채팅, TAB 등) 에서도 요청하므로, PlayerData 와 순위표가 게시한 값만 읽습니다.
 @SuppressWarnings("NullableProblems")
 public class RankpointExpansion extends PlaceholderExpansion {
 
+    // 처음 보는 식별자를 해석한 결과를 보관할 최대 개수
+    private static final int MAX_DYNAMIC_RESOLVERS = 1024;
+    private static final Resolver UNKNOWN = player -> null;
+
     private final Rankpoint instance;
+    // 식별자마다 미리 만들어 둔 해석기를 사용해 요청마다 문자열을 비교하거나 만들지 않습니다.
+    private final Map<String, Resolver> resolvers = new HashMap<>();
+    private final Map<String, Resolver> dynamicResolvers = new ConcurrentHashMap<>();
 
     public RankpointExpansion(Rankpoint instance) {
         this.instance = instance;
+        resolvers.put("needpoint", playerData(PlayerData::getNeedPoint));
+        resolvers.put("totalpoint", playerData(PlayerData::getTotalPoint));
+        resolvers.put("point", playerData(PlayerData::getPrettyPointString));
+        resolvers.put("rank", playerData(PlayerData::getGroup));
+        resolvers.put("position", rankedPlayerData(PlayerData::getPositionString));
+        resolvers.put("percentile", rankedPlayerData(PlayerData::getPercentileString));
     }
 
     @Override
@@ -33,30 +50,87 @@ public class RankpointExpansion extends PlaceholderExpansion {
 
     @Override
     public String onPlaceholderRequest(Player player, String identifier) {
-        return player == null ? null : requestUUID(player.getUniqueId(), identifier);
+        Resolver resolver = resolvers.get(identifier);
+        if (resolver == null) {
+            resolver = dynamicResolvers.get(identifier);
+            if (resolver == null) {
+                resolver = compile(identifier);
+                if (dynamicResolvers.size() < MAX_DYNAMIC_RESOLVERS) {
+                    dynamicResolvers.put(identifier, resolver);
+                }
+            }
+        }
+        return resolver.resolve(player);
     }
 
-    private String requestUUID(UUID uuid, String identifier) {
-        PlayerDataManager playerDataManager = instance.getPlayerDataManager();
+    // top_<n>_name, top_<n>_point
+    private Resolver compile(String identifier) {
+        if (!identifier.startsWith("top_")) {
+            return UNKNOWN;
+        }
+        int separator = identifier.lastIndexOf('_');
+        if (separator <= 4) {
+            return UNKNOWN;
+        }
+        int position;
+        try {
+            position = Integer.parseInt(identifier.substring(4, separator));
+        } catch (NumberFormatException e) {
+            return UNKNOWN;
+        }
+        switch (identifier.substring(separator + 1)) {
+            case "name":
+                return player -> {
+                    Leaderboard.Entry entry = getLeaderboard().getEntry(position);
+                    return entry == null ? "" : entry.getName();
+                };
+            case "point":
+                return player -> {
+                    Leaderboard.Entry entry = getLeaderboard().getEntry(position);
+                    return entry == null ? "" : entry.getPointString();
+                };
+        }
+        return UNKNOWN;
+    }
 
-        switch (identifier) {
-            case "needpoint": {
-                PlayerData data = playerDataManager.getPlayerDataOrNull(uuid);
-                return data == null ? null : data.getNeedPoint();
-            }
-            case "totalpoint": {
-                PlayerData data = playerDataManager.getPlayerDataOrNull(uuid);
-                return data == null ? null : data.getTotalPoint();
+    private Leaderboard getLeaderboard() {
+        return instance.getPlayerDataManager().getLeaderboard();
+    }
+
+    private Resolver playerData(PlayerDataResolver resolver) {
+        return player -> {
+            if (player == null) {
+                return null;
             }
-            case "point": {
-                PlayerData data = playerDataManager.getPlayerDataOrNull(uuid);
-                return data == null ? null : data.getPrettyPoint() + "";
+            PlayerDataManager playerDataManager = instance.getPlayerDataManager();
+            PlayerData data = playerDataManager.getPlayerDataOrNull(player.getUniqueId());
+            return data == null ? null : resolver.resolve(data);
+        };
+    }
+
+    private Resolver rankedPlayerData(PlayerDataResolver resolver) {
+        return player -> {
+            if (player == null) {
+                return null;
             }
-            case "rank": {
-                PlayerData data = playerDataManager.getPlayerDataOrNull(uuid);
-                return data == null ? null : data.getGroup();
+            PlayerDataManager playerDataManager = instance.getPlayerDataManager();
+            if (!playerDataManager.getDistribution().isLoaded()) {
+                return null;
             }
-        }
-        return null;
+            PlayerData data = playerDataManager.getPlayerDataOrNull(player.getUniqueId());
+            return data == null ? null : resolver.resolve(data);
+        };
+    }
+
+    @FunctionalInterface
+    private interface Resolver {
+
+        String resolve(Player player);
+    }
+
+    @FunctionalInterface
+    private interface PlayerDataResolver {
+
+        String resolve(PlayerData data);
     }
 }